@@ -0,0 +1,65 @@
+package scheduler.benchmarks;
+
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.util.Statistics;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the benchmarks twice, once for throughput in ops/s and once sampling latency in microseconds,
+ * writes both as JSON next to the working directory and prints a one-line summary per benchmark.
+ *
+ * Usage: java -cp target/benchmarks.jar scheduler.benchmarks.BenchmarkReport [regex]
+ */
+public class BenchmarkReport {
+
+    public static void main(String[] args) throws RunnerException {
+        String include = args.length > 0 ? args[0] : BenchmarkReport.class.getPackage().getName() + ".*";
+
+        Options throughput = new OptionsBuilder()
+                .include(include)
+                .mode(Mode.Throughput)
+                .timeUnit(TimeUnit.SECONDS)
+                .resultFormat(ResultFormatType.JSON)
+                .result("jmh-throughput.json")
+                .build();
+        Collection<RunResult> rates = new Runner(throughput).run();
+
+        Options latency = new OptionsBuilder()
+                .include(include)
+                .mode(Mode.SampleTime)
+                .timeUnit(TimeUnit.MICROSECONDS)
+                .resultFormat(ResultFormatType.JSON)
+                .result("jmh-latency.json")
+                .build();
+        Collection<RunResult> latencies = new Runner(latency).run();
+
+        System.out.println();
+        for (RunResult result : rates) {
+            System.out.printf("%-60s %,14.0f ops/s%n", label(result), result.getPrimaryResult().getScore());
+        }
+        for (RunResult result : latencies) {
+            Statistics stats = result.getPrimaryResult().getStatistics();
+            System.out.printf("%-60s p50 %9.2f  p99 %9.2f  p99.9 %9.2f  max %9.2f us%n", label(result),
+                    stats.getPercentile(50), stats.getPercentile(99), stats.getPercentile(99.9), stats.getMax());
+        }
+    }
+
+    private static String label(RunResult result) {
+        String name = result.getParams().getBenchmark();
+        name = name.substring(name.lastIndexOf('.', name.lastIndexOf('.') - 1) + 1);
+        int threads = result.getParams().getThreads();
+        StringBuilder label = new StringBuilder(name).append(" x").append(threads);
+        for (String key : result.getParams().getParamsKeys()) {
+            label.append(' ').append(key).append('=').append(result.getParams().getParam(key));
+        }
+        return label.toString();
+    }
+}
@@ -0,0 +1,89 @@
+package scheduler.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import scheduler.model.Vaccine;
+
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * add_doses and the dose decrement behind reserve, alone and with every thread on one vaccine.
+ *
+ * addDoses goes through the Vaccine model like the command does; addDosesAndFlush also writes the
+ * pending delta to the store, which is what the background flush costs per batch.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DoseBenchmark {
+
+    private static final int STOCK = 1_000_000_000;
+
+    @State(Scope.Benchmark)
+    public static class Shared {
+        World world;
+        Vaccine vaccine;
+
+        @Setup
+        public void setUp() throws SQLException {
+            world = new World(1, 1, 1, STOCK);
+            vaccine = new Vaccine.VaccineGetter(World.VACCINE).get();
+        }
+    }
+
+    @Benchmark
+    public boolean take(Shared shared) {
+        return take(shared.world);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public boolean takeContended(Shared shared) {
+        return take(shared.world);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public boolean takeContendedAllCores(Shared shared) {
+        return take(shared.world);
+    }
+
+    @Benchmark
+    public int addDoses(Shared shared) throws SQLException {
+        shared.vaccine.increaseAvailableDoses(1);
+        return shared.vaccine.getAvailableDoses();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public int addDosesContended(Shared shared) throws SQLException {
+        return shared.world.inventory.add(World.VACCINE, 1);
+    }
+
+    @Benchmark
+    public void addDosesAndFlush(Shared shared) throws SQLException {
+        shared.world.inventory.add(World.VACCINE, 1);
+        shared.world.inventory.flush();
+    }
+
+    private static boolean take(World world) {
+        if (world.inventory.tryTake(World.VACCINE, 1)) {
+            return true;
+        }
+        // ran dry: top it up again
+        world.inventory.add(World.VACCINE, STOCK);
+        return false;
+    }
+}
@@ -0,0 +1,66 @@
+package scheduler.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import scheduler.model.Caregiver;
+import scheduler.model.Patient;
+import scheduler.util.PasswordHasher;
+import scheduler.util.Util;
+
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * login_patient / login_caregiver: fetch the stored credentials and verify the password, plus the bare
+ * hash on its own. Hashing dominates, so the contended variant mostly measures the hasher's thread pool.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LoginBenchmark {
+
+    private static final String PATIENT = "bench-patient";
+
+    private World world;
+    private byte[] salt;
+
+    @Setup
+    public void setUp() throws SQLException {
+        world = new World(1, 1, 1, 1);
+        salt = Util.generateSalt();
+        world.store.insertPatient(PATIENT, salt, PasswordHasher.get().hash(World.PASSWORD, salt));
+    }
+
+    @Benchmark
+    public byte[] generateHash() {
+        return Util.generateHash(World.PASSWORD, salt);
+    }
+
+    @Benchmark
+    public Patient loginPatient() throws SQLException {
+        return new Patient.PatientGetter(PATIENT, World.PASSWORD).get();
+    }
+
+    @Benchmark
+    public Caregiver loginCaregiver() throws SQLException {
+        return new Caregiver.CaregiverGetter(world.caregivers[0], World.PASSWORD).get();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public Patient loginPatientContended() throws SQLException {
+        return new Patient.PatientGetter(PATIENT, World.PASSWORD).get();
+    }
+}
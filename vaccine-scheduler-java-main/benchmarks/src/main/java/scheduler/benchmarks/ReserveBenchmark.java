@@ -0,0 +1,89 @@
+package scheduler.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import scheduler.model.Reservation;
+import scheduler.util.Util;
+
+import java.sql.Date;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * reserve: take a dose, claim a caregiver and record the appointment, as the reserve command does.
+ *
+ * The spread benchmark cycles through a year of dates; the contended ones send every thread to the
+ * same two dates, so they fight over the same caregivers and the same dose counter. Every caregiver-day
+ * has room for more appointments than an iteration can make, so dates never book out. The world is
+ * rebuilt every iteration to keep the schedule from growing without bound.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReserveBenchmark {
+
+    private static final int CAREGIVERS = 200;
+    private static final int DAYS = 365;
+    private static final int HOT_DAYS = 2;
+    // 2 hot days x 200 caregivers x 100,000 places: far more than one 2 s iteration reserves
+    private static final int CAPACITY = 100_000;
+
+    @State(Scope.Benchmark)
+    public static class Shared {
+        World world;
+
+        @Setup(Level.Iteration)
+        public void setUp() throws SQLException {
+            world = new World(CAREGIVERS, DAYS, CAPACITY, Integer.MAX_VALUE / 2);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class PatientState {
+        private static final AtomicInteger NEXT = new AtomicInteger();
+
+        final String patient = "patient-" + NEXT.getAndIncrement();
+        int next = 0;
+
+        // runs after Shared has built this iteration's world
+        @Setup(Level.Iteration)
+        public void register(Shared shared) throws SQLException {
+            byte[] salt = Util.generateSalt();
+            shared.world.store.insertPatient(patient, salt, Util.generateHash(World.PASSWORD, salt));
+        }
+    }
+
+    @Benchmark
+    public Reservation reserve(Shared shared, PatientState state) throws SQLException {
+        return reserve(shared.world, state.patient, shared.world.dates[state.next++ % DAYS]);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public Reservation reserveContended(Shared shared, PatientState state) throws SQLException {
+        return reserve(shared.world, state.patient, shared.world.dates[state.next++ % HOT_DAYS]);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public Reservation reserveContendedAllCores(Shared shared, PatientState state) throws SQLException {
+        return reserve(shared.world, state.patient, shared.world.dates[state.next++ % HOT_DAYS]);
+    }
+
+    private static Reservation reserve(World world, String patient, Date date) throws SQLException {
+        return world.engine.reserve(patient, date, World.VACCINE);
+    }
+}
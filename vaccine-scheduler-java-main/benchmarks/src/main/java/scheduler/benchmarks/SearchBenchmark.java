@@ -0,0 +1,67 @@
+package scheduler.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * search_caregiver_schedule: the caregivers available on a date plus every vaccine's dose count; and
+ * find_earliest: the first open date from a given day on, plus the vaccine's doses.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SearchBenchmark {
+
+    private static final int DAYS = 30;
+
+    @Param({"10", "200", "2000"})
+    public int caregivers;
+
+    private World world;
+    private int next = 0;
+
+    @Setup
+    public void setUp() throws SQLException {
+        world = new World(caregivers, DAYS, 1, 1_000);
+    }
+
+    @Benchmark
+    public void search(Blackhole bh) {
+        search(bh, next++ % DAYS);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public void searchConcurrent(Blackhole bh) {
+        search(bh, (int) (Thread.currentThread().getId() % DAYS));
+    }
+
+    @Benchmark
+    public void findEarliest(Blackhole bh) {
+        int day = next++ % DAYS;
+        bh.consume(world.availability.findEarliest(world.dates[day], null));
+        bh.consume(world.inventory.getAvailable(World.VACCINE));
+    }
+
+    private void search(Blackhole bh, int day) {
+        bh.consume(world.availability.getCaregivers(world.dates[day]));
+        bh.consume(world.inventory.getAll());
+    }
+}
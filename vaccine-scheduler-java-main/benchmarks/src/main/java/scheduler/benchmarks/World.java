@@ -0,0 +1,64 @@
+package scheduler.benchmarks;
+
+import scheduler.db.EmbeddedStore;
+import scheduler.db.Store;
+import scheduler.db.Stores;
+import scheduler.model.Availability;
+import scheduler.service.AvailabilityIndex;
+import scheduler.service.DoseInventory;
+import scheduler.service.ReservationEngine;
+import scheduler.util.Util;
+
+import java.sql.Date;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A freshly seeded embedded store with the in-memory indexes on top of it: caregivers available every
+ * day of a date range in a single time slot that takes {@code capacity} patients, and one vaccine with
+ * plenty of doses. Each benchmark builds its own, so runs do not
+ * see each other's reservations.
+ */
+class World {
+
+    static final String VACCINE = "bench-vaccine";
+    static final String PASSWORD = "bench-password";
+
+    final Store store = new EmbeddedStore();
+    final AvailabilityIndex availability = new AvailabilityIndex();
+    final DoseInventory inventory = new DoseInventory(store);
+    final ReservationEngine engine = new ReservationEngine(store, availability, inventory);
+    final String[] caregivers;
+    final Date[] dates;
+
+    World(int caregivers, int days, int capacity, int doses) throws SQLException {
+        // the model classes (logins, add_doses) go through Stores.get()
+        Stores.set(store);
+        this.caregivers = new String[caregivers];
+        this.dates = new Date[days];
+        LocalDate firstDay = LocalDate.now().plusYears(1);
+        for (int d = 0; d < days; d++) {
+            dates[d] = Date.valueOf(firstDay.plusDays(d));
+        }
+
+        byte[] salt = Util.generateSalt();
+        byte[] hash = Util.generateHash(PASSWORD, salt);
+        store.insertVaccine(VACCINE, doses);
+        for (int c = 0; c < caregivers; c++) {
+            this.caregivers[c] = "caregiver-" + c;
+            store.insertCaregiver(this.caregivers[c], salt, hash);
+        }
+        for (String caregiver : this.caregivers) {
+            List<Availability> availabilities = new ArrayList<>();
+            for (Date date : dates) {
+                availabilities.add(new Availability(date, caregiver, "loc01", LocalTime.of(9, 0), 15, 1, capacity));
+            }
+            store.insertAvailabilities(availabilities);
+        }
+        availability.load(store);
+        inventory.load();
+    }
+}
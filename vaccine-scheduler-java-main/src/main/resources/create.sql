@@ -1,3 +1,6 @@
+-- Reference schema as first designed. The scheduler now creates and upgrades its tables itself at
+-- startup from resources/migrations (see scheduler.db.Migrations); this file is kept for reference.
+
 CREATE TABLE Caregivers (
     Username varchar(255) NOT NULL,
     Salt BINARY(16),
@@ -0,0 +1,44 @@
+-- The tables as resources/create.sql first defined them. Skipped for databases that already have them.
+IF OBJECT_ID('Caregivers') IS NULL
+CREATE TABLE Caregivers (
+    Username varchar(255) NOT NULL,
+    Salt BINARY(16),
+    Hash BINARY(16),
+    PRIMARY KEY (Username)
+);
+
+IF OBJECT_ID('Availabilities') IS NULL
+CREATE TABLE Availabilities (
+    Time date NOT NULL,
+    Username varchar(255) REFERENCES Caregivers,
+    PRIMARY KEY (Time, Username)
+);
+
+IF OBJECT_ID('Vaccines') IS NULL
+CREATE TABLE Vaccines (
+    Name varchar(255) NOT NULL,
+    Doses int,
+    PRIMARY KEY (Name)
+);
+
+IF OBJECT_ID('Patients') IS NULL
+CREATE TABLE Patients (
+    Username varchar(255) NOT NULL,
+    Salt BINARY(16),
+    Hash BINARY(16),
+    Name varchar(255),
+    Birthday date,
+    Gender varchar(100),
+    PRIMARY KEY (Username)
+);
+
+IF OBJECT_ID('Schedule') IS NULL
+CREATE TABLE Schedule (
+    ID int NOT NULL,
+    P_Username varchar(255) FOREIGN KEY REFERENCES Patients(Username) ON UPDATE CASCADE ON DELETE CASCADE,
+    C_Username varchar(255) FOREIGN KEY REFERENCES Caregivers(Username) ON UPDATE CASCADE ON DELETE CASCADE,
+    V_Name varchar(255) FOREIGN KEY REFERENCES Vaccines(Name) ON UPDATE CASCADE ON DELETE CASCADE,
+    ScheduleDate date,
+    Location varchar(255),
+    PRIMARY KEY (ID, P_Username, C_Username, V_Name)
+);
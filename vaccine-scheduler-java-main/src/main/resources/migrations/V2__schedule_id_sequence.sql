@@ -0,0 +1,34 @@
+-- Schedule.ID becomes the primary key on its own and is drawn from a sequence, so reserving no longer
+-- has to lock the whole table to compute MAX(ID) + 1.
+DECLARE @sql nvarchar(max);
+DECLARE @pk sysname = (SELECT name FROM sys.key_constraints
+                       WHERE parent_object_id = OBJECT_ID('Schedule') AND type = 'PK');
+IF ISNULL(@pk, '') <> 'PK_Schedule'
+BEGIN
+    IF @pk IS NOT NULL
+    BEGIN
+        SET @sql = N'ALTER TABLE Schedule DROP CONSTRAINT ' + QUOTENAME(@pk);
+        EXEC sp_executesql @sql;
+    END
+    -- the old key allowed the same ID for different patients, caregivers or vaccines: the first row of each
+    -- ID (by date, then the old key) keeps it, the others get new IDs above the highest one
+    DECLARE @max int = (SELECT ISNULL(MAX(ID), 0) FROM Schedule WITH (TABLOCKX, HOLDLOCK));
+    WITH numbered AS (
+        SELECT ID,
+               ROW_NUMBER() OVER (PARTITION BY ID ORDER BY ScheduleDate, P_Username, C_Username, V_Name) AS N,
+               ROW_NUMBER() OVER (ORDER BY ID, ScheduleDate, P_Username, C_Username, V_Name) AS R
+        FROM Schedule)
+    UPDATE numbered SET ID = @max + R WHERE N > 1;
+    ALTER TABLE Schedule ADD CONSTRAINT PK_Schedule PRIMARY KEY CLUSTERED (ID);
+END
+
+IF OBJECT_ID('ScheduleIdSeq') IS NULL
+BEGIN
+    DECLARE @start int = (SELECT ISNULL(MAX(ID), 0) + 1 FROM Schedule WITH (TABLOCKX, HOLDLOCK));
+    SET @sql = N'CREATE SEQUENCE ScheduleIdSeq AS int START WITH ' + CAST(@start AS nvarchar(12))
+             + N' INCREMENT BY 1 CACHE 100';
+    EXEC sp_executesql @sql;
+    -- dynamic too, so the batch compiles before the sequence exists
+    EXEC sp_executesql N'ALTER TABLE Schedule ADD CONSTRAINT DF_Schedule_ID
+                         DEFAULT (NEXT VALUE FOR ScheduleIdSeq) FOR ID';
+END
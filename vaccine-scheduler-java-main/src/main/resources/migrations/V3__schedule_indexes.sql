@@ -0,0 +1,10 @@
+-- show_appointments for a patient: seek on P_Username. The clustered key (ID) is part of every
+-- nonclustered index, so "AND ID > @after ORDER BY ID" is read in order without a sort.
+IF NOT EXISTS (SELECT 1 FROM sys.indexes WHERE name = 'IX_Schedule_Patient' AND object_id = OBJECT_ID('Schedule'))
+CREATE INDEX IX_Schedule_Patient ON Schedule (P_Username)
+    INCLUDE (C_Username, V_Name, ScheduleDate, Location);
+
+-- a caregiver's appointments, overall or for a date range or a single day
+IF NOT EXISTS (SELECT 1 FROM sys.indexes WHERE name = 'IX_Schedule_Caregiver_Date' AND object_id = OBJECT_ID('Schedule'))
+CREATE INDEX IX_Schedule_Caregiver_Date ON Schedule (C_Username, ScheduleDate)
+    INCLUDE (P_Username, V_Name, Location);
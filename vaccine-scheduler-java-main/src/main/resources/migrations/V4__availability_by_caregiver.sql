@@ -0,0 +1,4 @@
+-- Availabilities is clustered by (Time, Username), which serves lookups by date; this serves the
+-- lookups by caregiver (a caregiver's own calendar).
+IF NOT EXISTS (SELECT 1 FROM sys.indexes WHERE name = 'IX_Availabilities_Caregiver' AND object_id = OBJECT_ID('Availabilities'))
+CREATE INDEX IX_Availabilities_Caregiver ON Availabilities (Username, Time);
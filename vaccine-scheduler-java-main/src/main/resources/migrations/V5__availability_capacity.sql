@@ -0,0 +1,11 @@
+-- A caregiver's day can take more than one appointment: Capacity is how many, Booked how many are taken.
+-- Reserving now increments Booked instead of deleting the row, so existing rows start with one free place,
+-- which is what they meant before.
+IF COL_LENGTH('Availabilities', 'Capacity') IS NULL
+ALTER TABLE Availabilities ADD Capacity int NOT NULL CONSTRAINT DF_Availabilities_Capacity DEFAULT 1;
+GO
+IF COL_LENGTH('Availabilities', 'Booked') IS NULL
+ALTER TABLE Availabilities ADD Booked int NOT NULL CONSTRAINT DF_Availabilities_Booked DEFAULT 0;
+GO
+IF OBJECT_ID('CK_Availabilities_Booked') IS NULL
+ALTER TABLE Availabilities ADD CONSTRAINT CK_Availabilities_Booked CHECK (Booked >= 0 AND Booked <= Capacity);
@@ -0,0 +1,29 @@
+-- Availability in time slots: a caregiver's day at a location starts at StartTime and is split into Slots
+-- slots of SlotMinutes, each taking up to SlotCapacity appointments. Bit i of FullSlots is set once slot i
+-- is booked out. Capacity and Booked stay as the day's totals (Capacity = Slots * SlotCapacity).
+IF COL_LENGTH('Availabilities', 'Slots') IS NULL
+ALTER TABLE Availabilities ADD
+    Location varchar(255) NOT NULL CONSTRAINT DF_Availabilities_Location DEFAULT 'loc01',
+    StartTime time(0) NOT NULL CONSTRAINT DF_Availabilities_StartTime DEFAULT '09:00',
+    SlotMinutes smallint NOT NULL CONSTRAINT DF_Availabilities_SlotMinutes DEFAULT 15,
+    Slots tinyint NOT NULL CONSTRAINT DF_Availabilities_Slots DEFAULT 1,
+    SlotCapacity int NOT NULL CONSTRAINT DF_Availabilities_SlotCapacity DEFAULT 1,
+    FullSlots bigint NOT NULL CONSTRAINT DF_Availabilities_FullSlots DEFAULT 0;
+GO
+IF COL_LENGTH('Schedule', 'ScheduleTime') IS NULL
+ALTER TABLE Schedule ADD ScheduleTime time(0) NULL;
+GO
+-- existing days become a single 09:00 slot holding the whole day's capacity, and existing appointments
+-- are in that slot
+UPDATE Availabilities SET SlotCapacity = Capacity, FullSlots = CASE WHEN Booked >= Capacity THEN 1 ELSE 0 END;
+UPDATE Schedule SET ScheduleTime = '09:00' WHERE ScheduleTime IS NULL;
+GO
+IF OBJECT_ID('CK_Availabilities_Slots') IS NULL
+ALTER TABLE Availabilities ADD CONSTRAINT CK_Availabilities_Slots
+    CHECK (Slots BETWEEN 1 AND 63 AND SlotMinutes > 0 AND Capacity = Slots * SlotCapacity);
+GO
+-- reserve counts a slot's appointments on this index, and the listings show the time
+CREATE INDEX IX_Schedule_Caregiver_Date ON Schedule (C_Username, ScheduleDate, ScheduleTime)
+    INCLUDE (P_Username, V_Name, Location) WITH (DROP_EXISTING = ON);
+CREATE INDEX IX_Schedule_Patient ON Schedule (P_Username)
+    INCLUDE (C_Username, V_Name, ScheduleDate, ScheduleTime, Location) WITH (DROP_EXISTING = ON);
@@ -0,0 +1,23 @@
+-- Every row of the tables the scheduler keeps in memory gets a rowversion, which SQL Server bumps on each
+-- insert and update, so a warm start from a snapshot only fetches the rows changed since the snapshot.
+-- Reserving and cancelling update the caregiver's Availabilities row, so its bookings are covered too.
+IF COL_LENGTH('Availabilities', 'RowVer') IS NULL
+ALTER TABLE Availabilities ADD RowVer rowversion;
+GO
+IF COL_LENGTH('Vaccines', 'RowVer') IS NULL
+ALTER TABLE Vaccines ADD RowVer rowversion;
+GO
+IF COL_LENGTH('Patients', 'RowVer') IS NULL
+ALTER TABLE Patients ADD RowVer rowversion;
+GO
+IF COL_LENGTH('Caregivers', 'RowVer') IS NULL
+ALTER TABLE Caregivers ADD RowVer rowversion;
+GO
+IF NOT EXISTS (SELECT 1 FROM sys.indexes WHERE name = 'IX_Availabilities_RowVer' AND object_id = OBJECT_ID('Availabilities'))
+CREATE INDEX IX_Availabilities_RowVer ON Availabilities (RowVer);
+IF NOT EXISTS (SELECT 1 FROM sys.indexes WHERE name = 'IX_Vaccines_RowVer' AND object_id = OBJECT_ID('Vaccines'))
+CREATE INDEX IX_Vaccines_RowVer ON Vaccines (RowVer);
+IF NOT EXISTS (SELECT 1 FROM sys.indexes WHERE name = 'IX_Patients_RowVer' AND object_id = OBJECT_ID('Patients'))
+CREATE INDEX IX_Patients_RowVer ON Patients (RowVer);
+IF NOT EXISTS (SELECT 1 FROM sys.indexes WHERE name = 'IX_Caregivers_RowVer' AND object_id = OBJECT_ID('Caregivers'))
+CREATE INDEX IX_Caregivers_RowVer ON Caregivers (RowVer);
@@ -0,0 +1,8 @@
+-- Password hashes are stored with the settings they were made with (a short header before the key, see
+-- PasswordHasher), which no longer fits BINARY(16). Existing bare keys keep their zero padding, which the
+-- hasher ignores, until their owners next log in and they are re-hashed.
+IF COL_LENGTH('Patients', 'Hash') = 16
+ALTER TABLE Patients ALTER COLUMN Hash varbinary(128);
+GO
+IF COL_LENGTH('Caregivers', 'Hash') = 16
+ALTER TABLE Caregivers ALTER COLUMN Hash varbinary(128);
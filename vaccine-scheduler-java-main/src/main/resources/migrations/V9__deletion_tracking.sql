@@ -0,0 +1,29 @@
+-- Rowversions only show rows that are still there, so a warm start's catch-up could not tell that a
+-- caregiver day, a vaccine or an account was deleted. Deleting one now leaves a tombstone with its key and a
+-- rowversion of its own, which the catch-up reads along with the changed rows.
+IF OBJECT_ID('Tombstones') IS NULL
+CREATE TABLE Tombstones (
+    TableName varchar(32) NOT NULL,
+    Name varchar(255) NOT NULL,
+    Time date NULL,
+    RowVer rowversion
+);
+GO
+IF NOT EXISTS (SELECT 1 FROM sys.indexes WHERE name = 'IX_Tombstones_RowVer' AND object_id = OBJECT_ID('Tombstones'))
+CREATE INDEX IX_Tombstones_RowVer ON Tombstones (RowVer);
+GO
+CREATE OR ALTER TRIGGER TR_Availabilities_Tombstone ON Availabilities AFTER DELETE AS
+    SET NOCOUNT ON;
+    INSERT INTO Tombstones (TableName, Name, Time) SELECT 'Availabilities', Username, Time FROM deleted;
+GO
+CREATE OR ALTER TRIGGER TR_Vaccines_Tombstone ON Vaccines AFTER DELETE AS
+    SET NOCOUNT ON;
+    INSERT INTO Tombstones (TableName, Name) SELECT 'Vaccines', Name FROM deleted;
+GO
+CREATE OR ALTER TRIGGER TR_Patients_Tombstone ON Patients AFTER DELETE AS
+    SET NOCOUNT ON;
+    INSERT INTO Tombstones (TableName, Name) SELECT 'Patients', Username FROM deleted;
+GO
+CREATE OR ALTER TRIGGER TR_Caregivers_Tombstone ON Caregivers AFTER DELETE AS
+    SET NOCOUNT ON;
+    INSERT INTO Tombstones (TableName, Name) SELECT 'Caregivers', Username FROM deleted;
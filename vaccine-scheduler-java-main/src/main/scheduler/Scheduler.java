@@ -1,52 +1,106 @@
 package scheduler;
 
-import scheduler.db.ConnectionManager;
+import scheduler.db.AppointmentQuery;
+import scheduler.db.ConnectionPool;
+import scheduler.db.Store;
+import scheduler.db.Stores;
+import scheduler.metrics.CommandStats;
+import scheduler.metrics.LatencyHistogram;
+import scheduler.metrics.Metrics;
+import scheduler.model.Appointment;
+import scheduler.model.Availability;
 import scheduler.model.Caregiver;
 import scheduler.model.Patient;
+import scheduler.model.Reservation;
 import scheduler.model.Vaccine;
+import scheduler.server.SchedulerServer;
+import scheduler.service.AvailabilityIndex;
+import scheduler.service.BulkImporter;
+import scheduler.service.DoseInventory;
+import scheduler.service.ReservationEngine;
+import scheduler.service.UsernameFilter;
+import scheduler.service.Waitlist;
+import scheduler.snapshot.WarmStart;
+import scheduler.util.PasswordHasher;
+import scheduler.util.ResultWriter;
 import scheduler.util.Util;
 
 import java.io.BufferedReader;
+import java.io.FileReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.sql.Connection;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
+import java.io.PrintStream;
+import java.io.Reader;
 import java.sql.SQLException;
 import java.sql.Date;
+import java.time.DateTimeException;
+import java.time.Duration;
 import java.time.LocalDate;
-import java.util.ArrayList;
+import java.time.LocalTime;
+import java.time.temporal.ChronoUnit;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
 
 public class Scheduler {
 
-    // objects to keep track of the currently logged-in user
-    // Note: it is always true that at most one of currentCaregiver and currentPatient is not null
-    //       since only one user can be logged-in at a time
-    private static Caregiver currentCaregiver = null;
-    private static Patient currentPatient = null;
+    // the commands execute() knows, for naming their stats
+    private static final Set<String> COMMANDS = Set.of("create_patient", "create_caregiver", "import_users",
+            "login_patient", "login_caregiver", "search_caregiver_schedule", "find_earliest", "reserve",
+            "waitlist", "upload_availability",
+            "cancel", "cancel_day", "add_doses", "show_appointments", "stats", "output_format", "logout", "quit");
+
+    // appointments listed per show_appointments call unless a limit is given
+    private static final int APPOINTMENT_PAGE_SIZE = 100;
+    private static final int MAX_APPOINTMENT_PAGE_SIZE = 10_000;
+    // a caregiver's day unless upload_availability says otherwise: 09:00 to 17:00 in 15-minute slots,
+    // one patient per slot
+    private static final LocalTime DEFAULT_START = LocalTime.of(9, 0);
+    private static final LocalTime DEFAULT_END = LocalTime.of(17, 0);
+    private static final int DEFAULT_SLOT_MINUTES = 15;
+    private static final int DEFAULT_SLOT_CAPACITY = 1;
+    private static final int MAX_SLOT_CAPACITY = 1_000;
+    private static final String DEFAULT_LOCATION = "loc01";
 
     public static void main(String[] args) throws SQLException {
+        // bring the schema up to date, then load the in-memory indexes up front instead of on first use
+        try {
+            Stores.get().migrate();
+        } catch (SQLException e) {
+            // the statements below expect the current schema; running against a half-migrated one does more harm
+            System.out.println("Error occurred when updating the database schema.");
+            e.printStackTrace();
+            System.exit(1);
+        }
+        try {
+            AvailabilityIndex.get();
+            DoseInventory.get();
+            UsernameFilter.patients();
+            UsernameFilter.caregivers();
+        } catch (SQLException e) {
+            System.out.println("Error occurred when loading the scheduler's data.");
+            e.printStackTrace();
+        }
+
+        // Scheduler --server [port] serves many users over TCP instead of reading the console
+        if (args.length > 0 && args[0].equals("--server")) {
+            int port = args.length > 1 ? Integer.parseInt(args[1]) : SchedulerServer.DEFAULT_PORT;
+            try {
+                new SchedulerServer(port).run();
+            } catch (IOException e) {
+                System.out.println("Could not run the server on port " + port);
+                e.printStackTrace();
+            }
+            return;
+        }
+
         // printing greetings text
-        System.out.println();
-        System.out.println("Welcome to the COVID-19 Vaccine Reservation Scheduling Application!");
-        System.out.println("*** Please enter one of the following commands ***");
-        System.out.println("> create_patient <username> <password>");  //TODO: implement create_patient (Part 1) √ √ √ √ √
-        System.out.println("> create_caregiver <username> <password>");
-        System.out.println("> login_patient <username> <password>");  // TODO: implement login_patient (Part 1) √ √ √ √ √
-        System.out.println("> login_caregiver <username> <password>");
-        System.out.println("> search_caregiver_schedule <date>");  // TODO: implement search_caregiver_schedule (Part 2) √ √ √ √ √
-        System.out.println("> reserve <date> <vaccine>");  // TODO: implement reserve (Part 2) √ √ √ √ √
-        System.out.println("> upload_availability <date>");
-        System.out.println("> cancel <appointment_id>");  // TODO: implement cancel (extra credit)
-        System.out.println("> add_doses <vaccine> <number>");
-        System.out.println("> show_appointments");  // TODO: implement show_appointments (Part 2)
-        System.out.println("> logout");  // TODO: implement logout (Part 2)
-        System.out.println("> quit");
-        System.out.println();
+        printGreeting(System.out);
 
         // read input from user
+        Session session = new Session(System.out);
         BufferedReader r = new BufferedReader(new InputStreamReader(System.in));
         while (true) {
             System.out.print("> ");
@@ -56,147 +110,271 @@ public class Scheduler {
             } catch (IOException e) {
                 System.out.println("Please try again!");
             }
-            // split the user input by spaces
-            String[] tokens = response.split(" ");
-            // check if input exists
-            if (tokens.length == 0) {
-                System.out.println("Please try again!");
-                continue;
-            }
-            // determine which operation to perform
-            String operation = tokens[0];
-            if (operation.equals("create_patient")) {
-                createPatient(tokens);
-            } else if (operation.equals("create_caregiver")) {
-                createCaregiver(tokens);
-            } else if (operation.equals("login_patient")) {
-                loginPatient(tokens);
-            } else if (operation.equals("login_caregiver")) {
-                loginCaregiver(tokens);
-            } else if (operation.equals("search_caregiver_schedule")) {
-                searchCaregiverSchedule(tokens);
-            } else if (operation.equals("reserve")) {
-                reserve(tokens);
-            } else if (operation.equals("upload_availability")) {
-                uploadAvailability(tokens);
-            } else if (operation.equals("cancel")) {
-                cancel(tokens);
-            } else if (operation.equals("add_doses")) {
-                addDoses(tokens);
-            } else if (operation.equals("show_appointments")) {
-                showAppointments(tokens);
-            } else if (operation.equals("logout")) {
-                logout(tokens);
-            } else if (operation.equals("quit")) {
-                System.out.println("Bye!");
+            if (response == null) {
+                // end of input
+                return;
+            }
+            if (!execute(session, response)) {
                 return;
-            } else {
-                System.out.println("Invalid operation name!");
             }
         }
     }
 
-    private static void createPatient(String[] tokens) {
+    public static void printGreeting(PrintStream out) {
+        out.println();
+        out.println("Welcome to the COVID-19 Vaccine Reservation Scheduling Application!");
+        out.println("*** Please enter one of the following commands ***");
+        out.println("> create_patient <username> <password>");  //TODO: implement create_patient (Part 1) √ √ √ √ √
+        out.println("> create_caregiver <username> <password>");
+        out.println("> import_users <csv_file>");
+        out.println("> login_patient <username> <password>");  // TODO: implement login_patient (Part 1) √ √ √ √ √
+        out.println("> login_caregiver <username> <password>");
+        out.println("> search_caregiver_schedule <date>");  // TODO: implement search_caregiver_schedule (Part 2) √ √ √ √ √
+        out.println("> find_earliest <vaccine> [from_date] [to_date]");
+        out.println("> reserve <date> <vaccine>");  // TODO: implement reserve (Part 2) √ √ √ √ √
+        out.println("> waitlist <date> [end_date] <vaccine>");
+        out.println("> upload_availability <date> | <start> <end> [weekday-mask], then [hh:mm-hh:mm/minutes] "
+                + "[patients-per-slot] [location]");
+        out.println("> cancel <appointment_id>");  // TODO: implement cancel (extra credit) √
+        out.println("> cancel_day <date>");
+        out.println("> add_doses <vaccine> <number>");
+        out.println("> show_appointments [after_id] [limit] [from_date] [to_date]");  // TODO: implement show_appointments (Part 2)
+        out.println("> stats");
+        out.println("> output_format <text|jsonl|csv>");
+        out.println("> logout");  // TODO: implement logout (Part 2) √
+        out.println("> quit");
+        out.println();
+    }
+
+    /**
+     * Runs one command line for the session, writing the result to the session's output.
+     * Returns false if the user asked to quit. Safe to call for many sessions at once.
+     */
+    public static boolean execute(Session session, String response) throws SQLException {
+        String operation = response.split(" ", 2)[0];
+        // anything unrecognised is counted under one name, so typos cannot grow the stats without bound
+        Metrics.begin(COMMANDS.contains(operation) ? operation : "invalid");
+        boolean failed = true;
+        try {
+            boolean keepGoing = dispatch(session, response);
+            failed = false;
+            return keepGoing;
+        } finally {
+            Metrics.end(failed);
+            // one write to the underlying stream per command
+            session.out.flush();
+        }
+    }
+
+    private static boolean dispatch(Session session, String response) throws SQLException {
+        // split the user input by spaces
+        String[] tokens = response.split(" ");
+        // check if input exists
+        if (tokens.length == 0) {
+            session.out.println("Please try again!");
+            return true;
+        }
+        // determine which operation to perform
+        String operation = tokens[0];
+        if (operation.equals("create_patient")) {
+            createPatient(session, tokens);
+        } else if (operation.equals("create_caregiver")) {
+            createCaregiver(session, tokens);
+        } else if (operation.equals("import_users")) {
+            importUsers(session, tokens);
+        } else if (operation.equals("login_patient")) {
+            loginPatient(session, tokens);
+        } else if (operation.equals("login_caregiver")) {
+            loginCaregiver(session, tokens);
+        } else if (operation.equals("search_caregiver_schedule")) {
+            searchCaregiverSchedule(session, tokens);
+        } else if (operation.equals("find_earliest")) {
+            findEarliest(session, tokens);
+        } else if (operation.equals("reserve")) {
+            reserve(session, tokens);
+        } else if (operation.equals("waitlist")) {
+            waitlist(session, tokens);
+        } else if (operation.equals("upload_availability")) {
+            uploadAvailability(session, tokens);
+        } else if (operation.equals("cancel")) {
+            cancel(session, tokens);
+        } else if (operation.equals("cancel_day")) {
+            cancelDay(session, tokens);
+        } else if (operation.equals("add_doses")) {
+            addDoses(session, tokens);
+        } else if (operation.equals("show_appointments")) {
+            showAppointments(session, tokens);
+        } else if (operation.equals("stats")) {
+            stats(session, tokens);
+        } else if (operation.equals("output_format")) {
+            outputFormat(session, tokens);
+        } else if (operation.equals("logout")) {
+            logout(session, tokens);
+        } else if (operation.equals("quit")) {
+            session.out.println("Bye!");
+            return false;
+        } else {
+            session.out.println("Invalid operation name!");
+        }
+        return true;
+    }
+
+    private static void createPatient(Session session, String[] tokens) {
         // create_Patient <username> <password>
 
         if (tokens.length != 3) {
-            System.out.println("Please try again!");
+            session.out.println("Please try again!");
             return;
         }
         String username = tokens[1];
         String password = tokens[2];
 
-        if (usernameExistsPatient(username)) {
-            System.out.println("Username taken, try again!");
+        if (usernameExistsPatient(session, username)) {
+            session.out.println("Username taken, try again!");
             return;
         }
         byte[] salt = Util.generateSalt();
-        byte[] hash = Util.generateHash(password, salt);
+        byte[] hash;
+        try {
+            hash = PasswordHasher.get().hash(password, salt);
+        } catch (RejectedExecutionException e) {
+            session.out.println("Too many requests right now, please try again!");
+            return;
+        } catch (IllegalStateException e) {
+            session.out.println("Please try again!");
+            e.printStackTrace();
+            return;
+        }
 
         try {
-            currentPatient = new Patient.PatientBuilder(username, salt, hash).build();
-            currentPatient.saveToDB();
-            System.out.println(" *** Account created successfully *** ");
+            Patient patient = new Patient.PatientBuilder(username, salt, hash).build();
+            patient.saveToDB();
+            session.currentPatient = patient;
+            session.out.println(" *** Account created successfully *** ");
         } catch (SQLException e) {
-            System.out.println("Create failed");
+            if (Stores.isDuplicateKey(e)) {
+                // someone took the name between the check and the insert
+                session.out.println("Username taken, try again!");
+                return;
+            }
+            session.out.println("Create failed");
             e.printStackTrace();
         }
     }
 
-    private static boolean usernameExistsPatient(String username) {
-        ConnectionManager cm = new ConnectionManager();
-        Connection con = cm.createConnection();
-
-        String selectUsername = "SELECT * FROM Patients WHERE Username = ?";
-
+    private static boolean usernameExistsPatient(Session session, String username) {
         try {
-            PreparedStatement statement = con.prepareStatement(selectUsername);
-            statement.setString(1, username);
-            ResultSet resultSet = statement.executeQuery();
-
-            return resultSet.isBeforeFirst();
+            // answered from memory unless the filter cannot tell for sure
+            Store store = Stores.get();
+            return UsernameFilter.patients().isTaken(username, store::patientExists);
         } catch (SQLException e) {
-            System.out.println("Error occur when checking username.");
+            session.out.println("Error occur when checking username.");
             e.printStackTrace();
         }
         return true;
     }
 
-    private static void createCaregiver(String[] tokens) {
+    private static void createCaregiver(Session session, String[] tokens) {
         // create_caregiver <username> <password>
         // check 1: the length for tokens need to be exactly 3 to include all information (with the operation name)
         if (tokens.length != 3) {
-            System.out.println("Please try again!");
+            session.out.println("Please try again!");
             return;
         }
         String username = tokens[1];
         String password = tokens[2];
         // check 2: check if the username has been taken already
-        if (usernameExistsCaregiver(username)) {
-            System.out.println("Username taken, try again!");
+        if (usernameExistsCaregiver(session, username)) {
+            session.out.println("Username taken, try again!");
             return;
         }
         byte[] salt = Util.generateSalt();
-        byte[] hash = Util.generateHash(password, salt);
+        byte[] hash;
+        try {
+            hash = PasswordHasher.get().hash(password, salt);
+        } catch (RejectedExecutionException e) {
+            session.out.println("Too many requests right now, please try again!");
+            return;
+        } catch (IllegalStateException e) {
+            session.out.println("Please try again!");
+            e.printStackTrace();
+            return;
+        }
         // create the caregiver
         try {
-            currentCaregiver = new Caregiver.CaregiverBuilder(username, salt, hash).build();
+            Caregiver caregiver = new Caregiver.CaregiverBuilder(username, salt, hash).build();
             // save to caregiver information to our database
-            currentCaregiver.saveToDB();
-            System.out.println(" *** Account created successfully *** ");
+            caregiver.saveToDB();
+            session.currentCaregiver = caregiver;
+            session.out.println(" *** Account created successfully *** ");
         } catch (SQLException e) {
-            System.out.println("Create failed");
+            if (Stores.isDuplicateKey(e)) {
+                // someone took the name between the check and the insert
+                session.out.println("Username taken, try again!");
+                return;
+            }
+            session.out.println("Create failed");
             e.printStackTrace();
         }
     }
 
-    private static boolean usernameExistsCaregiver(String username) {
-        ConnectionManager cm = new ConnectionManager();
-        Connection con = cm.createConnection();
-
-        String selectUsername = "SELECT * FROM Caregivers WHERE Username = ?";
+    private static boolean usernameExistsCaregiver(Session session, String username) {
         try {
-            PreparedStatement statement = con.prepareStatement(selectUsername);
-            statement.setString(1, username);
-            ResultSet resultSet = statement.executeQuery();
-            // returns false if the cursor is not before the first record or if there are no rows in the ResultSet.
-            return resultSet.isBeforeFirst();
+            // returns false if there are no rows for this username.
+            Store store = Stores.get();
+            return UsernameFilter.caregivers().isTaken(username, store::caregiverExists);
         } catch (SQLException e) {
-            System.out.println("Error occurred when checking username");
+            session.out.println("Error occurred when checking username");
             e.printStackTrace();
-        } finally {
-            cm.closeConnection();
         }
         return true;
     }
 
-    private static void loginPatient(String[] tokens) {
-        if (currentCaregiver != null || currentPatient != null) {
-            System.out.println("Already logged-in! Please log out first.");
+    private static void importUsers(Session session, String[] tokens) {
+        // import_users <csv_file>, each line: role,username,password (role is patient or caregiver)
+        // the file is on this machine, so only the console may import it
+        if (session.remote) {
+            session.out.println("import_users is only available at the console!");
+            return;
+        }
+        if (tokens.length != 2) {
+            session.out.println("Please try again!");
+            return;
+        }
+        try (Reader csv = new FileReader(tokens[1])) {
+            BulkImporter.Result result = new BulkImporter(Stores.get()).importCsv(csv);
+            if (session.out.isStructured()) {
+                session.out.begin("import").field("rows", result.getRows()).field("patients", result.getPatients())
+                        .field("caregivers", result.getCaregivers()).field("rejected", result.getRejected()).end();
+                for (String reason : result.getReasons()) {
+                    session.out.begin("rejected").field("reason", reason).end();
+                }
+            } else {
+                session.out.println(result.toString());
+                for (String reason : result.getReasons()) {
+                    session.out.println("  rejected " + reason);
+                }
+            }
+        } catch (IOException e) {
+            session.out.println("Could not read " + tokens[1]);
+        } catch (RejectedExecutionException e) {
+            session.out.println("Too many requests right now, please try again!");
+        } catch (IllegalStateException e) {
+            session.out.println("Please try again!");
+            e.printStackTrace();
+        } catch (SQLException e) {
+            session.out.println("Error occurred when importing users");
+            e.printStackTrace();
+        }
+    }
+
+    private static void loginPatient(Session session, String[] tokens) {
+        if (session.currentCaregiver != null || session.currentPatient != null) {
+            session.out.println("Already logged-in! Please log out first.");
             return;
         }
         if (tokens.length != 3) {
-            System.out.println("Please try again!");
+            session.out.println("Please try again!");
             return;
         }
         String username = tokens[1];
@@ -205,28 +383,34 @@ public class Scheduler {
         Patient patient = null;
         try {
             patient = new Patient.PatientGetter(username, password).get();
+        } catch (RejectedExecutionException e) {
+            session.out.println("Too many logins right now, please try again!");
+            return;
+        } catch (IllegalStateException e) {
+            // the hash failed or was interrupted: reported below as a failed login
+            e.printStackTrace();
         } catch (SQLException e) {
-            System.out.println("Error occurred when logging in");
+            session.out.println("Error occurred when logging in");
             e.printStackTrace();
         }
         if (patient == null) {
-            System.out.println("Please try again!");
+            session.out.println("Please try again!");
         } else {
-            System.out.println("Patient logged in as: " + username);
-            currentPatient = patient;
+            session.out.println("Patient logged in as: " + username);
+            session.currentPatient = patient;
         }
     }
 
-    private static void loginCaregiver(String[] tokens) {
+    private static void loginCaregiver(Session session, String[] tokens) {
         // login_caregiver <username> <password>
         // check 1: if someone's already logged-in, they need to log out first
-        if (currentCaregiver != null || currentPatient != null) {
-            System.out.println("Already logged-in! Please log out first.");
+        if (session.currentCaregiver != null || session.currentPatient != null) {
+            session.out.println("Already logged-in! Please log out first.");
             return;
         }
         // check 2: the length for tokens need to be exactly 3 to include all information (with the operation name)
         if (tokens.length != 3) {
-            System.out.println("Please try again!");
+            session.out.println("Please try again!");
             return;
         }
         String username = tokens[1];
@@ -235,356 +419,690 @@ public class Scheduler {
         Caregiver caregiver = null;
         try {
             caregiver = new Caregiver.CaregiverGetter(username, password).get();
+        } catch (RejectedExecutionException e) {
+            session.out.println("Too many logins right now, please try again!");
+            return;
+        } catch (IllegalStateException e) {
+            // the hash failed or was interrupted: reported below as a failed login
+            e.printStackTrace();
         } catch (SQLException e) {
-            System.out.println("Error occurred when logging in");
+            session.out.println("Error occurred when logging in");
             e.printStackTrace();
         }
         // check if the login was successful
         if (caregiver == null) {
-            System.out.println("Please try again!");
+            session.out.println("Please try again!");
         } else {
-            System.out.println("Caregiver logged in as: " + username);
-            currentCaregiver = caregiver;
+            session.out.println("Caregiver logged in as: " + username);
+            session.currentCaregiver = caregiver;
         }
     }
 
-    private static void searchCaregiverSchedule(String[] tokens) {
+    private static void searchCaregiverSchedule(Session session, String[] tokens) {
         // search_caregiver_schedule <date>
 
         // Both patients and caregivers can perform this operation.
-        if (currentCaregiver == null && currentPatient == null) {
-            System.out.println("Please log in first.");
+        if (session.currentCaregiver == null && session.currentPatient == null) {
+            session.out.println("Please log in first.");
             return;
         }
 
         // Output the username for the caregivers that are available for the date,
         //      along with the number of available doses left for each vaccine.
 
-        String scheduleDate = tokens[1];
-
-        // Filter out caregivers for given date in the database.
-        ConnectionManager cm = new ConnectionManager();
-        Connection con = cm.createConnection();
-
-        String getCaregivers = "SELECT Username FROM [dbo].[Availabilities] WHERE Time = ?;";
+        if (tokens.length != 2) {
+            session.out.println("Please try again!");
+            return;
+        }
+        Date scheduleDate;
+        try {
+            scheduleDate = Date.valueOf(tokens[1]);
+        } catch (IllegalArgumentException e) {
+            session.out.println("Please enter a valid date!");
+            return;
+        }
 
+        // Filter out caregivers for given date (from the in-memory availability index).
         try {
-            PreparedStatement statement = con.prepareStatement(getCaregivers);
-            statement.setString(1, scheduleDate);
-            ResultSet resultSet = statement.executeQuery();
+            List<String> caregivers = AvailabilityIndex.get().getCaregivers(scheduleDate);
 
-            System.out.println("Caregivers who are available for this date: ");
-            while (resultSet.next())
-                System.out.println(resultSet.getString("Username"));
+            if (session.out.isStructured()) {
+                for (String caregiver : caregivers) {
+                    session.out.begin("caregiver").field("date", scheduleDate).field("username", caregiver)
+                            .end();
+                }
+            } else {
+                session.out.println("Caregivers who are available for this date: ");
+                for (String caregiver : caregivers)
+                    session.out.println(caregiver);
+            }
         } catch (SQLException e) {
-            System.out.println("Error occurred when searching for caregivers.");
+            session.out.println("Error occurred when searching for caregivers.");
             e.printStackTrace();
-        } finally {
-            cm.closeConnection();
         }
 
         // Get vaccine information from the database.
-        cm = new ConnectionManager();
-        con = cm.createConnection();
+        try {
+            Map<String, Integer> vaccines = DoseInventory.get().getAll();
 
-        String getVaccines = "SELECT * FROM [dbo].[Vaccines];";
+            if (session.out.isStructured()) {
+                for (Map.Entry<String, Integer> vaccine : vaccines.entrySet()) {
+                    session.out.begin("vaccine").field("name", vaccine.getKey())
+                            .field("doses", vaccine.getValue().intValue()).end();
+                }
+            } else {
+                session.out.println("");
+                session.out.println("Vaccine available now: ");
+                session.out.println("--");
+
+                for (Map.Entry<String, Integer> vaccine : vaccines.entrySet()) {
+                    session.out.println("Name: " + vaccine.getKey());
+                    session.out.println("Doses: " + vaccine.getValue());
+                    session.out.println("--");
+                }
+            }
+        } catch (SQLException e) {
+            session.out.println("Error occurred when searching for vaccines.");
+            e.printStackTrace();
+        }
+    }
 
-        try {
-            PreparedStatement statement = con.prepareStatement(getVaccines);
-            ResultSet resultSet = statement.executeQuery();
+    private static void findEarliest(Session session, String[] tokens) {
+        // find_earliest <vaccine> [from_date] [to_date]: the first date, from today unless given, that has
+        // both a caregiver with room and a dose of the vaccine
 
-            System.out.println("");
-            System.out.println("Vaccine available now: ");
-            System.out.println("--");
+        // Both patients and caregivers can perform this operation.
+        if (session.currentCaregiver == null && session.currentPatient == null) {
+            session.out.println("Please log in first.");
+            return;
+        }
+        if (tokens.length < 2 || tokens.length > 4) {
+            session.out.println("Please try again!");
+            return;
+        }
+        String vaccine = tokens[1];
+        Date from;
+        Date to;
+        try {
+            from = tokens.length > 2 ? Date.valueOf(tokens[2]) : Date.valueOf(LocalDate.now());
+            to = tokens.length > 3 ? Date.valueOf(tokens[3]) : null;
+        } catch (IllegalArgumentException e) {
+            session.out.println("Please enter valid dates (yyyy-mm-dd)!");
+            return;
+        }
 
-            while (resultSet.next()) {
-                System.out.println("Name: " + resultSet.getString("Name"));
-                System.out.println("Doses: " + resultSet.getString("Doses"));
-                System.out.println("--");
+        try {
+            // doses are not per date, so they only decide whether there is an answer at all
+            Integer doses = DoseInventory.get().getAvailable(vaccine);
+            if (doses == null) {
+                session.out.println("Vaccine not found!");
+                return;
+            }
+            if (doses <= 0) {
+                session.out.println("Not enough available doses!");
+                return;
+            }
+            AvailabilityIndex index = AvailabilityIndex.get();
+            Date earliest = index.findEarliest(from, to);
+            if (earliest == null) {
+                session.out.println("No caregiver is available " + (to == null ? "from " + from
+                        : "between " + from + " and " + to) + "!");
+                return;
+            }
+            int open = index.getRemaining(earliest);
+            if (session.out.isStructured()) {
+                session.out.begin("earliest").field("date", earliest).field("vaccine", vaccine)
+                        .field("open", open).field("doses", doses.intValue()).end();
+            } else {
+                session.out.println("Earliest available date: " + earliest + " (" + open
+                        + " appointment(s) open, " + doses + " dose(s) of " + vaccine + " left)");
             }
         } catch (SQLException e) {
-            System.out.println("Error occurred when searching for vaccines.");
+            session.out.println("Error occurred when searching for a date.");
             e.printStackTrace();
-        } finally {
-            cm.closeConnection();
         }
     }
 
-    private static void reserve(String[] tokens) throws SQLException {
+    private static void reserve(Session session, String[] tokens) throws SQLException {
         // reserve <date> <vaccine>
 
         // Only patients can perform this operation to reserve an appointment.
-        if (currentPatient == null) {
-            System.out.println("Please log in patient account.");
+        if (session.currentPatient == null) {
+            session.out.println("Please log in patient account.");
             return;
         }
 
         // check the token length.
         if (tokens.length != 3) {
-            System.out.println("Please try again!");
+            session.out.println("Please try again!");
             return;
         }
 
         // Local variables:
-        String resDate = tokens[1];
+        Date date;
+        try {
+            date = Date.valueOf(tokens[1]);
+        } catch (IllegalArgumentException e) {
+            session.out.println("Please enter a valid date!");
+            return;
+        }
         String resVaccine = tokens[2];
-        java.sql.Date date = null;
-        String randCaregiver = "";
-        int currID = 0;
-
-        // Randomly assigned a caregiver for the reservation on that date.
-        ConnectionManager cm = new ConnectionManager();
-        Connection con = cm.createConnection();
-
-        String getRandCaregiver = "SELECT TOP 1 * FROM Availabilities WHERE Time = ? ORDER BY NEWID();";
 
+        // Claim a caregiver, take a dose and record the appointment in one go.
+        Reservation reservation;
         try {
-            PreparedStatement statement = con.prepareStatement(getRandCaregiver);
-            statement.setString(1, resDate);
-            ResultSet resultSet = statement.executeQuery();
-
-            while (resultSet.next()) {
-                date = resultSet.getDate("Time");
-                randCaregiver = resultSet.getString("Username");
-            }
+            reservation = ReservationEngine.get().reserve(session.currentPatient.getUsername(), date, resVaccine);
         } catch (SQLException e) {
-            System.out.println("Error occurred when assigning caregiver.");
+            session.out.println("Error occurred when reserving.");
             e.printStackTrace();
-        } finally {
-            cm.closeConnection();
+            return;
         }
 
-        // Output the assigned caregiver and the appointment ID for the reservation.
+        switch (reservation.getStatus()) {
+            case RESERVED:
+                // Output the assigned caregiver and the appointment ID for the reservation.
+                if (session.out.isStructured()) {
+                    writeAppointment(session, reservation.getAppointment());
+                    break;
+                }
+                printAppointment(session, reservation.getAppointment());
+                break;
+            case NO_CAREGIVER:
+                session.out.println("No caregiver is available for this date!");
+                break;
+            case NO_DOSES:
+                session.out.println("Not enough available doses!");
+                break;
+            default:
+                session.out.println("Vaccine not found!");
+        }
+    }
 
-        // Get the last ID to set the current one.
-        String getLastID = "SELECT MAX(ID) max FROM Schedule;";
+    private static void printAppointment(Session session, Appointment appointment) {
+        session.out.println("Your appointment ID is " + appointment.getId());
+        session.out.println("Your caregiver is " + appointment.getCaregiver());
+        session.out.println("Your appointment is at " + appointment.getTime() + " in " + appointment.getLocation());
+    }
 
-        cm = new ConnectionManager();
-        con = cm.createConnection();
+    private static void waitlist(Session session, String[] tokens) {
+        // waitlist <date> [end_date] <vaccine>: books straight away if there is room, otherwise waits in line
+        // for the date (or any date of the range) and is booked as soon as a caregiver or doses are added
 
+        // Only patients can wait for an appointment.
+        if (session.currentPatient == null) {
+            session.out.println("Please log in patient account.");
+            return;
+        }
+        if (tokens.length != 3 && tokens.length != 4) {
+            session.out.println("Please try again!");
+            return;
+        }
+        Date from;
+        Date to;
         try {
-            PreparedStatement statement = con.prepareStatement(getLastID);
-            ResultSet resultSet = statement.executeQuery();
-
-            if (resultSet.getRow() == 0)
-                currID = 1;
-            else currID = resultSet.getInt("max") + 1;
-        } catch (SQLException e) {
-            System.out.println("Error occurred when assigning schedule ID.");
-            e.printStackTrace();
-        } finally {
-            cm.closeConnection();
+            from = Date.valueOf(tokens[1]);
+            to = tokens.length == 4 ? Date.valueOf(tokens[2]) : from;
+        } catch (IllegalArgumentException e) {
+            session.out.println("Please enter valid dates (yyyy-mm-dd)!");
+            return;
         }
-
-        // Get the patient username.
-        String P_username = currentPatient.getUsername();
-
-        cm = new ConnectionManager();
-        con = cm.createConnection();
-
-        String assignSchedule = "INSERT INTO Schedule VALUES (?, ?, ?, ?, ?, ?);";
+        long days = from.toLocalDate().until(to.toLocalDate(), ChronoUnit.DAYS) + 1;
+        if (days < 1 || days > Waitlist.MAX_DAYS) {
+            session.out.println("The end date must be on or after the start date, and at most "
+                    + Waitlist.MAX_DAYS + " days later!");
+            return;
+        }
+        String vaccine = tokens[tokens.length - 1];
 
         try {
-            PreparedStatement statement = con.prepareStatement(assignSchedule);
-            statement.setInt(1, currID);
-            statement.setString(2, P_username);
-            statement.setString(3, randCaregiver);
-            statement.setString(4, resVaccine);
-            statement.setDate(5, date);
-            statement.setString(6, "loc01");
-            statement.executeUpdate();
+            if (!DoseInventory.get().contains(vaccine)) {
+                session.out.println("Vaccine not found!");
+                return;
+            }
+            if (Waitlist.get().isWaiting(session.currentPatient.getUsername())) {
+                session.out.println("You are already on the waitlist!");
+                return;
+            }
+            Appointment appointment = Waitlist.get().join(session.currentPatient.getUsername(), from, to, vaccine);
+            if (appointment != null) {
+                if (session.out.isStructured()) {
+                    writeAppointment(session, appointment);
+                } else {
+                    printAppointment(session, appointment);
+                }
+            } else if (session.out.isStructured()) {
+                session.out.begin("waitlisted").field("patient", session.currentPatient.getUsername())
+                        .field("from", from).field("to", to).field("vaccine", vaccine).end();
+            } else {
+                session.out.println("No appointment is available yet; you are on the waitlist"
+                        + (days == 1 ? " for " + from : " from " + from + " to " + to) + "!");
+            }
         } catch (SQLException e) {
-            System.out.println("Error occurred when uploading schedule.");
+            session.out.println("Error occurred when joining the waitlist.");
             e.printStackTrace();
-        } finally {
-            cm.closeConnection();
         }
-        System.out.println("Your appointment ID is " + currID);
-        System.out.println("Your caregiver is " + randCaregiver);
     }
 
-    private static void uploadAvailability(String[] tokens) {
-        // upload_availability <date>
+    // tells whoever added capacity how many waiting patients it served
+    private static void printMatched(Session session, int matched) {
+        if (matched > 0) {
+            session.out.println("Matched " + matched + " waitlisted patient(s)!");
+        }
+    }
+
+    private static void uploadAvailability(Session session, String[] tokens) {
+        // upload_availability <date> [hours] [capacity] [location]
+        // upload_availability <start> <end> [weekday-mask] [hours] [capacity] [location]
         // check 1: check if the current logged-in user is a caregiver
-        if (currentCaregiver == null) {
-            System.out.println("Please login as a caregiver first!");
+        if (session.currentCaregiver == null) {
+            session.out.println("Please login as a caregiver first!");
             return;
         }
-        // check 2: the length for tokens need to be exactly 2 to include all information (with the operation name)
-        if (tokens.length != 2) {
-            System.out.println("Please try again!");
+        // check 2: either a single date, or a range with an optional weekday mask (e.g. 1111100 = Mon-Fri);
+        // then optionally the working hours split into slots (hh:mm-hh:mm/minutes), how many patients each
+        // slot takes, and where
+        if (tokens.length < 2 || tokens.length > 7) {
+            session.out.println("Please try again!");
+            return;
+        }
+        boolean range = tokens.length > 2 && tokens[2].matches("\\d{4}-\\d{2}-\\d{2}");
+        String mask = null;
+        String hours = null;
+        String location = null;
+        int capacity = DEFAULT_SLOT_CAPACITY;
+        boolean capacityGiven = false;
+        for (int i = range ? 3 : 2; i < tokens.length; i++) {
+            String token = tokens[i];
+            if (range && i == 3 && token.matches("[01]{7}")) {
+                mask = token;
+            } else if (hours == null && location == null && !capacityGiven
+                    && token.matches("\\d{2}:\\d{2}-\\d{2}:\\d{2}(/\\d{1,3})?")) {
+                hours = token;
+            } else if (!capacityGiven && location == null && token.matches("\\d{1,4}")) {
+                capacity = Integer.parseInt(token);
+                capacityGiven = true;
+            } else if (i == tokens.length - 1) {
+                location = token;
+            } else {
+                session.out.println("Please try again!");
+                return;
+            }
+        }
+        if (capacity < 1 || capacity > MAX_SLOT_CAPACITY) {
+            session.out.println("Capacity must be between 1 and " + MAX_SLOT_CAPACITY + " patients per slot!");
+            return;
+        }
+        LocalTime start = DEFAULT_START;
+        LocalTime end = DEFAULT_END;
+        int slotMinutes = DEFAULT_SLOT_MINUTES;
+        if (hours != null) {
+            try {
+                start = LocalTime.parse(hours.substring(0, 5));
+                end = LocalTime.parse(hours.substring(6, 11));
+            } catch (DateTimeException e) {
+                session.out.println("Please enter valid working hours (e.g. 09:00-17:00/15)!");
+                return;
+            }
+            if (hours.length() > 11) {
+                slotMinutes = Integer.parseInt(hours.substring(12));
+            }
+        }
+        long slots = slotMinutes == 0 || !end.isAfter(start)
+                ? 0 : Duration.between(start, end).toMinutes() / slotMinutes;
+        if (slots < 1 || slots > Availability.MAX_SLOTS) {
+            session.out.println("Working hours must make 1 to " + Availability.MAX_SLOTS
+                    + " slots (e.g. 09:00-17:00/15)!");
             return;
         }
         String date = tokens[1];
         try {
-            Date d = Date.valueOf(date);
-            currentCaregiver.uploadAvailability(d);
-            System.out.println("Availability uploaded!");
+            Availability day = new Availability(Date.valueOf(date), session.currentCaregiver.getUsername(),
+                    location == null ? DEFAULT_LOCATION : location, start, slotMinutes, (int) slots, capacity);
+            if (!range) {
+                session.currentCaregiver.uploadAvailability(day);
+                session.out.println("Availability uploaded!");
+                printMatched(session, Waitlist.get().matchDates(day.getDate(), day.getDate()));
+            } else {
+                Date last = Date.valueOf(tokens[2]);
+                int added = session.currentCaregiver.uploadAvailability(day, last, mask);
+                session.out.println("Availability uploaded for " + added + " day(s)!");
+                if (added > 0) {
+                    printMatched(session, Waitlist.get().matchDates(day.getDate(), last));
+                }
+            }
         } catch (IllegalArgumentException e) {
-            System.out.println("Please enter a valid date!");
+            session.out.println(range ? "Please enter a valid date range!" : "Please enter a valid date!");
         } catch (SQLException e) {
-            System.out.println("Error occurred when uploading availability");
+            session.out.println("Error occurred when uploading availability");
             e.printStackTrace();
         }
     }
 
-    private static void cancel(String[] tokens) {
+    private static void cancel(Session session, String[] tokens) {
         // cancel <appointment_id>
-        // check 1: check if the current logged-in user is a caregiver
-        if (currentCaregiver == null || currentPatient == null) {
-            System.out.println("Please login first!");
+        // check 1: patients and caregivers can cancel their own appointments
+        if (session.currentCaregiver == null && session.currentPatient == null) {
+            session.out.println("Please login first!");
             return;
         }
 
         // check 2: the length for tokens need to be exactly 2 to include all information (with the operation name)
         if (tokens.length != 2) {
-            System.out.println("Please try again!");
+            session.out.println("Please try again!");
+            return;
+        }
+        int id;
+        try {
+            id = Integer.parseInt(tokens[1]);
+        } catch (NumberFormatException e) {
+            session.out.println("Please try again!");
             return;
         }
 
-        // local variables
-        String appointID = tokens[1];
-
-        // connect to the database
-        ConnectionManager cm = new ConnectionManager();
-        Connection con = cm.createConnection();
+        try {
+            // the slot and the dose go back in the same step as the appointment is deleted
+            Appointment cancelled = ReservationEngine.get().cancel(id,
+                    session.currentPatient == null ? null : session.currentPatient.getUsername(),
+                    session.currentCaregiver == null ? null : session.currentCaregiver.getUsername());
+            if (cancelled == null) {
+                session.out.println("You have no appointment with ID " + id + "!");
+                return;
+            }
+            if (session.out.isStructured()) {
+                writeCancelled(session, cancelled);
+            } else {
+                session.out.println("Appointment " + id + " on " + cancelled.getDate() + " cancelled!");
+            }
+            printMatched(session, Waitlist.get().matchDates(cancelled.getDate(), cancelled.getDate()));
+        } catch (SQLException e) {
+            session.out.println("Error occurred when canceling schedule.");
+            e.printStackTrace();
+        }
+    }
 
-        String getAppointment = "DELETE FROM Schedule WHERE ID= ?;";
+    private static void cancelDay(Session session, String[] tokens) {
+        // cancel_day <date>: cancels all of the caregiver's appointments on the date at once
+        if (session.currentCaregiver == null) {
+            session.out.println("Please login as a caregiver first!");
+            return;
+        }
+        if (tokens.length != 2) {
+            session.out.println("Please try again!");
+            return;
+        }
+        Date date;
+        try {
+            date = Date.valueOf(tokens[1]);
+        } catch (IllegalArgumentException e) {
+            session.out.println("Please enter a valid date!");
+            return;
+        }
 
         try {
-            PreparedStatement statement = con.prepareStatement(getAppointment);
-            statement.setString(1, appointID);
+            List<Appointment> cancelled = ReservationEngine.get().cancelDay(session.currentCaregiver.getUsername(),
+                    date);
+            if (session.out.isStructured()) {
+                for (Appointment appointment : cancelled) {
+                    writeCancelled(session, appointment);
+                }
+            } else {
+                session.out.println("Cancelled " + cancelled.size() + " appointment(s) on " + date + "!");
+            }
+            if (!cancelled.isEmpty()) {
+                printMatched(session, Waitlist.get().matchDates(date, date));
+            }
         } catch (SQLException e) {
-            System.out.println("Error occurred when canceling schedule.");
+            session.out.println("Error occurred when canceling schedule.");
             e.printStackTrace();
-        } finally {
-            cm.closeConnection();
         }
     }
 
-    private static void addDoses(String[] tokens) {
+    private static void writeCancelled(Session session, Appointment appointment) {
+        session.out.begin("cancelled")
+                .field("id", appointment.getId())
+                .field("patient", appointment.getPatient())
+                .field("caregiver", appointment.getCaregiver())
+                .field("vaccine", appointment.getVaccine())
+                .field("date", appointment.getDate())
+                .field("time", appointment.getTime())
+                .end();
+    }
+
+    private static void addDoses(Session session, String[] tokens) {
         // add_doses <vaccine> <number>
         // check 1: check if the current logged-in user is a caregiver
-        if (currentCaregiver == null) {
-            System.out.println("Please login as a caregiver first!");
+        if (session.currentCaregiver == null) {
+            session.out.println("Please login as a caregiver first!");
             return;
         }
         // check 2: the length for tokens need to be exactly 3 to include all information (with the operation name)
         if (tokens.length != 3) {
-            System.out.println("Please try again!");
+            session.out.println("Please try again!");
             return;
         }
         String vaccineName = tokens[1];
-        int doses = Integer.parseInt(tokens[2]);
-        Vaccine vaccine = null;
+        int doses;
         try {
-            vaccine = new Vaccine.VaccineGetter(vaccineName).get();
-        } catch (SQLException e) {
-            System.out.println("Error occurred when adding doses");
-            e.printStackTrace();
+            doses = Integer.parseInt(tokens[2]);
+        } catch (NumberFormatException e) {
+            session.out.println("Please try again!");
+            return;
         }
-        // check 3: if getter returns null, it means that we need to create the vaccine and insert it into the Vaccines
-        //          table
-        if (vaccine == null) {
-            try {
+        // check 3: only a positive number of doses can be added
+        if (doses <= 0) {
+            session.out.println("Please try again!");
+            return;
+        }
+        Vaccine vaccine;
+        try {
+            vaccine = new Vaccine.VaccineGetter(vaccineName).get();
+            // check 4: if getter returns null, it means that we need to create the vaccine and insert it into the
+            //          Vaccines table
+            if (vaccine == null) {
                 vaccine = new Vaccine.VaccineBuilder(vaccineName, doses).build();
                 vaccine.saveToDB();
-            } catch (SQLException e) {
-                System.out.println("Error occurred when adding doses");
-                e.printStackTrace();
+            } else {
+                // if the vaccine is not null, meaning that the vaccine already exists in our table
+                vaccine.increaseAvailableDoses(doses);
             }
-        } else {
-            // if the vaccine is not null, meaning that the vaccine already exists in our table
+        } catch (SQLException | IllegalArgumentException e) {
+            session.out.println("Error occurred when adding doses");
+            e.printStackTrace();
+            return;
+        }
+        session.out.println("Doses updated!");
+        if (doses > 0) {
             try {
-                vaccine.increaseAvailableDoses(doses);
+                printMatched(session, Waitlist.get().matchVaccine(vaccineName));
             } catch (SQLException e) {
-                System.out.println("Error occurred when adding doses");
+                session.out.println("Error occurred when matching the waitlist");
                 e.printStackTrace();
             }
         }
-        System.out.println("Doses updated!");
     }
 
-    private static void showAppointments(String[] tokens) {
+    private static void showAppointments(Session session, String[] tokens) {
+        // show_appointments [after_id] [limit] [from_date] [to_date]
         // For caregivers, appointment ID, vaccine name, date, and patient name.
         // For patients, appointment ID, vaccine name, date, and caregiver name.
 
         // check if already log in
-        if (currentCaregiver == null && currentPatient == null) {
-            System.out.println("Please log in first.");
+        if (session.currentCaregiver == null && session.currentPatient == null) {
+            session.out.println("Please log in first.");
+            return;
+        }
+        if (tokens.length > 5) {
+            session.out.println("Please try again!");
             return;
         }
 
         // check who is logging in, caregiver or patient
-        boolean isPatient = currentCaregiver == null;
-
-        // local variables
-        String yourName = isPatient? currentPatient.getUsername() : currentCaregiver.getUsername();
-        List<Integer> appointID = new ArrayList<>();
-        List<String> vaccineName = new ArrayList<>();
-        List<Date> appointDate = new ArrayList<>();
-        List<String> patientOrCaregiverName = new ArrayList<>();
-
-        // connect to the database
-        ConnectionManager cm = new ConnectionManager();
-        Connection con = cm.createConnection();
-
-        String getAppointment = "";
-
-        if (isPatient)
-            getAppointment = "SELECT * FROM [dbo].[Schedule] WHERE P_Username = ?;";
-        else getAppointment = "SELECT * FROM [dbo].[Schedule] WHERE C_Username = ?;";
+        boolean isPatient = session.currentCaregiver == null;
+        String yourName = isPatient? session.currentPatient.getUsername() : session.currentCaregiver.getUsername();
 
+        AppointmentQuery query = isPatient ? AppointmentQuery.forPatient(yourName)
+                : AppointmentQuery.forCaregiver(yourName);
+        int limit = APPOINTMENT_PAGE_SIZE;
         try {
-            PreparedStatement statement = con.prepareStatement(getAppointment);
-            statement.setString(1, yourName);
-            ResultSet resultSet = statement.executeQuery();
-
-            while (resultSet.next()) {
-                appointID.add(resultSet.getInt("ID"));
-                vaccineName.add(resultSet.getString("V_Name"));
-                appointDate.add(resultSet.getDate("ScheduleDate"));
-
-                if (isPatient)
-                    patientOrCaregiverName.add(resultSet.getString("C_Username"));
-                else patientOrCaregiverName.add(resultSet.getString("P_Username"));
+            if (tokens.length > 1) {
+                query.after(Integer.parseInt(tokens[1]));
+            }
+            if (tokens.length > 2) {
+                limit = Integer.parseInt(tokens[2]);
+            }
+            if (tokens.length > 3) {
+                query.from(Date.valueOf(tokens[3]));
             }
+            if (tokens.length > 4) {
+                query.to(Date.valueOf(tokens[4]));
+            }
+        } catch (IllegalArgumentException e) {
+            // also covers NumberFormatException
+            session.out.println("Please enter a valid appointment ID, limit and dates (yyyy-mm-dd)!");
+            return;
+        }
+        if (limit <= 0 || limit > MAX_APPOINTMENT_PAGE_SIZE) {
+            session.out.println("Limit must be between 1 and " + MAX_APPOINTMENT_PAGE_SIZE + "!");
+            return;
+        }
+        query.limit(limit);
+
+        // rows are written to the session's buffer as they arrive instead of being collected first
+        ResultWriter out = session.out;
+        boolean structured = out.isStructured();
+        if (!structured) {
+            out.println("Account: " + yourName);
+            out.println("-----------------");
+        }
+        int[] lastId = {0};
+        int count;
+        try {
+            count = Stores.get().streamAppointments(query, appointment -> {
+                lastId[0] = appointment.getId();
+                if (structured) {
+                    writeAppointment(session, appointment);
+                } else if (isPatient) {
+                    out.println("Your appointment ID: " + appointment.getId());
+                    out.println("Your vaccine name: " + appointment.getVaccine());
+                    out.println("Appointment date: " + appointment.getDate());
+                    out.println("Appointment time: " + appointment.getTime());
+                    out.println("Your caregiver: " + appointment.getCaregiver());
+                    out.println("-----------------");
+                } else {
+                    out.println("Appointment ID: " + appointment.getId());
+                    out.println("Vaccine name: " + appointment.getVaccine());
+                    out.println("Appointment date: " + appointment.getDate());
+                    out.println("Appointment time: " + appointment.getTime());
+                    out.println("Your patient: " + appointment.getPatient());
+                    out.println("-----------------");
+                }
+            });
         } catch (SQLException e) {
-            System.out.println("Error occurred when finding schedule.");
+            out.println("Error occurred when finding schedule.");
             e.printStackTrace();
-        } finally {
-            cm.closeConnection();
+            return;
+        }
+        if (count == limit) {
+            // the same date filter, resuming after the last ID shown
+            String[] next = Arrays.copyOf(tokens, Math.max(tokens.length, 3));
+            next[1] = String.valueOf(lastId[0]);
+            next[2] = String.valueOf(limit);
+            if (structured) {
+                out.begin("more").field("command", String.join(" ", next)).end();
+            } else {
+                out.println("More appointments: " + String.join(" ", next));
+            }
         }
+    }
 
-        // print out the result
-        System.out.println("Account: " + yourName);
-        System.out.println("-----------------");
+    private static void writeAppointment(Session session, Appointment appointment) {
+        session.out.begin("appointment")
+                .field("id", appointment.getId())
+                .field("patient", appointment.getPatient())
+                .field("caregiver", appointment.getCaregiver())
+                .field("vaccine", appointment.getVaccine())
+                .field("date", appointment.getDate())
+                .field("time", appointment.getTime())
+                .field("location", appointment.getLocation())
+                .end();
+    }
 
-        for (int i = 0; i < appointID.size(); i++) {
-            if (isPatient) {
-                System.out.println("Your appointment ID: " + appointID.get(i));
-                System.out.println("Your vaccine name: " + vaccineName.get(i));
-                System.out.println("Appointment date: " + appointDate.get(i));
-                System.out.println("Your caregiver: " + patientOrCaregiverName.get(i));
-            } else {
-                System.out.println("Appointment ID: " + appointID.get(i));
-                System.out.println("Vaccine name: " + vaccineName.get(i));
-                System.out.println("Appointment date: " + appointDate.get(i));
-                System.out.println("Your patient: " + patientOrCaregiverName.get(i));
+    private static void stats(Session session, String[] tokens) {
+        // stats: latency and database work per command since startup (also published over JMX)
+        ResultWriter out = session.out;
+        List<CommandStats> commands = Metrics.getCommands();
+        LatencyHistogram acquire = Metrics.getConnectionAcquire();
+        ConnectionPool pool = ConnectionPool.getExistingInstance();
+        WarmStart warmStart = WarmStart.getExisting();
+        if (out.isStructured()) {
+            for (CommandStats command : commands) {
+                out.begin("command_stats").field("command", command.getName())
+                        .field("count", command.getCount()).field("errors", command.getErrors())
+                        .field("p50_us", command.getP50Micros()).field("p99_us", command.getP99Micros())
+                        .field("p999_us", command.getP999Micros()).field("max_us", command.getMaxMicros())
+                        .field("queries_per_command", command.getQueriesPerCommand())
+                        .field("rows_per_command", command.getRowsPerCommand())
+                        .field("acquire_us_per_command", command.getConnectionAcquireMicrosPerCommand())
+                        .end();
+            }
+            out.begin("database_stats").field("queries", Metrics.getQueries()).field("rows", Metrics.getRows())
+                    .field("acquires", acquire.getCount()).field("acquire_p50_us", acquire.getPercentile(50))
+                    .field("acquire_p99_us", acquire.getPercentile(99)).field("acquire_max_us", acquire.getMax())
+                    .field("statement_prepares", pool == null ? 0 : pool.getStatementPrepares())
+                    .field("statement_cache_hits", pool == null ? 0 : pool.getStatementCacheHits())
+                    .end();
+            if (warmStart != null) {
+                out.begin("snapshot_stats").field("rows", warmStart.getSnapshot().size())
+                        .field("changed_rows", warmStart.getChangedRows())
+                        .field("load_ms", warmStart.getLoadMillis()).end();
             }
-            System.out.println("-----------------");
+            return;
+        }
+
+        out.println(String.format("%-26s %8s %6s %9s %9s %9s %9s %8s %9s %10s", "command", "count", "errors",
+                "p50 us", "p99 us", "p99.9 us", "max us", "queries", "rows", "acquire us"));
+        for (CommandStats command : commands) {
+            out.println(String.format("%-26s %8d %6d %9d %9d %9d %9d %8.2f %9.2f %10.1f", command.getName(),
+                    command.getCount(), command.getErrors(), command.getP50Micros(), command.getP99Micros(),
+                    command.getP999Micros(), command.getMaxMicros(), command.getQueriesPerCommand(),
+                    command.getRowsPerCommand(), command.getConnectionAcquireMicrosPerCommand()));
+        }
+        out.println("(queries, rows and acquire us are per command)");
+        out.println(String.format("database: %d queries, %d rows; connection acquire: %d times, p50 %d us, "
+                        + "p99 %d us, max %d us", Metrics.getQueries(), Metrics.getRows(), acquire.getCount(),
+                acquire.getPercentile(50), acquire.getPercentile(99), acquire.getMax()));
+        if (pool != null) {
+            out.println(String.format("connection pool: %d active, %d idle of %d; statements prepared %d, "
+                            + "reused %d", pool.getActiveCount(), pool.getIdleCount(), pool.getMaxSize(),
+                    pool.getStatementPrepares(), pool.getStatementCacheHits()));
+        }
+        if (warmStart != null) {
+            out.println(String.format("snapshot: %d rows, %d changed rows fetched last time; started in %d ms",
+                    warmStart.getSnapshot().size(), warmStart.getChangedRows(), warmStart.getLoadMillis()));
+        }
+    }
+
+    private static void outputFormat(Session session, String[] tokens) {
+        // output_format <text|jsonl|csv>
+        ResultWriter.Format format = tokens.length == 2 ? ResultWriter.Format.parse(tokens[1]) : null;
+        if (format == null) {
+            session.out.println("Please choose one of: text, jsonl, csv");
+            return;
         }
+        session.out.setFormat(format);
+        session.out.println("Output format set to " + tokens[1] + ".");
     }
 
-    private static void logout(String[] tokens) {
+    private static void logout(Session session, String[] tokens) {
         // check if someone has login
-        if (currentCaregiver == null || currentPatient == null) {
-            System.out.println("Please login first.");
+        if (!session.isLoggedIn()) {
+            session.out.println("Please login first.");
             return;
         }
 
         // logout
-        currentCaregiver = null;
-        currentPatient = null;
+        session.currentCaregiver = null;
+        session.currentPatient = null;
+        session.out.println("Successfully logged out!");
     }
 }
\ No newline at end of file
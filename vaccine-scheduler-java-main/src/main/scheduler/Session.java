@@ -0,0 +1,54 @@
+package scheduler;
+
+import scheduler.model.Caregiver;
+import scheduler.model.Patient;
+import scheduler.util.ResultWriter;
+
+import java.io.BufferedWriter;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.Charset;
+
+/**
+ * The state of one user of the scheduler: who is logged in and where command output goes.
+ * The console has a single session; in server mode every connection gets its own.
+ */
+public class Session {
+
+    // default output format for new sessions: text, jsonl or csv
+    private static final ResultWriter.Format DEFAULT_FORMAT = defaultFormat();
+
+    // objects to keep track of the currently logged-in user
+    // Note: it is always true that at most one of currentCaregiver and currentPatient is not null
+    //       since only one user can be logged-in at a time
+    Caregiver currentCaregiver = null;
+    Patient currentPatient = null;
+
+    // buffered; Scheduler.execute flushes it once per command
+    final ResultWriter out;
+    // a server connection rather than the console: no commands that read local files
+    final boolean remote;
+
+    public Session(OutputStream out) {
+        this(out, Charset.defaultCharset(), false);
+    }
+
+    public Session(OutputStream out, Charset charset, boolean remote) {
+        this.out = new ResultWriter(new BufferedWriter(new OutputStreamWriter(out, charset)), DEFAULT_FORMAT);
+        this.remote = remote;
+    }
+
+    private static ResultWriter.Format defaultFormat() {
+        String value = System.getenv("SchedulerOutput");
+        ResultWriter.Format format = value == null ? null : ResultWriter.Format.parse(value.trim());
+        return format == null ? ResultWriter.Format.TEXT : format;
+    }
+
+    public ResultWriter getOut() {
+        return out;
+    }
+
+    public boolean isLoggedIn() {
+        return currentCaregiver != null || currentPatient != null;
+    }
+}
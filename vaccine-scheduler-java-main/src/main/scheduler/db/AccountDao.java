@@ -0,0 +1,165 @@
+package scheduler.db;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * SQL for the two account tables, Patients and Caregivers, which share Username/Salt/Hash columns.
+ * Every method runs on the connection it is given; statements and result sets are closed before it returns.
+ */
+public abstract class AccountDao {
+
+    private static final int LOOKUP_CHUNK = 1000;
+    private static final int INSERT_BATCH = 1000;
+
+    private final String exists;
+    private final String getCredentials;
+    private final String updateCredentials;
+    private final String getUsernames;
+    private final String getUsernamesChanged;
+    private final String findExisting;
+
+    protected AccountDao(String table) {
+        this.exists = "SELECT 1 FROM " + table + " WHERE Username = ?";
+        this.getCredentials = "SELECT Salt, Hash FROM " + table + " WHERE Username = ?";
+        this.updateCredentials = "UPDATE " + table + " SET Salt = ?, Hash = ? WHERE Username = ?";
+        this.getUsernames = "SELECT Username FROM " + table;
+        this.getUsernamesChanged = "SELECT Username FROM " + table
+                + " WHERE RowVer >= CONVERT(binary(8), CAST(? AS bigint))";
+        this.findExisting = "SELECT Username FROM " + table + " WHERE Username IN (";
+    }
+
+    // parameters: username, salt, hash
+    protected abstract String insertSql();
+
+    // parameters: username, salt, hash, username (for the NOT EXISTS check)
+    protected abstract String insertIfAbsentSql();
+
+    public boolean exists(Connection con, String username) throws SQLException {
+        try (PreparedStatement statement = con.prepareStatement(exists)) {
+            statement.setString(1, username);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return resultSet.next();
+            }
+        }
+    }
+
+    public void insert(Connection con, String username, byte[] salt, byte[] hash) throws SQLException {
+        try (PreparedStatement statement = con.prepareStatement(insertSql())) {
+            statement.setString(1, username);
+            statement.setBytes(2, salt);
+            statement.setBytes(3, hash);
+            statement.executeUpdate();
+        }
+    }
+
+    // returns null if there is no such account
+    public Credentials getCredentials(Connection con, String username) throws SQLException {
+        try (PreparedStatement statement = con.prepareStatement(getCredentials)) {
+            statement.setString(1, username);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                if (resultSet.next()) {
+                    return new Credentials(resultSet.getBytes("Salt"), resultSet.getBytes("Hash"));
+                }
+                return null;
+            }
+        }
+    }
+
+    public void updateCredentials(Connection con, String username, byte[] salt, byte[] hash) throws SQLException {
+        try (PreparedStatement statement = con.prepareStatement(updateCredentials)) {
+            statement.setBytes(1, salt);
+            statement.setBytes(2, hash);
+            statement.setString(3, username);
+            statement.executeUpdate();
+        }
+    }
+
+    public List<String> getUsernames(Connection con) throws SQLException {
+        List<String> usernames = new ArrayList<>();
+        try (PreparedStatement statement = con.prepareStatement(getUsernames);
+             ResultSet resultSet = statement.executeQuery()) {
+            while (resultSet.next()) {
+                usernames.add(resultSet.getString("Username"));
+            }
+        }
+        return usernames;
+    }
+
+    // the accounts created (or given a new password) at or after the change version
+    public List<String> getUsernamesChangedSince(Connection con, long version) throws SQLException {
+        List<String> usernames = new ArrayList<>();
+        try (PreparedStatement statement = con.prepareStatement(getUsernamesChanged)) {
+            statement.setLong(1, version);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    usernames.add(resultSet.getString("Username"));
+                }
+            }
+        }
+        return usernames;
+    }
+
+    // one IN (...) query per chunk of usernames, well below SQL Server's 2100 parameter limit
+    public Set<String> findExisting(Connection con, Collection<String> usernames) throws SQLException {
+        Set<String> existing = new HashSet<>();
+        List<String> all = new ArrayList<>(usernames);
+        for (int from = 0; from < all.size(); from += LOOKUP_CHUNK) {
+            List<String> chunk = all.subList(from, Math.min(all.size(), from + LOOKUP_CHUNK));
+            StringBuilder query = new StringBuilder(findExisting);
+            for (int i = 0; i < chunk.size(); i++) {
+                query.append(i == 0 ? "?" : ", ?");
+            }
+            query.append(")");
+            try (PreparedStatement statement = con.prepareStatement(query.toString())) {
+                for (int i = 0; i < chunk.size(); i++) {
+                    statement.setString(i + 1, chunk.get(i));
+                }
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    while (resultSet.next()) {
+                        existing.add(resultSet.getString("Username"));
+                    }
+                }
+            }
+        }
+        return existing;
+    }
+
+    /**
+     * Inserts the accounts in batches, committing after each batch (the connection must not be in
+     * auto-commit mode). Usernames that already exist are skipped; returns the ones added.
+     */
+    public List<String> insertAllIfAbsent(Connection con, Map<String, Credentials> accounts) throws SQLException {
+        List<String> usernames = new ArrayList<>(accounts.keySet());
+        List<String> added = new ArrayList<>();
+        try (PreparedStatement statement = con.prepareStatement(insertIfAbsentSql())) {
+            for (int from = 0; from < usernames.size(); from += INSERT_BATCH) {
+                List<String> batch = usernames.subList(from, Math.min(usernames.size(), from + INSERT_BATCH));
+                for (String username : batch) {
+                    Credentials credentials = accounts.get(username);
+                    statement.setString(1, username);
+                    statement.setBytes(2, credentials.getSalt());
+                    statement.setBytes(3, credentials.getHash());
+                    statement.setString(4, username);
+                    statement.addBatch();
+                }
+                int[] counts = statement.executeBatch();
+                con.commit();
+                for (int i = 0; i < counts.length; i++) {
+                    if (counts[i] > 0) {
+                        added.add(batch.get(i));
+                    }
+                }
+            }
+        }
+        return added;
+    }
+}
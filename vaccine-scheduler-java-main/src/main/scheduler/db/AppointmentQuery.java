@@ -0,0 +1,76 @@
+package scheduler.db;
+
+import java.sql.Date;
+
+/**
+ * Which appointments to list: those of one patient or one caregiver, in ID order, starting after a given
+ * ID (keyset pagination), optionally restricted to a date range, at most {@code limit} of them.
+ */
+public class AppointmentQuery {
+    private final boolean patient;
+    private final String username;
+    private int afterId = 0;
+    private Date from = null;
+    private Date to = null;
+    private int limit = Integer.MAX_VALUE;
+
+    private AppointmentQuery(boolean patient, String username) {
+        this.patient = patient;
+        this.username = username;
+    }
+
+    public static AppointmentQuery forPatient(String username) {
+        return new AppointmentQuery(true, username);
+    }
+
+    public static AppointmentQuery forCaregiver(String username) {
+        return new AppointmentQuery(false, username);
+    }
+
+    // only appointments with an ID greater than this one
+    public AppointmentQuery after(int id) {
+        this.afterId = id;
+        return this;
+    }
+
+    // only appointments on or after this date; null for no lower bound
+    public AppointmentQuery from(Date date) {
+        this.from = date;
+        return this;
+    }
+
+    // only appointments on or before this date; null for no upper bound
+    public AppointmentQuery to(Date date) {
+        this.to = date;
+        return this;
+    }
+
+    public AppointmentQuery limit(int limit) {
+        this.limit = limit;
+        return this;
+    }
+
+    public boolean isPatient() {
+        return patient;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public int getAfterId() {
+        return afterId;
+    }
+
+    public Date getFrom() {
+        return from;
+    }
+
+    public Date getTo() {
+        return to;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+}
@@ -0,0 +1,168 @@
+package scheduler.db;
+
+import scheduler.model.Availability;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.util.ArrayList;
+import java.util.List;
+
+// SQL for the Availabilities table
+public class AvailabilityDao {
+
+    private static final String COLUMNS =
+            "Time, Username, Location, StartTime, SlotMinutes, Slots, SlotCapacity, Capacity";
+    private static final String INSERT =
+            "INSERT INTO Availabilities (" + COLUMNS + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+    // the NOT EXISTS check skips dates already on the (Time, Username) primary key
+    private static final String INSERT_IF_ABSENT = "INSERT INTO Availabilities (" + COLUMNS + ") " +
+            "SELECT ?, ?, ?, ?, ?, ?, ?, ? " +
+            "WHERE NOT EXISTS (SELECT 1 FROM Availabilities WITH (UPDLOCK, HOLDLOCK) " +
+            "WHERE Time = ? AND Username = ?)";
+    // one row per caregiver-day and booked time slot, with how many appointments that slot has
+    private static final String SELECT_DAYS =
+            "SELECT a.Time, a.Username, a.Location, a.StartTime, a.SlotMinutes, a.Slots, a.SlotCapacity, " +
+            "       s.ScheduleTime, COUNT(s.ID) AS Booked " +
+            "FROM Availabilities a LEFT JOIN Schedule s ON s.C_Username = a.Username AND s.ScheduleDate = a.Time ";
+    private static final String GROUP_DAYS =
+            "GROUP BY a.Time, a.Username, a.Location, a.StartTime, a.SlotMinutes, a.Slots, a.SlotCapacity, " +
+            "         s.ScheduleTime " +
+            "ORDER BY a.Time, a.Username";
+    private static final String GET_ALL = SELECT_DAYS + GROUP_DAYS;
+    // one caregiver-day as reserve sees it: the per-slot counts, plus the Booked, Capacity and FullSlots
+    // columns RESERVE actually checks
+    private static final String GET_DAY =
+            "SELECT a.Time, a.Username, a.Location, a.StartTime, a.SlotMinutes, a.Slots, a.SlotCapacity, " +
+            "       a.Booked AS DayBooked, a.Capacity, a.FullSlots, s.ScheduleTime, COUNT(s.ID) AS Booked " +
+            "FROM Availabilities a LEFT JOIN Schedule s ON s.C_Username = a.Username AND s.ScheduleDate = a.Time " +
+            "WHERE a.Username = ? AND a.Time = ? " +
+            "GROUP BY a.Time, a.Username, a.Location, a.StartTime, a.SlotMinutes, a.Slots, a.SlotCapacity, " +
+            "         a.Booked, a.Capacity, a.FullSlots, s.ScheduleTime";
+    // the days written at or after a rowversion, found through IX_Availabilities_RowVer
+    static final String GET_CHANGED = SELECT_DAYS +
+            "WHERE a.RowVer >= CONVERT(binary(8), CAST(? AS bigint)) " + GROUP_DAYS;
+
+    public void insert(Connection con, Availability availability) throws SQLException {
+        try (PreparedStatement statement = con.prepareStatement(INSERT)) {
+            bind(statement, availability);
+            statement.executeUpdate();
+        }
+    }
+
+    // sends all days as one batch; returns the dates that were actually added
+    public List<Date> insertAllIfAbsent(Connection con, List<Availability> availabilities) throws SQLException {
+        List<Date> added = new ArrayList<>();
+        try (PreparedStatement statement = con.prepareStatement(INSERT_IF_ABSENT)) {
+            for (Availability availability : availabilities) {
+                bind(statement, availability);
+                statement.setDate(9, availability.getDate());
+                statement.setString(10, availability.getCaregiver());
+                statement.addBatch();
+            }
+            int[] counts = statement.executeBatch();
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] > 0) {
+                    added.add(availabilities.get(i).getDate());
+                }
+            }
+        }
+        return added;
+    }
+
+    // every row, ordered by date, with the appointments booked in each slot
+    public List<Availability> getAll(Connection con) throws SQLException {
+        try (PreparedStatement statement = con.prepareStatement(GET_ALL)) {
+            return read(statement);
+        }
+    }
+
+    /**
+     * The caregiver's day, or null if they are not available on the date. A slot RESERVE would turn down
+     * (its FullSlots bit is set, or the day's Booked has reached Capacity) comes back booked out even if
+     * fewer Schedule rows are left in it, so the index never offers a place the store refuses.
+     */
+    public Availability get(Connection con, String caregiver, Date date) throws SQLException {
+        try (PreparedStatement statement = con.prepareStatement(GET_DAY)) {
+            statement.setString(1, caregiver);
+            statement.setDate(2, date);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                Availability day = null;
+                int[] booked = null;
+                long fullSlots = 0;
+                boolean dayFull = false;
+                while (resultSet.next()) {
+                    if (day == null) {
+                        booked = new int[resultSet.getInt("Slots")];
+                        day = new Availability(date, caregiver, resultSet.getString("Location"),
+                                resultSet.getTime("StartTime").toLocalTime(), resultSet.getInt("SlotMinutes"),
+                                resultSet.getInt("SlotCapacity"), booked);
+                        fullSlots = resultSet.getLong("FullSlots");
+                        dayFull = resultSet.getInt("DayBooked") >= resultSet.getInt("Capacity");
+                    }
+                    Time time = resultSet.getTime("ScheduleTime");
+                    int slot = time == null ? -1 : day.slotAt(time.toLocalTime());
+                    if (slot >= 0) {
+                        booked[slot] = resultSet.getInt("Booked");
+                    }
+                }
+                if (day != null) {
+                    for (int slot = 0; slot < booked.length; slot++) {
+                        if (dayFull || (fullSlots & (1L << slot)) != 0) {
+                            booked[slot] = Math.max(booked[slot], day.getSlotCapacity());
+                        }
+                    }
+                }
+                return day;
+            }
+        }
+    }
+
+    // the days added or booked at or after the change version, with all their bookings
+    public List<Availability> getChangedSince(Connection con, long version) throws SQLException {
+        try (PreparedStatement statement = con.prepareStatement(GET_CHANGED)) {
+            statement.setLong(1, version);
+            return read(statement);
+        }
+    }
+
+    private static List<Availability> read(PreparedStatement statement) throws SQLException {
+        List<Availability> availabilities = new ArrayList<>();
+        try (ResultSet resultSet = statement.executeQuery()) {
+            Availability day = null;
+            int[] booked = null;
+            while (resultSet.next()) {
+                Date date = resultSet.getDate("Time");
+                String caregiver = resultSet.getString("Username");
+                if (day == null || !day.getDate().equals(date) || !day.getCaregiver().equals(caregiver)) {
+                    booked = new int[resultSet.getInt("Slots")];
+                    day = new Availability(date, caregiver, resultSet.getString("Location"),
+                            resultSet.getTime("StartTime").toLocalTime(), resultSet.getInt("SlotMinutes"),
+                            resultSet.getInt("SlotCapacity"), booked);
+                    availabilities.add(day);
+                }
+                Time time = resultSet.getTime("ScheduleTime");
+                int slot = time == null ? -1 : day.slotAt(time.toLocalTime());
+                if (slot >= 0) {
+                    // the row shares the array, so this fills in its counts
+                    booked[slot] = resultSet.getInt("Booked");
+                }
+            }
+        }
+        return availabilities;
+    }
+
+    private static void bind(PreparedStatement statement, Availability availability) throws SQLException {
+        statement.setDate(1, availability.getDate());
+        statement.setString(2, availability.getCaregiver());
+        statement.setString(3, availability.getLocation());
+        statement.setTime(4, Time.valueOf(availability.getStart()));
+        statement.setInt(5, availability.getSlotMinutes());
+        statement.setInt(6, availability.getSlots());
+        statement.setInt(7, availability.getSlotCapacity());
+        statement.setInt(8, availability.getCapacity());
+    }
+}
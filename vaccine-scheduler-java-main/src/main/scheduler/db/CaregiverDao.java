@@ -0,0 +1,20 @@
+package scheduler.db;
+
+// SQL for the Caregivers table
+public class CaregiverDao extends AccountDao {
+
+    public CaregiverDao() {
+        super("Caregivers");
+    }
+
+    @Override
+    protected String insertSql() {
+        return "INSERT INTO Caregivers (Username, Salt, Hash) VALUES (?, ?, ?)";
+    }
+
+    @Override
+    protected String insertIfAbsentSql() {
+        return "INSERT INTO Caregivers (Username, Salt, Hash) SELECT ?, ?, ? WHERE NOT EXISTS " +
+                "(SELECT 1 FROM Caregivers WITH (UPDLOCK, HOLDLOCK) WHERE Username = ?)";
+    }
+}
@@ -0,0 +1,48 @@
+package scheduler.db;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+// SQL for the rowversions that track changes to the tables (see V7__change_tracking.sql)
+public class ChangeDao {
+
+    private static final String GET_SOURCE = "SELECT @@SERVERNAME + '/' + DB_NAME() AS Source";
+    // rows of transactions still running may get rowversions from here on, so they are not visible yet
+    private static final String GET_VERSION = "SELECT CAST(MIN_ACTIVE_ROWVERSION() AS bigint) AS Version";
+    private static final String GET_TOMBSTONES = "SELECT TableName, Name, Time FROM Tombstones "
+            + "WHERE RowVer >= CONVERT(binary(8), CAST(? AS bigint))";
+
+    public String getSource(Connection con) throws SQLException {
+        try (PreparedStatement statement = con.prepareStatement(GET_SOURCE);
+             ResultSet resultSet = statement.executeQuery()) {
+            resultSet.next();
+            return resultSet.getString("Source");
+        }
+    }
+
+    // the lowest rowversion of anything not yet committed: every row written from here on has one at least as high
+    public long getVersion(Connection con) throws SQLException {
+        try (PreparedStatement statement = con.prepareStatement(GET_VERSION);
+             ResultSet resultSet = statement.executeQuery()) {
+            resultSet.next();
+            return resultSet.getLong("Version");
+        }
+    }
+
+    // the rows deleted at or after the version
+    public Tombstones getTombstonesSince(Connection con, long version) throws SQLException {
+        Tombstones tombstones = new Tombstones();
+        try (PreparedStatement statement = con.prepareStatement(GET_TOMBSTONES)) {
+            statement.setLong(1, version);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    tombstones.add(resultSet.getString("TableName"), resultSet.getString("Name"),
+                            resultSet.getDate("Time"));
+                }
+            }
+        }
+        return tombstones;
+    }
+}
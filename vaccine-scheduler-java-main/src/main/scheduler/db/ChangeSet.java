@@ -0,0 +1,75 @@
+package scheduler.db;
+
+import scheduler.model.Availability;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The rows of the tables the scheduler keeps in memory that were written at or after some change version
+ * (see {@link Store#getChangesSince}): caregiver days with their bookings, vaccines with their doses and
+ * the usernames of new accounts, and the keys of the rows deleted since. A complete change set holds every
+ * row instead and replaces whatever the reader had. {@link #getVersion()} is the version to ask from next
+ * time.
+ */
+public class ChangeSet {
+
+    private final long version;
+    private final List<Availability> availabilities;
+    private final Map<String, Integer> vaccines;
+    private final List<String> patients;
+    private final List<String> caregivers;
+    // null for a complete change set
+    private final Tombstones deleted;
+
+    // every row as of the version
+    public ChangeSet(long version, List<Availability> availabilities, Map<String, Integer> vaccines,
+                     List<String> patients, List<String> caregivers) {
+        this(version, availabilities, vaccines, patients, caregivers, null);
+    }
+
+    public ChangeSet(long version, List<Availability> availabilities, Map<String, Integer> vaccines,
+                     List<String> patients, List<String> caregivers, Tombstones deleted) {
+        this.version = version;
+        this.availabilities = availabilities;
+        this.vaccines = vaccines;
+        this.patients = patients;
+        this.caregivers = caregivers;
+        this.deleted = deleted;
+    }
+
+    public boolean isComplete() {
+        return deleted == null;
+    }
+
+    // the rows deleted since the version asked from; empty for a complete change set
+    public Tombstones getDeleted() {
+        return deleted == null ? new Tombstones() : deleted;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public List<Availability> getAvailabilities() {
+        return availabilities;
+    }
+
+    public Map<String, Integer> getVaccines() {
+        return vaccines;
+    }
+
+    public List<String> getPatients() {
+        return patients;
+    }
+
+    public List<String> getCaregivers() {
+        return caregivers;
+    }
+
+    // how many rows changed or were deleted
+    public int size() {
+        return availabilities.size() + vaccines.size() + patients.size() + caregivers.size()
+                + (deleted == null ? 0 : deleted.size());
+    }
+}
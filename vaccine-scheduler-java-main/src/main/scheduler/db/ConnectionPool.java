@@ -0,0 +1,389 @@
+package scheduler.db;
+
+import scheduler.metrics.Metrics;
+import scheduler.util.Util;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded pool of JDBC connections shared by the whole process.
+ *
+ * Connections handed out are proxies: calling close() on them returns the physical connection to the pool
+ * instead of closing it, and prepareStatement(sql) is served from a per-connection {@link StatementCache}.
+ * A background thread opens connections up to the minimum size, evicts idle connections above it, and
+ * reports (and eventually reclaims) connections that were borrowed but never closed. A reclaimed
+ * connection is aborted, so a borrower that never comes back does not keep its socket open, and its
+ * permit goes back to the pool; the borrower's next call on it fails.
+ *
+ * Settings are read from environment variables, falling back to the defaults below. The pool's counters
+ * are published over JMX as scheduler:type=ConnectionPool, and the time spent in borrow() is recorded
+ * in Metrics.
+ */
+public class ConnectionPool implements ConnectionPoolMBean {
+
+    private static final String DRIVER_NAME = "com.microsoft.sqlserver.jdbc.SQLServerDriver";
+
+    private static ConnectionPool instance = null;
+
+    private final String url;
+    private final String userName;
+    private final String userPass;
+
+    private final int minSize;
+    private final int maxSize;
+    private final long acquireTimeoutMillis;
+    private final long idleTimeoutMillis;
+    private final long leakThresholdMillis;
+    private final long leakReclaimMillis;
+    private final int validationTimeoutSeconds;
+
+    // permits == connections that may still be borrowed
+    private final Semaphore permits;
+    // most recently returned connection first, so the tail of the deque is what goes stale
+    private final Deque<Idle> idle = new ArrayDeque<>();
+    private final Map<Lease, Boolean> leases = new ConcurrentHashMap<>();
+    private final int statementCacheSize;
+    private final Map<Connection, StatementCache> statementCaches = new ConcurrentHashMap<>();
+    private final LongAdder statementPrepares = new LongAdder();
+    private final LongAdder statementCacheHits = new LongAdder();
+    private final ScheduledExecutorService housekeeper;
+
+    // the pool if something already created it, without connecting to the database otherwise
+    public static synchronized ConnectionPool getExistingInstance() {
+        return instance;
+    }
+
+    public static synchronized ConnectionPool getInstance() {
+        if (instance == null) {
+            try {
+                Class.forName(DRIVER_NAME);
+            } catch (ClassNotFoundException e) {
+                System.out.println(e.toString());
+            }
+            instance = new ConnectionPool(urlFromEnvironment(), Util.envString("UserID", null),
+                    System.getenv("Password"));
+            try {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(instance,
+                        new ObjectName("scheduler:type=ConnectionPool"));
+            } catch (JMException e) {
+                // the pool works the same without JMX
+            }
+        }
+        return instance;
+    }
+
+    // the Azure SQL database named by Server and DBName; the only place the connection settings are read
+    static String urlFromEnvironment() {
+        return "jdbc:sqlserver://" + Util.envString("Server", null) + ".database.windows.net:1433;database="
+                + Util.envString("DBName", null);
+    }
+
+    ConnectionPool(String url, String userName, String userPass) {
+        this.url = url;
+        this.userName = userName;
+        this.userPass = userPass;
+        this.maxSize = Util.envInt("PoolMaxSize", 10, 1);
+        this.minSize = Math.min(maxSize, Util.envInt("PoolMinSize", 1, 0));
+        this.acquireTimeoutMillis = Util.envInt("PoolAcquireTimeoutMs", 30_000, 0);
+        this.idleTimeoutMillis = Util.envInt("PoolIdleTimeoutMs", 10 * 60_000, 1);
+        this.leakThresholdMillis = Util.envInt("PoolLeakThresholdMs", 60_000, 1);
+        this.leakReclaimMillis = Util.envInt("PoolLeakReclaimMs", 5 * 60_000, 1);
+        this.validationTimeoutSeconds = Util.envInt("PoolValidationTimeoutSec", 5, 0);
+        this.statementCacheSize = Util.envInt("PoolStatementCacheSize", 64, 0);
+        this.permits = new Semaphore(maxSize, true);
+
+        this.housekeeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "connection-pool-housekeeper");
+            t.setDaemon(true);
+            return t;
+        });
+        long period = Math.max(1_000, Math.min(idleTimeoutMillis, leakThresholdMillis) / 2);
+        housekeeper.execute(this::fillToMinimum);
+        housekeeper.scheduleWithFixedDelay(this::housekeep, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Borrows a connection, waiting up to the acquisition timeout if the pool is exhausted.
+     * The caller must close() the returned connection to give it back.
+     */
+    public Connection borrow() throws SQLException {
+        long start = System.nanoTime();
+        try {
+            if (!permits.tryAcquire(acquireTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                throw new SQLException("Timed out after " + acquireTimeoutMillis
+                        + " ms waiting for a database connection (pool size " + maxSize + ")");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a database connection", e);
+        }
+
+        try {
+            Connection physical = takeValidIdle();
+            if (physical == null) {
+                physical = DriverManager.getConnection(url, userName, userPass);
+            }
+            Lease lease = new Lease(physical);
+            leases.put(lease, Boolean.TRUE);
+            Metrics.recordConnectionAcquire(System.nanoTime() - start);
+            return lease.proxy;
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    private Connection takeValidIdle() {
+        while (true) {
+            Idle candidate;
+            synchronized (idle) {
+                candidate = idle.pollFirst();
+            }
+            if (candidate == null) {
+                return null;
+            }
+            try {
+                if (candidate.connection.isValid(validationTimeoutSeconds)) {
+                    return candidate.connection;
+                }
+            } catch (SQLException e) {
+                // fall through and discard it
+            }
+            discard(candidate.connection);
+        }
+    }
+
+    private void giveBack(Lease lease) {
+        if (leases.remove(lease) == null) {
+            // reclaimed by the leak detector, which already gave the permit back
+            discard(lease.physical);
+            return;
+        }
+        Connection physical = lease.physical;
+        try {
+            if (!physical.getAutoCommit()) {
+                physical.rollback();
+                physical.setAutoCommit(true);
+            }
+            physical.clearWarnings();
+            StatementCache cache = statementCaches.get(physical);
+            if (cache != null) {
+                // statements the borrower forgot to close become available again
+                cache.releaseAll();
+            }
+            synchronized (idle) {
+                idle.addFirst(new Idle(physical));
+            }
+        } catch (SQLException e) {
+            discard(physical);
+        } finally {
+            permits.release();
+        }
+    }
+
+    // opens connections until minSize are idle or borrowed; borrow() connects on demand if this fails
+    private void fillToMinimum() {
+        while (true) {
+            synchronized (idle) {
+                if (idle.size() + leases.size() >= minSize) {
+                    return;
+                }
+            }
+            Connection physical;
+            try {
+                physical = DriverManager.getConnection(url, userName, userPass);
+            } catch (SQLException e) {
+                return;
+            }
+            synchronized (idle) {
+                idle.addLast(new Idle(physical));
+            }
+        }
+    }
+
+    private void housekeep() {
+        long now = System.currentTimeMillis();
+
+        // evict connections that sat idle too long, but keep the minimum around; they are closed outside
+        // the lock so borrowers are not held up by the network
+        List<Connection> evicted = new ArrayList<>();
+        synchronized (idle) {
+            Iterator<Idle> it = idle.descendingIterator();
+            while (it.hasNext() && idle.size() > minSize) {
+                Idle candidate = it.next();
+                if (now - candidate.since > idleTimeoutMillis) {
+                    it.remove();
+                    evicted.add(candidate.connection);
+                }
+            }
+        }
+        for (Connection con : evicted) {
+            discard(con);
+        }
+
+        for (Lease lease : leases.keySet()) {
+            long held = now - lease.borrowedAt;
+            if (held > leakReclaimMillis) {
+                if (leases.remove(lease) != null) {
+                    // the borrower's next call fails; abort() does not wait for it to finish using the connection
+                    lease.reclaimed = true;
+                    abort(lease.physical);
+                    permits.release();
+                    report("Reclaimed a connection held for " + held + " ms without being closed", lease);
+                }
+            } else if (held > leakThresholdMillis && !lease.reported) {
+                lease.reported = true;
+                report("Possible connection leak: connection held for " + held + " ms", lease);
+            }
+        }
+
+        fillToMinimum();
+    }
+
+    private static void report(String message, Lease lease) {
+        StringBuilder text = new StringBuilder(message).append(", borrowed at");
+        for (StackTraceElement frame : lease.borrowSite.getStackTrace()) {
+            text.append(System.lineSeparator()).append("\tat ").append(frame);
+        }
+        System.out.println(text);
+    }
+
+    @Override
+    public int getIdleCount() {
+        synchronized (idle) {
+            return idle.size();
+        }
+    }
+
+    @Override
+    public int getActiveCount() {
+        return leases.size();
+    }
+
+    @Override
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    // statements actually prepared on a connection (cache misses)
+    @Override
+    public long getStatementPrepares() {
+        return statementPrepares.sum();
+    }
+
+    // prepareStatement calls answered from a connection's statement cache
+    @Override
+    public long getStatementCacheHits() {
+        return statementCacheHits.sum();
+    }
+
+    private StatementCache statementCacheOf(Connection physical) {
+        return statementCaches.computeIfAbsent(physical,
+                con -> new StatementCache(con, statementCacheSize, statementPrepares, statementCacheHits));
+    }
+
+    private void discard(Connection con) {
+        StatementCache cache = statementCaches.remove(con);
+        if (cache != null) {
+            cache.closeAll();
+        }
+        try {
+            con.close();
+        } catch (SQLException e) {
+            // nothing useful to do with a connection we are throwing away
+        }
+    }
+
+    private void abort(Connection con) {
+        statementCaches.remove(con);
+        try {
+            con.abort(housekeeper);
+        } catch (SQLException | RuntimeException e) {
+            discard(con);
+        }
+    }
+
+    private static class Idle {
+        private final Connection connection;
+        private final long since = System.currentTimeMillis();
+
+        private Idle(Connection connection) {
+            this.connection = connection;
+        }
+    }
+
+    private class Lease implements InvocationHandler {
+        private final Connection physical;
+        private final Connection proxy;
+        private final long borrowedAt = System.currentTimeMillis();
+        private final Throwable borrowSite = new Throwable("connection borrowed here");
+        private volatile boolean closed = false;
+        private volatile boolean reported = false;
+        // set by the leak detector, which has already aborted the connection
+        private volatile boolean reclaimed = false;
+
+        private Lease(Connection physical) {
+            this.physical = physical;
+            this.proxy = (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                    new Class<?>[]{Connection.class}, this);
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!closed) {
+                        closed = true;
+                        giveBack(this);
+                    }
+                    return null;
+                case "isClosed":
+                    return closed || physical.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "PooledConnection[" + physical + "]";
+                default:
+                    if (closed) {
+                        throw new SQLException("Connection has already been returned to the pool");
+                    }
+                    if (reclaimed) {
+                        closed = true;
+                        throw new SQLException("Connection was reclaimed after being held for more than "
+                                + leakReclaimMillis + " ms");
+                    }
+                    if (method.getName().equals("prepareStatement") && args.length == 1) {
+                        return statementCacheOf(physical).prepare((String) args[0]);
+                    }
+                    try {
+                        return method.invoke(physical, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+            }
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package scheduler.db;
+
+// what JMX shows for the connection pool, under scheduler:type=ConnectionPool
+public interface ConnectionPoolMBean {
+
+    int getIdleCount();
+
+    int getActiveCount();
+
+    int getMaxSize();
+
+    long getStatementPrepares();
+
+    long getStatementCacheHits();
+}
@@ -0,0 +1,20 @@
+package scheduler.db;
+
+// the salt and hash stored for a patient or caregiver
+public class Credentials {
+    private final byte[] salt;
+    private final byte[] hash;
+
+    public Credentials(byte[] salt, byte[] hash) {
+        this.salt = salt;
+        this.hash = hash;
+    }
+
+    public byte[] getSalt() {
+        return salt;
+    }
+
+    public byte[] getHash() {
+        return hash;
+    }
+}
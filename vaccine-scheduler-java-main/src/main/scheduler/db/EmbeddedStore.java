@@ -0,0 +1,421 @@
+package scheduler.db;
+
+import scheduler.model.Appointment;
+import scheduler.model.Availability;
+import scheduler.model.Booking;
+import scheduler.model.Reservation;
+
+import java.sql.Date;
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Consumer;
+
+/**
+ * An in-process backend that keeps the tables from resources/create.sql in memory.
+ *
+ * Primary keys and foreign keys are enforced the same way the database would, and violations are
+ * reported as SQLIntegrityConstraintViolationException so callers can handle both backends alike.
+ * Nothing is persisted: the data lives as long as the JVM.
+ */
+public class EmbeddedStore implements Store {
+
+    // Patients / Caregivers: Username -> (Salt, Hash)
+    private final Map<String, Credentials> patients = new ConcurrentHashMap<>();
+    private final Map<String, Credentials> caregivers = new ConcurrentHashMap<>();
+    // Availabilities: Time -> Username -> row
+    private final NavigableMap<Date, NavigableMap<String, Availability>> availabilities =
+            new ConcurrentSkipListMap<>();
+    // Vaccines: Name -> Doses
+    private final Map<String, Integer> vaccines = new ConcurrentHashMap<>();
+    // Schedule: ID -> row
+    private final NavigableMap<Integer, Appointment> schedule = new ConcurrentSkipListMap<>();
+
+    // held by writes that touch more than one table, or several rows at once
+    private final Object writeLock = new Object();
+    // the last appointment ID handed out, so a cancelled appointment's ID is never reused; guarded by writeLock
+    private int lastId = 0;
+    private final String source = "embedded/" + UUID.randomUUID();
+
+    @Override
+    public void migrate() {
+        // the in-memory tables always have the current schema
+    }
+
+    @Override
+    public boolean patientExists(String username) {
+        return patients.containsKey(username);
+    }
+
+    @Override
+    public void insertPatient(String username, byte[] salt, byte[] hash) throws SQLException {
+        if (patients.putIfAbsent(username, new Credentials(salt, hash)) != null) {
+            throw duplicateKey("Patients", username);
+        }
+    }
+
+    @Override
+    public List<String> getPatientUsernames() {
+        return new ArrayList<>(patients.keySet());
+    }
+
+    @Override
+    public Set<String> findExistingPatients(Collection<String> usernames) {
+        return findExisting(patients, usernames);
+    }
+
+    @Override
+    public List<String> insertPatients(Map<String, Credentials> accounts) {
+        return insertAccounts(patients, accounts);
+    }
+
+    @Override
+    public Credentials getPatientCredentials(String username) {
+        return patients.get(username);
+    }
+
+    @Override
+    public void updatePatientCredentials(String username, byte[] salt, byte[] hash) {
+        patients.replace(username, new Credentials(salt, hash));
+    }
+
+    @Override
+    public boolean caregiverExists(String username) {
+        return caregivers.containsKey(username);
+    }
+
+    @Override
+    public void insertCaregiver(String username, byte[] salt, byte[] hash) throws SQLException {
+        if (caregivers.putIfAbsent(username, new Credentials(salt, hash)) != null) {
+            throw duplicateKey("Caregivers", username);
+        }
+    }
+
+    @Override
+    public List<String> getCaregiverUsernames() {
+        return new ArrayList<>(caregivers.keySet());
+    }
+
+    @Override
+    public Set<String> findExistingCaregivers(Collection<String> usernames) {
+        return findExisting(caregivers, usernames);
+    }
+
+    @Override
+    public List<String> insertCaregivers(Map<String, Credentials> accounts) {
+        return insertAccounts(caregivers, accounts);
+    }
+
+    @Override
+    public Credentials getCaregiverCredentials(String username) {
+        return caregivers.get(username);
+    }
+
+    @Override
+    public void updateCaregiverCredentials(String username, byte[] salt, byte[] hash) {
+        caregivers.replace(username, new Credentials(salt, hash));
+    }
+
+    @Override
+    public void insertAvailability(Availability availability) throws SQLException {
+        Date date = availability.getDate();
+        String caregiver = availability.getCaregiver();
+        requireCaregiver(caregiver);
+        Map<String, Availability> onDate = availabilities.computeIfAbsent(date, d -> new ConcurrentSkipListMap<>());
+        if (onDate.putIfAbsent(caregiver, availability.on(date)) != null) {
+            throw duplicateKey("Availabilities", date + ", " + caregiver);
+        }
+    }
+
+    @Override
+    public List<Date> insertAvailabilities(List<Availability> days) throws SQLException {
+        for (Availability day : days) {
+            requireCaregiver(day.getCaregiver());
+        }
+        List<Date> added = new ArrayList<>();
+        synchronized (writeLock) {
+            for (Availability day : days) {
+                Map<String, Availability> onDate = availabilities.computeIfAbsent(day.getDate(),
+                        d -> new ConcurrentSkipListMap<>());
+                if (onDate.putIfAbsent(day.getCaregiver(), day.on(day.getDate())) == null) {
+                    added.add(day.getDate());
+                }
+            }
+        }
+        return added;
+    }
+
+    @Override
+    public List<Availability> getAvailabilities() {
+        List<Availability> copy = new ArrayList<>();
+        for (Map<String, Availability> onDate : availabilities.values()) {
+            copy.addAll(onDate.values());
+        }
+        return copy;
+    }
+
+    @Override
+    public Availability getAvailability(String caregiver, Date date) {
+        Map<String, Availability> onDate = availabilities.get(date);
+        return onDate == null ? null : onDate.get(caregiver);
+    }
+
+    @Override
+    public Integer getDoses(String vaccine) {
+        return vaccines.get(vaccine);
+    }
+
+    @Override
+    public void insertVaccine(String vaccine, int doses) throws SQLException {
+        if (vaccines.putIfAbsent(vaccine, doses) != null) {
+            throw duplicateKey("Vaccines", vaccine);
+        }
+    }
+
+    @Override
+    public void addDoses(Map<String, Integer> deltas) {
+        synchronized (writeLock) {
+            for (Map.Entry<String, Integer> delta : deltas.entrySet()) {
+                vaccines.computeIfPresent(delta.getKey(), (name, old) -> old + delta.getValue());
+            }
+        }
+    }
+
+    @Override
+    public Map<String, Integer> getVaccines() {
+        return new TreeMap<>(vaccines);
+    }
+
+    @Override
+    public Reservation reserve(String patient, String caregiver, Date date, int slot, String vaccine)
+            throws SQLException {
+        if (!patients.containsKey(patient)) {
+            throw missingReference("Patients", patient);
+        }
+        if (!vaccines.containsKey(vaccine)) {
+            throw missingReference("Vaccines", vaccine);
+        }
+        // one reservation at a time, so nobody sees an availability taken without its appointment
+        synchronized (writeLock) {
+            Map<String, Availability> onDate = availabilities.get(date);
+            Availability availability = onDate == null ? null : onDate.get(caregiver);
+            if (availability == null || slot < 0 || slot >= availability.getSlots()
+                    || availability.getBooked(slot) >= availability.getSlotCapacity()) {
+                return Reservation.failed(Reservation.Status.NO_CAREGIVER);
+            }
+            if (vaccines.get(vaccine) <= 0) {
+                return Reservation.failed(Reservation.Status.NO_DOSES);
+            }
+            vaccines.computeIfPresent(vaccine, (name, doses) -> doses - 1);
+            onDate.put(caregiver, availability.withBooking(slot));
+            int id = ++lastId;
+            Appointment appointment = new Appointment(id, patient, caregiver, vaccine, date,
+                    availability.getSlotTime(slot), availability.getLocation());
+            schedule.put(id, appointment);
+            return Reservation.reserved(appointment);
+        }
+    }
+
+    @Override
+    public List<Appointment> reserveAll(List<Booking> bookings) throws SQLException {
+        for (Booking booking : bookings) {
+            if (!patients.containsKey(booking.getPatient())) {
+                throw missingReference("Patients", booking.getPatient());
+            }
+            if (!vaccines.containsKey(booking.getVaccine())) {
+                throw missingReference("Vaccines", booking.getVaccine());
+            }
+        }
+        synchronized (writeLock) {
+            // book into copies of the rows first, so nothing changes unless everything fits
+            Map<String, Availability> touched = new HashMap<>();
+            List<Availability> used = new ArrayList<>(bookings.size());
+            for (Booking booking : bookings) {
+                String key = booking.getDate() + "@" + booking.getCaregiver();
+                Availability availability = touched.get(key);
+                if (availability == null) {
+                    Map<String, Availability> onDate = availabilities.get(booking.getDate());
+                    availability = onDate == null ? null : onDate.get(booking.getCaregiver());
+                }
+                int slot = booking.getSlot();
+                if (availability == null || slot < 0 || slot >= availability.getSlots()
+                        || availability.getBooked(slot) >= availability.getSlotCapacity()) {
+                    return null;
+                }
+                used.add(availability);
+                touched.put(key, availability.withBooking(slot));
+            }
+            Map<String, Integer> doses = new HashMap<>();
+            for (Booking booking : bookings) {
+                doses.merge(booking.getVaccine(), 1, Integer::sum);
+            }
+            for (Map.Entry<String, Integer> vaccine : doses.entrySet()) {
+                if (vaccines.get(vaccine.getKey()) < vaccine.getValue()) {
+                    return null;
+                }
+            }
+            for (Map.Entry<String, Integer> vaccine : doses.entrySet()) {
+                vaccines.computeIfPresent(vaccine.getKey(), (name, left) -> left - vaccine.getValue());
+            }
+            for (Availability availability : touched.values()) {
+                availabilities.get(availability.getDate()).put(availability.getCaregiver(), availability);
+            }
+            List<Appointment> booked = new ArrayList<>(bookings.size());
+            int id = lastId + 1;
+            lastId += bookings.size();
+            for (int i = 0; i < bookings.size(); i++) {
+                Booking booking = bookings.get(i);
+                Availability availability = used.get(i);
+                Appointment appointment = new Appointment(id, booking.getPatient(), booking.getCaregiver(),
+                        booking.getVaccine(), booking.getDate(), availability.getSlotTime(booking.getSlot()),
+                        availability.getLocation());
+                schedule.put(id++, appointment);
+                booked.add(appointment);
+            }
+            return booked;
+        }
+    }
+
+    @Override
+    public List<Appointment> getAppointmentsForPatient(String patient) {
+        List<Appointment> appointments = new ArrayList<>();
+        for (Appointment appointment : schedule.values()) {
+            if (appointment.getPatient().equals(patient)) {
+                appointments.add(appointment);
+            }
+        }
+        return appointments;
+    }
+
+    @Override
+    public List<Appointment> getAppointmentsForCaregiver(String caregiver) {
+        List<Appointment> appointments = new ArrayList<>();
+        for (Appointment appointment : schedule.values()) {
+            if (appointment.getCaregiver().equals(caregiver)) {
+                appointments.add(appointment);
+            }
+        }
+        return appointments;
+    }
+
+    @Override
+    public int streamAppointments(AppointmentQuery query, Consumer<Appointment> sink) {
+        int count = 0;
+        // the skip list is ordered by ID, so resuming after an ID is a seek, not a scan from the start
+        for (Appointment appointment : schedule.tailMap(query.getAfterId(), false).values()) {
+            if (count >= query.getLimit()) {
+                break;
+            }
+            String username = query.isPatient() ? appointment.getPatient() : appointment.getCaregiver();
+            if (!username.equals(query.getUsername())
+                    || (query.getFrom() != null && appointment.getDate().before(query.getFrom()))
+                    || (query.getTo() != null && appointment.getDate().after(query.getTo()))) {
+                continue;
+            }
+            sink.accept(appointment);
+            count++;
+        }
+        return count;
+    }
+
+    @Override
+    public Appointment cancelAppointment(int id, String patient, String caregiver) {
+        synchronized (writeLock) {
+            Appointment appointment = schedule.get(id);
+            if (appointment == null || (patient != null && !patient.equals(appointment.getPatient()))
+                    || (caregiver != null && !caregiver.equals(appointment.getCaregiver()))) {
+                return null;
+            }
+            cancel(appointment);
+            return appointment;
+        }
+    }
+
+    @Override
+    public List<Appointment> cancelDay(String caregiver, Date date) {
+        synchronized (writeLock) {
+            List<Appointment> cancelled = new ArrayList<>();
+            for (Appointment appointment : schedule.values()) {
+                if (appointment.getCaregiver().equals(caregiver) && appointment.getDate().equals(date)) {
+                    cancelled.add(appointment);
+                }
+            }
+            for (Appointment appointment : cancelled) {
+                cancel(appointment);
+            }
+            return cancelled;
+        }
+    }
+
+    // called with writeLock held
+    private void cancel(Appointment appointment) {
+        schedule.remove(appointment.getId());
+        Map<String, Availability> onDate = availabilities.get(appointment.getDate());
+        Availability availability = onDate == null ? null : onDate.get(appointment.getCaregiver());
+        int slot = availability == null || appointment.getTime() == null ? -1
+                : availability.slotAt(appointment.getTime());
+        if (slot >= 0) {
+            onDate.put(appointment.getCaregiver(), availability.withoutBooking(slot));
+        }
+        vaccines.computeIfPresent(appointment.getVaccine(), (name, doses) -> doses + 1);
+    }
+
+    // a fresh name for every instance: the data does not outlive the JVM, so neither do its versions
+    @Override
+    public String getChangeSource() {
+        return source;
+    }
+
+    // keeps no change history, so every version gets everything
+    @Override
+    public ChangeSet getChangesSince(long version) {
+        return new ChangeSet(0, getAvailabilities(), getVaccines(), getPatientUsernames(), getCaregiverUsernames());
+    }
+
+    private static Set<String> findExisting(Map<String, Credentials> table, Collection<String> usernames) {
+        Set<String> existing = new HashSet<>();
+        for (String username : usernames) {
+            if (table.containsKey(username)) {
+                existing.add(username);
+            }
+        }
+        return existing;
+    }
+
+    private static List<String> insertAccounts(Map<String, Credentials> table, Map<String, Credentials> accounts) {
+        List<String> added = new ArrayList<>();
+        for (Map.Entry<String, Credentials> account : accounts.entrySet()) {
+            if (table.putIfAbsent(account.getKey(), account.getValue()) == null) {
+                added.add(account.getKey());
+            }
+        }
+        return added;
+    }
+
+    private void requireCaregiver(String caregiver) throws SQLException {
+        if (caregiver == null || !caregivers.containsKey(caregiver)) {
+            throw missingReference("Caregivers", caregiver);
+        }
+    }
+
+    private static SQLException duplicateKey(String table, String key) {
+        return new SQLIntegrityConstraintViolationException(
+                "Violation of PRIMARY KEY constraint on " + table + ": duplicate key (" + key + ")");
+    }
+
+    private static SQLException missingReference(String table, String key) {
+        return new SQLIntegrityConstraintViolationException(
+                "FOREIGN KEY constraint violated: no row in " + table + " for (" + key + ")");
+    }
+}
@@ -0,0 +1,68 @@
+package scheduler.db;
+
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hands out appointment IDs from blocks reserved in the database (hi/lo): one round trip reserves a block of
+ * consecutive IDs from the sequence, and the IDs in it are then taken with an atomic add, without a lock
+ * or a query. Only the thread that finds the block used up fetches the next one.
+ *
+ * IDs that were handed out but not used (a reservation that found no room) and the rest of the block when
+ * the process stops are never used, so IDs have gaps; they still increase within a process.
+ */
+class IdAllocator {
+
+    // reserves count consecutive IDs in the database and returns the first
+    interface RangeSource {
+        long reserve(int count) throws SQLException;
+    }
+
+    private static final class Block {
+        final AtomicLong next;
+        final long end;  // exclusive
+
+        Block(long first, long end) {
+            this.next = new AtomicLong(first);
+            this.end = end;
+        }
+    }
+
+    private final RangeSource source;
+    private final int blockSize;
+    private volatile Block block = new Block(0, 0);
+
+    IdAllocator(RangeSource source, int blockSize) {
+        this.source = source;
+        this.blockSize = Math.max(1, blockSize);
+    }
+
+    int next() throws SQLException {
+        return next(1);
+    }
+
+    // the first of count consecutive IDs
+    int next(int count) throws SQLException {
+        if (count > blockSize) {
+            // more than a block at once: a range of its own, leaving the current block to the others
+            return (int) source.reserve(count);
+        }
+        while (true) {
+            Block current = block;
+            long first = current.next.getAndAdd(count);
+            if (first + count <= current.end) {
+                return (int) first;
+            }
+            refill(current);
+        }
+    }
+
+    private synchronized void refill(Block used) throws SQLException {
+        if (block != used) {
+            // another thread already fetched the next block
+            return;
+        }
+        long first = source.reserve(blockSize);
+        block = new Block(first, first + blockSize);
+    }
+}
@@ -0,0 +1,69 @@
+package scheduler.db;
+
+import scheduler.metrics.Metrics;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Wraps a store so every call is counted in {@link Metrics} as one query, along with the number of rows
+ * it returned: the size of a returned collection or map, the count returned by a streaming call, and one
+ * for any other non-null result.
+ */
+class InstrumentedStore implements InvocationHandler {
+
+    private final Store target;
+
+    private InstrumentedStore(Store target) {
+        this.target = target;
+    }
+
+    static Store wrap(Store store) {
+        if (Proxy.isProxyClass(store.getClass())
+                && Proxy.getInvocationHandler(store) instanceof InstrumentedStore) {
+            return store;
+        }
+        return (Store) Proxy.newProxyInstance(Store.class.getClassLoader(), new Class<?>[]{Store.class},
+                new InstrumentedStore(store));
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        if (method.getDeclaringClass() == Object.class) {
+            switch (method.getName()) {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                default:
+                    return "Instrumented[" + target + "]";
+            }
+        }
+        Object result;
+        try {
+            result = method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            Metrics.recordQuery(0);
+            throw e.getCause();
+        }
+        Metrics.recordQuery(rowsOf(method, result));
+        return result;
+    }
+
+    private static long rowsOf(Method method, Object result) {
+        if (result instanceof Collection) {
+            return ((Collection<?>) result).size();
+        }
+        if (result instanceof Map) {
+            return ((Map<?, ?>) result).size();
+        }
+        if (method.getReturnType() == int.class) {
+            return (Integer) result;
+        }
+        return result == null ? 0 : 1;
+    }
+}
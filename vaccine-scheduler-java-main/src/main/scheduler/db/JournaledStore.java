@@ -0,0 +1,306 @@
+package scheduler.db;
+
+import scheduler.journal.Event;
+import scheduler.journal.Journal;
+import scheduler.model.Appointment;
+import scheduler.model.Availability;
+import scheduler.model.Booking;
+import scheduler.model.Reservation;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Date;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Wraps a store so every change it commits is also appended to a {@link Journal}, and waits until the
+ * journal has it on disk before returning (concurrent calls share the disk flush). Calls that change
+ * nothing, such as an insert that skipped every row or a reservation that found no room, add no events.
+ * Password changes are not journaled.
+ *
+ * The event is appended after the store has committed, so if the journal cannot be written the call
+ * fails with an SQLException even though the change was made.
+ *
+ * Events must be in the journal in an order replay can follow: a reservation after the availability it
+ * books and the vaccine it uses, a cancellation after the reservation it undoes, added doses after their
+ * vaccine. Only those pairs are ordered, and no lock is held during the store call: a change that others
+ * may depend on registers under its keys (the caregiver day it adds or books, the vaccine it adds) before
+ * calling the store, and a change that depends on one waits, after its own store call, until every
+ * change registered under its keys has appended its events. Anything it saw in the store had registered
+ * before it called, so its events land behind them. Waiting never goes the other way round (nothing that
+ * registers waits on a key of its own kind), so changes cannot wait on each other in a cycle.
+ */
+class JournaledStore implements InvocationHandler {
+
+    private static final Set<String> JOURNALED = new HashSet<>(Arrays.asList("insertPatient", "insertPatients",
+            "insertCaregiver", "insertCaregivers", "insertAvailability", "insertAvailabilities", "insertVaccine",
+            "addDoses", "reserve", "reserveAll", "cancelAppointment", "cancelDay"));
+
+    private final Store target;
+    private final Journal journal;
+    // key -> the changes registered under it whose events are not appended yet
+    private final Map<List<Object>, List<CountDownLatch>> inFlight = new HashMap<>();
+
+    private JournaledStore(Store target, Journal journal) {
+        this.target = target;
+        this.journal = journal;
+    }
+
+    static Store wrap(Store store, Journal journal) {
+        return (Store) Proxy.newProxyInstance(Store.class.getClassLoader(), new Class<?>[]{Store.class},
+                new JournaledStore(store, journal));
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        if (method.getDeclaringClass() == Object.class) {
+            switch (method.getName()) {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                default:
+                    return "Journaled[" + target + "]";
+            }
+        }
+        if (!JOURNALED.contains(method.getName())) {
+            return call(method, args);
+        }
+        List<List<Object>> produced = producedBy(method.getName(), args);
+        CountDownLatch appended = register(produced);
+        Object result;
+        long last = 0;
+        try {
+            try {
+                result = call(method, args);
+                awaitAppended(neededBy(method.getName(), args, result));
+                for (Event event : eventsOf(method.getName(), args, result)) {
+                    last = journal.append(event);
+                }
+            } finally {
+                unregister(produced, appended);
+            }
+            if (last != 0) {
+                journal.sync(last);
+            }
+        } catch (IOException e) {
+            throw new SQLException("The change was saved but could not be written to the journal in "
+                    + journal.getDirectory(), e);
+        }
+        return result;
+    }
+
+    private Object call(Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    private CountDownLatch register(List<List<Object>> keys) {
+        CountDownLatch appended = new CountDownLatch(1);
+        synchronized (inFlight) {
+            for (List<Object> key : keys) {
+                inFlight.computeIfAbsent(key, k -> new ArrayList<>()).add(appended);
+            }
+        }
+        return appended;
+    }
+
+    private void unregister(List<List<Object>> keys, CountDownLatch appended) {
+        synchronized (inFlight) {
+            for (List<Object> key : keys) {
+                List<CountDownLatch> changes = inFlight.get(key);
+                changes.remove(appended);
+                if (changes.isEmpty()) {
+                    inFlight.remove(key);
+                }
+            }
+        }
+        appended.countDown();
+    }
+
+    // waits until the changes registered under the keys so far have appended their events (or failed)
+    private void awaitAppended(List<List<Object>> keys) throws SQLException {
+        List<CountDownLatch> pending = new ArrayList<>();
+        synchronized (inFlight) {
+            for (List<Object> key : keys) {
+                pending.addAll(inFlight.getOrDefault(key, Collections.emptyList()));
+            }
+        }
+        try {
+            for (CountDownLatch change : pending) {
+                change.await();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting to write the change to the journal", e);
+        }
+    }
+
+    private static List<Object> availabilityKey(String caregiver, Date date) {
+        return Arrays.asList("availability", caregiver, date);
+    }
+
+    private static List<Object> bookingKey(String caregiver, Date date) {
+        return Arrays.asList("booking", caregiver, date);
+    }
+
+    private static List<Object> vaccineKey(String vaccine) {
+        return Arrays.asList("vaccine", vaccine);
+    }
+
+    // the keys later changes may depend on this one under
+    @SuppressWarnings("unchecked")
+    private static List<List<Object>> producedBy(String method, Object[] args) {
+        List<List<Object>> keys = new ArrayList<>();
+        switch (method) {
+            case "insertAvailability": {
+                Availability day = (Availability) args[0];
+                keys.add(availabilityKey(day.getCaregiver(), day.getDate()));
+                break;
+            }
+            case "insertAvailabilities":
+                for (Availability day : (List<Availability>) args[0]) {
+                    keys.add(availabilityKey(day.getCaregiver(), day.getDate()));
+                }
+                break;
+            case "insertVaccine":
+                keys.add(vaccineKey((String) args[0]));
+                break;
+            case "reserve":
+                keys.add(bookingKey((String) args[1], (Date) args[2]));
+                break;
+            case "reserveAll":
+                for (Booking booking : (List<Booking>) args[0]) {
+                    keys.add(bookingKey(booking.getCaregiver(), booking.getDate()));
+                }
+                break;
+            default:
+                break;
+        }
+        return keys;
+    }
+
+    // the keys of the changes this one's events must follow
+    @SuppressWarnings("unchecked")
+    private static List<List<Object>> neededBy(String method, Object[] args, Object result) {
+        List<List<Object>> keys = new ArrayList<>();
+        switch (method) {
+            case "addDoses":
+                for (String vaccine : ((Map<String, Integer>) args[0]).keySet()) {
+                    keys.add(vaccineKey(vaccine));
+                }
+                break;
+            case "reserve":
+                keys.add(availabilityKey((String) args[1], (Date) args[2]));
+                keys.add(vaccineKey((String) args[4]));
+                break;
+            case "reserveAll":
+                for (Booking booking : (List<Booking>) args[0]) {
+                    keys.add(availabilityKey(booking.getCaregiver(), booking.getDate()));
+                    keys.add(vaccineKey(booking.getVaccine()));
+                }
+                break;
+            case "cancelAppointment":
+                if (result != null) {
+                    Appointment appointment = (Appointment) result;
+                    keys.add(bookingKey(appointment.getCaregiver(), appointment.getDate()));
+                }
+                break;
+            case "cancelDay":
+                keys.add(bookingKey((String) args[0], (Date) args[1]));
+                break;
+            default:
+                break;
+        }
+        return keys;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Event> eventsOf(String method, Object[] args, Object result) {
+        List<Event> events = new ArrayList<>();
+        switch (method) {
+            case "insertPatient":
+                events.add(Event.patientAdded((String) args[0]));
+                break;
+            case "insertPatients":
+                for (String username : (List<String>) result) {
+                    events.add(Event.patientAdded(username));
+                }
+                break;
+            case "insertCaregiver":
+                events.add(Event.caregiverAdded((String) args[0]));
+                break;
+            case "insertCaregivers":
+                for (String username : (List<String>) result) {
+                    events.add(Event.caregiverAdded(username));
+                }
+                break;
+            case "insertAvailability":
+                events.add(Event.availabilityAdded((Availability) args[0]));
+                break;
+            case "insertAvailabilities": {
+                // only the days that were actually added
+                Set<Date> added = new HashSet<>((List<Date>) result);
+                for (Availability day : (List<Availability>) args[0]) {
+                    if (added.contains(day.getDate())) {
+                        events.add(Event.availabilityAdded(day));
+                    }
+                }
+                break;
+            }
+            case "insertVaccine":
+                events.add(Event.vaccineAdded((String) args[0], (Integer) args[1]));
+                break;
+            case "addDoses":
+                for (Map.Entry<String, Integer> delta : ((Map<String, Integer>) args[0]).entrySet()) {
+                    if (delta.getValue() != 0) {
+                        events.add(Event.dosesAdded(delta.getKey(), delta.getValue()));
+                    }
+                }
+                break;
+            case "reserve": {
+                Reservation reservation = (Reservation) result;
+                if (reservation.isReserved()) {
+                    events.add(Event.reserved(reservation.getAppointment(), (Integer) args[3]));
+                }
+                break;
+            }
+            case "reserveAll": {
+                List<Booking> bookings = (List<Booking>) args[0];
+                List<Appointment> booked = result == null ? Collections.emptyList() : (List<Appointment>) result;
+                for (int i = 0; i < booked.size(); i++) {
+                    events.add(Event.reserved(booked.get(i), bookings.get(i).getSlot()));
+                }
+                break;
+            }
+            case "cancelAppointment":
+                if (result != null) {
+                    events.add(Event.cancelled(((Appointment) result).getId()));
+                }
+                break;
+            case "cancelDay":
+                for (Appointment appointment : (List<Appointment>) result) {
+                    events.add(Event.cancelled(appointment.getId()));
+                }
+                break;
+            default:
+                break;
+        }
+        return events;
+    }
+}
@@ -0,0 +1,136 @@
+package scheduler.db;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Brings the SQL Server schema up to date by applying the versioned scripts in resources/migrations.
+ *
+ * Each script V{n}__{description}.sql runs once, in version order, in its own transaction together with
+ * the SchemaVersion row that records it, so a failed script leaves nothing behind and is retried on the
+ * next start. Scripts may be split into batches with lines reading GO. An application lock keeps two
+ * processes starting at the same time from applying the same script twice.
+ *
+ * To change the schema, add the next script here and in resources/migrations; never edit one that has
+ * shipped.
+ */
+public class Migrations {
+
+    static final String[] SCRIPTS = {
+            "V1__baseline.sql",
+            "V2__schedule_id_sequence.sql",
+            "V3__schedule_indexes.sql",
+            "V4__availability_by_caregiver.sql",
+            "V5__availability_capacity.sql",
+            "V6__availability_slots.sql",
+            "V7__change_tracking.sql",
+            "V8__hash_settings.sql",
+            "V9__deletion_tracking.sql",
+    };
+
+    private static final String LOCK = "EXEC sp_getapplock @Resource = 'SchedulerMigrations', "
+            + "@LockMode = 'Exclusive', @LockOwner = 'Session', @LockTimeout = 60000";
+    private static final String UNLOCK = "EXEC sp_releaseapplock @Resource = 'SchedulerMigrations', "
+            + "@LockOwner = 'Session'";
+    private static final String CREATE_VERSION_TABLE = "IF OBJECT_ID('SchemaVersion') IS NULL "
+            + "CREATE TABLE SchemaVersion (Version int NOT NULL PRIMARY KEY, Description varchar(255), "
+            + "AppliedAt datetime2 NOT NULL DEFAULT SYSUTCDATETIME())";
+    private static final String GET_VERSIONS = "SELECT Version FROM SchemaVersion";
+    private static final String ADD_VERSION = "INSERT INTO SchemaVersion (Version, Description) VALUES (?, ?)";
+
+    // returns the scripts applied by this call
+    public static List<String> apply(Connection con) throws SQLException {
+        List<String> applied = new ArrayList<>();
+        try (Statement statement = con.createStatement()) {
+            statement.execute(LOCK);
+            try {
+                statement.execute(CREATE_VERSION_TABLE);
+                Set<Integer> done = new HashSet<>();
+                try (ResultSet resultSet = statement.executeQuery(GET_VERSIONS)) {
+                    while (resultSet.next()) {
+                        done.add(resultSet.getInt("Version"));
+                    }
+                }
+                for (String script : SCRIPTS) {
+                    if (!done.contains(versionOf(script))) {
+                        run(con, script);
+                        applied.add(script);
+                    }
+                }
+            } finally {
+                statement.execute(UNLOCK);
+            }
+        }
+        return applied;
+    }
+
+    private static void run(Connection con, String script) throws SQLException {
+        boolean autoCommit = con.getAutoCommit();
+        con.setAutoCommit(false);
+        try (Statement statement = con.createStatement();
+             PreparedStatement record = con.prepareStatement(ADD_VERSION)) {
+            for (String batch : batchesOf(read(script))) {
+                statement.execute(batch);
+            }
+            record.setInt(1, versionOf(script));
+            record.setString(2, descriptionOf(script));
+            record.executeUpdate();
+            con.commit();
+        } catch (SQLException e) {
+            con.rollback();
+            throw new SQLException("Schema migration " + script + " failed: " + e.getMessage(), e);
+        } finally {
+            con.setAutoCommit(autoCommit);
+        }
+    }
+
+    static int versionOf(String script) {
+        return Integer.parseInt(script.substring(1, script.indexOf("__")));
+    }
+
+    private static String descriptionOf(String script) {
+        return script.substring(script.indexOf("__") + 2, script.length() - ".sql".length()).replace('_', ' ');
+    }
+
+    private static String read(String script) throws SQLException {
+        try (InputStream in = Migrations.class.getResourceAsStream("/resources/migrations/" + script)) {
+            if (in == null) {
+                throw new SQLException("Schema migration " + script + " is missing from the classpath");
+            }
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new SQLException("Could not read schema migration " + script, e);
+        }
+    }
+
+    private static List<String> batchesOf(String sql) {
+        List<String> batches = new ArrayList<>();
+        StringBuilder batch = new StringBuilder();
+        for (String line : sql.split("\r?\n")) {
+            if (line.trim().equalsIgnoreCase("GO")) {
+                addBatch(batches, batch);
+            } else {
+                batch.append(line).append('\n');
+            }
+        }
+        addBatch(batches, batch);
+        return batches;
+    }
+
+    private static void addBatch(List<String> batches, StringBuilder batch) {
+        if (!batch.toString().trim().isEmpty()) {
+            batches.add(batch.toString());
+        }
+        batch.setLength(0);
+    }
+}
@@ -0,0 +1,22 @@
+package scheduler.db;
+
+// SQL for the Patients table
+public class PatientDao extends AccountDao {
+
+    public PatientDao() {
+        super("Patients");
+    }
+
+    // Name and Birthday are not collected; Gender is stored as '0'
+    @Override
+    protected String insertSql() {
+        return "INSERT INTO Patients (Username, Salt, Hash, Name, Birthday, Gender) VALUES (?, ?, ?, NULL, NULL, '0')";
+    }
+
+    @Override
+    protected String insertIfAbsentSql() {
+        return "INSERT INTO Patients (Username, Salt, Hash, Name, Birthday, Gender) " +
+                "SELECT ?, ?, ?, NULL, NULL, '0' WHERE NOT EXISTS " +
+                "(SELECT 1 FROM Patients WITH (UPDLOCK, HOLDLOCK) WHERE Username = ?)";
+    }
+}
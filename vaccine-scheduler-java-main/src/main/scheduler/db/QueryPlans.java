@@ -0,0 +1,120 @@
+package scheduler.db;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Checks that SQL Server answers the scheduler's lookups with index seeks, using the indexes the
+ * migrations create, rather than scanning tables that grow with every reservation.
+ *
+ * Plans are estimated with SHOWPLAN_XML, so nothing is executed. The optimizer may still prefer a scan
+ * on a nearly empty table, so run this against a database with realistic data (see LoadGenerator).
+ */
+public class QueryPlans {
+
+    private static class Check {
+        private final String name;
+        private final String sql;
+        private final String table;
+        // null: a seek on the clustered primary key
+        private final String index;
+
+        private Check(String name, String sql, String table, String index) {
+            this.name = name;
+            this.sql = sql;
+            this.table = table;
+            this.index = index;
+        }
+    }
+
+    private static List<Check> checks() {
+        Date day = Date.valueOf("2030-01-01");
+        List<Check> checks = new ArrayList<>();
+        checks.add(new Check("show_appointments (patient)",
+                inline(ScheduleDao.streamSql(AppointmentQuery.forPatient("p")), "100", "'p'", "0"),
+                "Schedule", "IX_Schedule_Patient"));
+        checks.add(new Check("show_appointments (caregiver)",
+                inline(ScheduleDao.streamSql(AppointmentQuery.forCaregiver("c")), "100", "'c'", "0"),
+                "Schedule", "IX_Schedule_Caregiver_Date"));
+        checks.add(new Check("show_appointments (caregiver, dates)",
+                inline(ScheduleDao.streamSql(AppointmentQuery.forCaregiver("c").from(day).to(day)),
+                        "100", "'c'", "0", "'2030-01-01'", "'2030-01-31'"),
+                "Schedule", "IX_Schedule_Caregiver_Date"));
+        checks.add(new Check("appointment by ID",
+                "SELECT P_Username FROM Schedule WHERE ID = 1", "Schedule", "PK_Schedule"));
+        checks.add(new Check("availability by date",
+                "SELECT Username FROM Availabilities WHERE Time = '2030-01-01'", "Availabilities", null));
+        checks.add(new Check("availability by caregiver",
+                "SELECT Time FROM Availabilities WHERE Username = 'c'", "Availabilities",
+                "IX_Availabilities_Caregiver"));
+        // a warm start's delta: a recent rowversion matches few rows
+        checks.add(new Check("availability changed since",
+                inline(AvailabilityDao.GET_CHANGED, "9223372036854775000"), "Availabilities",
+                "IX_Availabilities_RowVer"));
+        return checks;
+    }
+
+    // fills in the ? placeholders, in order
+    private static String inline(String sql, String... literals) {
+        StringBuilder out = new StringBuilder();
+        int next = 0;
+        for (char c : sql.toCharArray()) {
+            if (c == '?') {
+                out.append(literals[next++]);
+            } else {
+                out.append(c);
+            }
+        }
+        return out.toString();
+    }
+
+    /**
+     * Returns one line per check, starting with "ok" or "FAIL". SHOWPLAN is switched off again before
+     * returning, so the connection can go back to the pool.
+     */
+    public static List<String> verify(Connection con) throws SQLException {
+        List<String> results = new ArrayList<>();
+        try (Statement statement = con.createStatement()) {
+            statement.execute("SET SHOWPLAN_XML ON");
+            try {
+                for (Check check : checks()) {
+                    String plan = "";
+                    try (ResultSet resultSet = statement.executeQuery(check.sql)) {
+                        if (resultSet.next()) {
+                            plan = resultSet.getString(1);
+                        }
+                    }
+                    String problem = problemIn(plan, check);
+                    results.add((problem == null ? "ok   " : "FAIL ") + check.name
+                            + (problem == null ? "" : ": " + problem));
+                }
+            } finally {
+                statement.execute("SET SHOWPLAN_XML OFF");
+            }
+        }
+        return results;
+    }
+
+    private static String problemIn(String plan, Check check) {
+        String table = "Table=\"[" + check.table + "]\"";
+        if (plan.contains("PhysicalOp=\"Table Scan\"") || plan.contains("PhysicalOp=\"Clustered Index Scan\"")
+                || plan.contains("PhysicalOp=\"Index Scan\"")) {
+            return "scans " + check.table;
+        }
+        if (!plan.contains(table)) {
+            return "does not read " + check.table;
+        }
+        if (check.index == null) {
+            return plan.contains("PhysicalOp=\"Clustered Index Seek\"") ? null : "no clustered index seek";
+        }
+        if (!plan.contains("Index=\"[" + check.index + "]\"")) {
+            return "does not use " + check.index;
+        }
+        return plan.contains("Seek\"") ? null : "no seek on " + check.index;
+    }
+}
@@ -0,0 +1,320 @@
+package scheduler.db;
+
+import scheduler.model.Appointment;
+import scheduler.model.Booking;
+import scheduler.model.Reservation;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+// SQL for the Schedule table
+public class ScheduleDao {
+
+    // One batch, one transaction: take a place in the slot of the caregiver's availability for the date
+    // (the day's Booked goes up, the slot must not be marked full), take a dose of the vaccine, insert the
+    // appointment at the slot's time and location, and mark the slot full if that was its last place. The
+    // UPDATEs hold the row locks until commit, so neither count can change underneath. The ID comes from the
+    // caller's block of IDs (see IdAllocator). Status: 0 reserved, 1 the caregiver is not available that day
+    // or the slot is full, 2 no doses left.
+    private static final String RESERVE =
+            "SET NOCOUNT ON; SET XACT_ABORT ON; " +
+            "DECLARE @patient varchar(255) = ?, @caregiver varchar(255) = ?, @date date = ?, @slot int = ?, " +
+            "        @vaccine varchar(255) = ?, @id int = ?; " +
+            "DECLARE @status int = 0, @bit bigint = POWER(CAST(2 AS bigint), @slot), " +
+            "        @time time(0) = NULL, @location varchar(255) = NULL, @slotCapacity int; " +
+            "BEGIN TRANSACTION; " +
+            "UPDATE Availabilities SET Booked = Booked + 1, @location = Location, @slotCapacity = SlotCapacity, " +
+            "       @time = DATEADD(minute, @slot * SlotMinutes, StartTime) " +
+            "WHERE Time = @date AND Username = @caregiver AND @slot < Slots AND FullSlots & @bit = 0 " +
+            "  AND Booked < Capacity; " +
+            "IF @@ROWCOUNT = 0 SET @status = 1; " +
+            "IF @status = 0 BEGIN " +
+            "    UPDATE Vaccines SET Doses = Doses - 1 WHERE Name = @vaccine AND Doses > 0; " +
+            "    IF @@ROWCOUNT = 0 SET @status = 2; " +
+            "END " +
+            "IF @status = 0 BEGIN " +
+            "    INSERT INTO Schedule (ID, P_Username, C_Username, V_Name, ScheduleDate, ScheduleTime, Location) " +
+            "    VALUES (@id, @patient, @caregiver, @vaccine, @date, @time, @location); " +
+            "    IF (SELECT COUNT(*) FROM Schedule WHERE C_Username = @caregiver AND ScheduleDate = @date " +
+            "        AND ScheduleTime = @time) >= @slotCapacity " +
+            "        UPDATE Availabilities SET FullSlots = FullSlots | @bit " +
+            "        WHERE Time = @date AND Username = @caregiver; " +
+            "    COMMIT TRANSACTION; " +
+            "END ELSE ROLLBACK TRANSACTION; " +
+            "SELECT @status AS Status, @time AS ScheduleTime, @location AS Location;";
+    // Books a whole batch of (patient, caregiver, date, slot, vaccine) rows at once, all or nothing: first
+    // the places on each caregiver-day the batch uses (which locks those rows), then a check that every slot
+    // still has room for what the batch puts in it, then the doses of each vaccine the batch uses (there must
+    // be enough of every one), then one INSERT ... SELECT with the consecutive IDs
+    // starting at the caller's first ID, then the slots it booked out are marked full. Returns the booked rows in batch order, or no
+    // rows if anything no longer fits.
+    private static final String RESERVE_ALL_HEAD =
+            "SET NOCOUNT ON; SET XACT_ABORT ON; " +
+            "DECLARE @batch TABLE (Seq int PRIMARY KEY, Patient varchar(255), Caregiver varchar(255), " +
+            "                      Date date, Slot int, Vaccine varchar(255), ID int NULL); " +
+            "INSERT INTO @batch (Seq, Patient, Caregiver, Date, Slot, Vaccine) VALUES ";
+    private static final String RESERVE_ALL_TAIL =
+            "; DECLARE @status int = 0, @first int = ?; " +
+            "BEGIN TRANSACTION; " +
+            "UPDATE a SET Booked = a.Booked + b.N FROM Availabilities a " +
+            "JOIN (SELECT Caregiver, Date, COUNT(*) AS N FROM @batch GROUP BY Caregiver, Date) b " +
+            "  ON a.Username = b.Caregiver AND a.Time = b.Date " +
+            "WHERE a.Booked + b.N <= a.Capacity; " +
+            "IF @@ROWCOUNT <> (SELECT COUNT(*) FROM (SELECT DISTINCT Caregiver, Date FROM @batch) d) " +
+            "    SET @status = 1; " +
+            "IF @status = 0 AND EXISTS (" +
+            "    SELECT 1 FROM (SELECT Caregiver, Date, Slot, COUNT(*) AS N FROM @batch " +
+            "                   GROUP BY Caregiver, Date, Slot) b " +
+            "    JOIN Availabilities a ON a.Username = b.Caregiver AND a.Time = b.Date " +
+            "    WHERE b.Slot < 0 OR b.Slot >= a.Slots OR a.FullSlots & POWER(CAST(2 AS bigint), b.Slot) <> 0 " +
+            "       OR b.N + (SELECT COUNT(*) FROM Schedule s WHERE s.C_Username = b.Caregiver " +
+            "                 AND s.ScheduleDate = b.Date " +
+            "                 AND s.ScheduleTime = DATEADD(minute, b.Slot * a.SlotMinutes, a.StartTime)) " +
+            "          > a.SlotCapacity) " +
+            "    SET @status = 1; " +
+            "IF @status = 0 BEGIN " +
+            "    UPDATE v SET Doses = v.Doses - b.N FROM Vaccines v " +
+            "    JOIN (SELECT Vaccine, COUNT(*) AS N FROM @batch GROUP BY Vaccine) b ON v.Name = b.Vaccine " +
+            "    WHERE v.Doses >= b.N; " +
+            "    IF @@ROWCOUNT <> (SELECT COUNT(DISTINCT Vaccine) FROM @batch) SET @status = 1; " +
+            "END " +
+            "IF @status = 0 BEGIN " +
+            "    UPDATE @batch SET ID = @first + Seq; " +
+            "    INSERT INTO Schedule (ID, P_Username, C_Username, V_Name, ScheduleDate, ScheduleTime, Location) " +
+            "    SELECT b.ID, b.Patient, b.Caregiver, b.Vaccine, b.Date, " +
+            "           DATEADD(minute, b.Slot * a.SlotMinutes, a.StartTime), a.Location " +
+            "    FROM @batch b JOIN Availabilities a ON a.Username = b.Caregiver AND a.Time = b.Date; " +
+            "    UPDATE a SET FullSlots = a.FullSlots | f.Bits FROM Availabilities a " +
+            "    JOIN (SELECT b.Caregiver, b.Date, SUM(POWER(CAST(2 AS bigint), b.Slot)) AS Bits " +
+            "          FROM (SELECT DISTINCT Caregiver, Date, Slot FROM @batch) b " +
+            "          JOIN Availabilities a2 ON a2.Username = b.Caregiver AND a2.Time = b.Date " +
+            "          WHERE (SELECT COUNT(*) FROM Schedule s WHERE s.C_Username = b.Caregiver " +
+            "                 AND s.ScheduleDate = b.Date " +
+            "                 AND s.ScheduleTime = DATEADD(minute, b.Slot * a2.SlotMinutes, a2.StartTime)) " +
+            "                >= a2.SlotCapacity " +
+            "          GROUP BY b.Caregiver, b.Date) f " +
+            "      ON a.Username = f.Caregiver AND a.Time = f.Date; " +
+            "    COMMIT TRANSACTION; " +
+            "END ELSE ROLLBACK TRANSACTION; " +
+            "SELECT b.Seq, b.ID, DATEADD(minute, b.Slot * a.SlotMinutes, a.StartTime) AS ScheduleTime, a.Location " +
+            "FROM @batch b JOIN Availabilities a ON a.Username = b.Caregiver AND a.Time = b.Date " +
+            "WHERE @status = 0 ORDER BY b.Seq;";
+    // One round trip reserves a block of IDs for IdAllocator. Ranges are not part of any transaction, so a
+    // block is never handed out twice, also when many processes share the database.
+    private static final String RESERVE_IDS =
+            "SET NOCOUNT ON; DECLARE @first sql_variant; " +
+            "EXEC sp_sequence_get_range @sequence_name = N'ScheduleIdSeq', @range_size = ?, " +
+            "     @range_first_value = @first OUTPUT; " +
+            "SELECT CAST(@first AS int) AS First;";
+    // five parameters per row, well inside SQL Server's 2100
+    public static final int MAX_RESERVE_BATCH = 300;
+    private static final String COLUMNS = "ID, P_Username, C_Username, V_Name, ScheduleDate, ScheduleTime, Location";
+    private static final String FOR_PATIENT = "SELECT " + COLUMNS + " FROM Schedule WHERE P_Username = ?";
+    private static final String FOR_CAREGIVER = "SELECT " + COLUMNS + " FROM Schedule WHERE C_Username = ?";
+    private static final String STREAM = "SELECT TOP (?) " + COLUMNS + " FROM Schedule WHERE ";
+    // rows fetched per round trip while streaming, so memory stays flat however long the history is
+    private static final int FETCH_SIZE = 500;
+    // Cancelling runs as one batch and one transaction: delete the appointments, keeping a copy in @gone,
+    // give their places back to the caregivers' days (Booked goes down and the slots they were in are no
+    // longer full) and their doses back to the vaccines, then return the deleted rows.
+    private static final String GONE =
+            "DECLARE @gone TABLE (ID int, P_Username varchar(255), C_Username varchar(255), V_Name varchar(255), " +
+            "                     ScheduleDate date, ScheduleTime time(0), Location varchar(255)); " +
+            "BEGIN TRANSACTION; " +
+            "DELETE FROM Schedule OUTPUT deleted.ID, deleted.P_Username, deleted.C_Username, deleted.V_Name, " +
+            "       deleted.ScheduleDate, deleted.ScheduleTime, deleted.Location INTO @gone ";
+    private static final String RESTORE =
+            "UPDATE a SET Booked = CASE WHEN a.Booked > g.N THEN a.Booked - g.N ELSE 0 END, " +
+            "       FullSlots = a.FullSlots & ~g.Bits " +
+            "FROM Availabilities a " +
+            "JOIN (SELECT g.C_Username, g.ScheduleDate, COUNT(*) AS N, " +
+            "             ISNULL(SUM(DISTINCT POWER(CAST(2 AS bigint), " +
+            "                 DATEDIFF(minute, a2.StartTime, g.ScheduleTime) / a2.SlotMinutes)), 0) AS Bits " +
+            "      FROM @gone g JOIN Availabilities a2 ON a2.Username = g.C_Username AND a2.Time = g.ScheduleDate " +
+            "      GROUP BY g.C_Username, g.ScheduleDate) g " +
+            "  ON a.Username = g.C_Username AND a.Time = g.ScheduleDate; " +
+            "UPDATE v SET Doses = v.Doses + g.N FROM Vaccines v " +
+            "JOIN (SELECT V_Name, COUNT(*) AS N FROM @gone GROUP BY V_Name) g ON v.Name = g.V_Name; " +
+            "COMMIT TRANSACTION; " +
+            "SELECT " + COLUMNS + " FROM @gone ORDER BY ID;";
+    // parameters: ID, then the patient and the caregiver it must belong to (null for anybody)
+    private static final String CANCEL =
+            "SET NOCOUNT ON; SET XACT_ABORT ON; " +
+            "DECLARE @id int = ?, @patient varchar(255) = ?, @caregiver varchar(255) = ?; " + GONE +
+            "WHERE ID = @id AND (@patient IS NULL OR P_Username = @patient) " +
+            "  AND (@caregiver IS NULL OR C_Username = @caregiver); " + RESTORE;
+    // one set-based delete through IX_Schedule_Caregiver_Date, however many appointments the day has
+    private static final String CANCEL_DAY =
+            "SET NOCOUNT ON; SET XACT_ABORT ON; " +
+            "DECLARE @caregiver varchar(255) = ?, @date date = ?; " + GONE +
+            "WHERE C_Username = @caregiver AND ScheduleDate = @date; " + RESTORE;
+
+    public Reservation reserve(Connection con, int id, String patient, String caregiver, Date date, int slot,
+                               String vaccine) throws SQLException {
+        try (PreparedStatement statement = con.prepareStatement(RESERVE)) {
+            statement.setString(1, patient);
+            statement.setString(2, caregiver);
+            statement.setDate(3, date);
+            statement.setInt(4, slot);
+            statement.setString(5, vaccine);
+            statement.setInt(6, id);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                resultSet.next();
+                switch (resultSet.getInt("Status")) {
+                    case 0:
+                        break;
+                    case 2:
+                        return Reservation.failed(Reservation.Status.NO_DOSES);
+                    default:
+                        return Reservation.failed(Reservation.Status.NO_CAREGIVER);
+                }
+                return Reservation.reserved(new Appointment(id, patient, caregiver,
+                        vaccine, date, resultSet.getTime("ScheduleTime").toLocalTime(),
+                        resultSet.getString("Location")));
+            }
+        }
+    }
+
+    // at most MAX_RESERVE_BATCH bookings, with the IDs firstId, firstId + 1, ...; returns null if nothing was
+    // booked
+    public List<Appointment> reserveAll(Connection con, int firstId, List<Booking> bookings) throws SQLException {
+        if (bookings.size() > MAX_RESERVE_BATCH) {
+            throw new IllegalArgumentException("At most " + MAX_RESERVE_BATCH + " bookings per batch");
+        }
+        StringBuilder sql = new StringBuilder(RESERVE_ALL_HEAD);
+        for (int i = 0; i < bookings.size(); i++) {
+            sql.append(i == 0 ? "(" : ", (").append(i).append(", ?, ?, ?, ?, ?)");
+        }
+        sql.append(RESERVE_ALL_TAIL);
+        List<Appointment> appointments = new ArrayList<>(bookings.size());
+        try (PreparedStatement statement = con.prepareStatement(sql.toString())) {
+            int i = 1;
+            for (Booking booking : bookings) {
+                statement.setString(i++, booking.getPatient());
+                statement.setString(i++, booking.getCaregiver());
+                statement.setDate(i++, booking.getDate());
+                statement.setInt(i++, booking.getSlot());
+                statement.setString(i++, booking.getVaccine());
+            }
+            statement.setInt(i, firstId);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    Booking booking = bookings.get(resultSet.getInt("Seq"));
+                    appointments.add(new Appointment(resultSet.getInt("ID"), booking.getPatient(),
+                            booking.getCaregiver(), booking.getVaccine(), booking.getDate(),
+                            resultSet.getTime("ScheduleTime").toLocalTime(), resultSet.getString("Location")));
+                }
+            }
+        }
+        return appointments.isEmpty() ? null : appointments;
+    }
+
+    // the first of count consecutive IDs no one else gets
+    public long reserveIds(Connection con, int count) throws SQLException {
+        try (PreparedStatement statement = con.prepareStatement(RESERVE_IDS)) {
+            statement.setInt(1, count);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                resultSet.next();
+                return resultSet.getLong("First");
+            }
+        }
+    }
+
+    public List<Appointment> getForPatient(Connection con, String patient) throws SQLException {
+        return query(con, FOR_PATIENT, patient);
+    }
+
+    public List<Appointment> getForCaregiver(Connection con, String caregiver) throws SQLException {
+        return query(con, FOR_CAREGIVER, caregiver);
+    }
+
+    // keyset pagination on the primary key: the query seeks to afterId instead of skipping rows
+    public int stream(Connection con, AppointmentQuery query, Consumer<Appointment> sink) throws SQLException {
+        int count = 0;
+        try (PreparedStatement statement = con.prepareStatement(streamSql(query))) {
+            int i = 1;
+            statement.setInt(i++, query.getLimit());
+            statement.setString(i++, query.getUsername());
+            statement.setInt(i++, query.getAfterId());
+            if (query.getFrom() != null) {
+                statement.setDate(i++, query.getFrom());
+            }
+            if (query.getTo() != null) {
+                statement.setDate(i, query.getTo());
+            }
+            statement.setFetchSize(Math.min(query.getLimit(), FETCH_SIZE));
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    sink.accept(read(resultSet));
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    // parameters: limit, username, after ID, then the from and to dates if the query has them
+    static String streamSql(AppointmentQuery query) {
+        StringBuilder sql = new StringBuilder(STREAM)
+                .append(query.isPatient() ? "P_Username = ?" : "C_Username = ?")
+                .append(" AND ID > ?");
+        if (query.getFrom() != null) {
+            sql.append(" AND ScheduleDate >= ?");
+        }
+        if (query.getTo() != null) {
+            sql.append(" AND ScheduleDate <= ?");
+        }
+        return sql.append(" ORDER BY ID").toString();
+    }
+
+    // returns null if there is no such appointment (for the patient or caregiver, if given)
+    public Appointment cancel(Connection con, int id, String patient, String caregiver) throws SQLException {
+        try (PreparedStatement statement = con.prepareStatement(CANCEL)) {
+            statement.setInt(1, id);
+            statement.setString(2, patient);
+            statement.setString(3, caregiver);
+            List<Appointment> cancelled = readAll(statement);
+            return cancelled.isEmpty() ? null : cancelled.get(0);
+        }
+    }
+
+    public List<Appointment> cancelDay(Connection con, String caregiver, Date date) throws SQLException {
+        try (PreparedStatement statement = con.prepareStatement(CANCEL_DAY)) {
+            statement.setString(1, caregiver);
+            statement.setDate(2, date);
+            return readAll(statement);
+        }
+    }
+
+    private static List<Appointment> query(Connection con, String query, String username) throws SQLException {
+        try (PreparedStatement statement = con.prepareStatement(query)) {
+            statement.setString(1, username);
+            return readAll(statement);
+        }
+    }
+
+    private static List<Appointment> readAll(PreparedStatement statement) throws SQLException {
+        List<Appointment> appointments = new ArrayList<>();
+        try (ResultSet resultSet = statement.executeQuery()) {
+            while (resultSet.next()) {
+                appointments.add(read(resultSet));
+            }
+        }
+        return appointments;
+    }
+
+    private static Appointment read(ResultSet resultSet) throws SQLException {
+        Time time = resultSet.getTime("ScheduleTime");
+        return new Appointment(resultSet.getInt("ID"), resultSet.getString("P_Username"),
+                resultSet.getString("C_Username"), resultSet.getString("V_Name"),
+                resultSet.getDate("ScheduleDate"), time == null ? null : time.toLocalTime(),
+                resultSet.getString("Location"));
+    }
+}
@@ -0,0 +1,302 @@
+package scheduler.db;
+
+import scheduler.model.Appointment;
+import scheduler.model.Availability;
+import scheduler.model.Booking;
+import scheduler.model.Reservation;
+import scheduler.util.Util;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * The original backend: the SQL Server (Azure SQL) database. The SQL itself lives in the DAO classes;
+ * this class borrows a pooled connection per call, draws transaction boundaries and hands the connection
+ * back when the call returns.
+ */
+public class SqlServerStore implements Store {
+
+    private final ConnectionPool pool = ConnectionPool.getInstance();
+    private final PatientDao patients = new PatientDao();
+    private final CaregiverDao caregivers = new CaregiverDao();
+    private final AvailabilityDao availabilities = new AvailabilityDao();
+    private final VaccineDao vaccines = new VaccineDao();
+    private final ScheduleDao schedule = new ScheduleDao();
+    private final ChangeDao changes = new ChangeDao();
+    // appointment IDs come from blocks of SchedulerIdBlock (default 1000), one round trip per block
+    private final IdAllocator ids = new IdAllocator(count -> {
+        try (Connection con = pool.borrow()) {
+            return schedule.reserveIds(con, count);
+        }
+    }, Util.envInt("SchedulerIdBlock", 1000, 1));
+
+    @Override
+    public void migrate() throws SQLException {
+        try (Connection con = pool.borrow()) {
+            for (String script : Migrations.apply(con)) {
+                System.out.println("Applied schema migration " + script);
+            }
+        }
+    }
+
+    @Override
+    public boolean patientExists(String username) throws SQLException {
+        return exists(patients, username);
+    }
+
+    @Override
+    public void insertPatient(String username, byte[] salt, byte[] hash) throws SQLException {
+        insert(patients, username, salt, hash);
+    }
+
+    @Override
+    public List<String> getPatientUsernames() throws SQLException {
+        return usernames(patients);
+    }
+
+    @Override
+    public Set<String> findExistingPatients(Collection<String> usernames) throws SQLException {
+        return findExisting(patients, usernames);
+    }
+
+    @Override
+    public List<String> insertPatients(Map<String, Credentials> accounts) throws SQLException {
+        return insertAll(patients, accounts);
+    }
+
+    @Override
+    public Credentials getPatientCredentials(String username) throws SQLException {
+        return credentials(patients, username);
+    }
+
+    @Override
+    public void updatePatientCredentials(String username, byte[] salt, byte[] hash) throws SQLException {
+        updateCredentials(patients, username, salt, hash);
+    }
+
+    @Override
+    public boolean caregiverExists(String username) throws SQLException {
+        return exists(caregivers, username);
+    }
+
+    @Override
+    public void insertCaregiver(String username, byte[] salt, byte[] hash) throws SQLException {
+        insert(caregivers, username, salt, hash);
+    }
+
+    @Override
+    public List<String> getCaregiverUsernames() throws SQLException {
+        return usernames(caregivers);
+    }
+
+    @Override
+    public Set<String> findExistingCaregivers(Collection<String> usernames) throws SQLException {
+        return findExisting(caregivers, usernames);
+    }
+
+    @Override
+    public List<String> insertCaregivers(Map<String, Credentials> accounts) throws SQLException {
+        return insertAll(caregivers, accounts);
+    }
+
+    @Override
+    public Credentials getCaregiverCredentials(String username) throws SQLException {
+        return credentials(caregivers, username);
+    }
+
+    @Override
+    public void updateCaregiverCredentials(String username, byte[] salt, byte[] hash) throws SQLException {
+        updateCredentials(caregivers, username, salt, hash);
+    }
+
+    @Override
+    public void insertAvailability(Availability availability) throws SQLException {
+        try (Connection con = pool.borrow()) {
+            availabilities.insert(con, availability);
+        }
+    }
+
+    @Override
+    public List<Date> insertAvailabilities(List<Availability> days) throws SQLException {
+        try (Connection con = pool.borrow()) {
+            con.setAutoCommit(false);
+            List<Date> added = availabilities.insertAllIfAbsent(con, days);
+            con.commit();
+            return added;
+        }
+    }
+
+    @Override
+    public List<Availability> getAvailabilities() throws SQLException {
+        try (Connection con = pool.borrow()) {
+            return availabilities.getAll(con);
+        }
+    }
+
+    @Override
+    public Availability getAvailability(String caregiver, Date date) throws SQLException {
+        try (Connection con = pool.borrow()) {
+            return availabilities.get(con, caregiver, date);
+        }
+    }
+
+    @Override
+    public Integer getDoses(String vaccine) throws SQLException {
+        try (Connection con = pool.borrow()) {
+            return vaccines.getDoses(con, vaccine);
+        }
+    }
+
+    @Override
+    public void insertVaccine(String vaccine, int doses) throws SQLException {
+        try (Connection con = pool.borrow()) {
+            vaccines.insert(con, vaccine, doses);
+        }
+    }
+
+    @Override
+    public void addDoses(Map<String, Integer> deltas) throws SQLException {
+        try (Connection con = pool.borrow()) {
+            // an uncommitted transaction is rolled back when the connection goes back to the pool
+            con.setAutoCommit(false);
+            vaccines.addDoses(con, deltas);
+            con.commit();
+        }
+    }
+
+    @Override
+    public Map<String, Integer> getVaccines() throws SQLException {
+        try (Connection con = pool.borrow()) {
+            return vaccines.getAll(con);
+        }
+    }
+
+    @Override
+    public Reservation reserve(String patient, String caregiver, Date date, int slot, String vaccine)
+            throws SQLException {
+        // before borrowing: fetching a new block borrows a connection of its own
+        int id = ids.next();
+        try (Connection con = pool.borrow()) {
+            return schedule.reserve(con, id, patient, caregiver, date, slot, vaccine);
+        }
+    }
+
+    @Override
+    public List<Appointment> reserveAll(List<Booking> bookings) throws SQLException {
+        int firstId = ids.next(bookings.size());
+        try (Connection con = pool.borrow()) {
+            return schedule.reserveAll(con, firstId, bookings);
+        }
+    }
+
+    @Override
+    public List<Appointment> getAppointmentsForPatient(String patient) throws SQLException {
+        try (Connection con = pool.borrow()) {
+            return schedule.getForPatient(con, patient);
+        }
+    }
+
+    @Override
+    public List<Appointment> getAppointmentsForCaregiver(String caregiver) throws SQLException {
+        try (Connection con = pool.borrow()) {
+            return schedule.getForCaregiver(con, caregiver);
+        }
+    }
+
+    @Override
+    public int streamAppointments(AppointmentQuery query, Consumer<Appointment> sink) throws SQLException {
+        try (Connection con = pool.borrow()) {
+            return schedule.stream(con, query, sink);
+        }
+    }
+
+    @Override
+    public Appointment cancelAppointment(int id, String patient, String caregiver) throws SQLException {
+        try (Connection con = pool.borrow()) {
+            return schedule.cancel(con, id, patient, caregiver);
+        }
+    }
+
+    @Override
+    public List<Appointment> cancelDay(String caregiver, Date date) throws SQLException {
+        try (Connection con = pool.borrow()) {
+            return schedule.cancelDay(con, caregiver, date);
+        }
+    }
+
+    private boolean exists(AccountDao dao, String username) throws SQLException {
+        try (Connection con = pool.borrow()) {
+            return dao.exists(con, username);
+        }
+    }
+
+    private void insert(AccountDao dao, String username, byte[] salt, byte[] hash) throws SQLException {
+        try (Connection con = pool.borrow()) {
+            dao.insert(con, username, salt, hash);
+        }
+    }
+
+    private List<String> usernames(AccountDao dao) throws SQLException {
+        try (Connection con = pool.borrow()) {
+            return dao.getUsernames(con);
+        }
+    }
+
+    private Set<String> findExisting(AccountDao dao, Collection<String> usernames) throws SQLException {
+        if (usernames.isEmpty()) {
+            return new HashSet<>();
+        }
+        try (Connection con = pool.borrow()) {
+            return dao.findExisting(con, usernames);
+        }
+    }
+
+    private List<String> insertAll(AccountDao dao, Map<String, Credentials> accounts) throws SQLException {
+        try (Connection con = pool.borrow()) {
+            con.setAutoCommit(false);
+            return dao.insertAllIfAbsent(con, accounts);
+        }
+    }
+
+    private Credentials credentials(AccountDao dao, String username) throws SQLException {
+        try (Connection con = pool.borrow()) {
+            return dao.getCredentials(con, username);
+        }
+    }
+
+    private void updateCredentials(AccountDao dao, String username, byte[] salt, byte[] hash)
+            throws SQLException {
+        try (Connection con = pool.borrow()) {
+            dao.updateCredentials(con, username, salt, hash);
+        }
+    }
+
+    @Override
+    public String getChangeSource() throws SQLException {
+        try (Connection con = pool.borrow()) {
+            return changes.getSource(con);
+        }
+    }
+
+    @Override
+    public ChangeSet getChangesSince(long version) throws SQLException {
+        try (Connection con = pool.borrow()) {
+            // taken first: whatever is written while the rows are read comes back next time
+            long next = changes.getVersion(con);
+            if (version == 0) {
+                return new ChangeSet(next, availabilities.getAll(con), vaccines.getAll(con),
+                        patients.getUsernames(con), caregivers.getUsernames(con));
+            }
+            return new ChangeSet(next, availabilities.getChangedSince(con, version),
+                    vaccines.getChangedSince(con, version), patients.getUsernamesChangedSince(con, version),
+                    caregivers.getUsernamesChangedSince(con, version), changes.getTombstonesSince(con, version));
+        }
+    }
+}
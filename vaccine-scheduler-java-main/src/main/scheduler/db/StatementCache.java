@@ -0,0 +1,143 @@
+package scheduler.db;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The prepared statements of one physical connection, kept across borrows so the same SQL is only
+ * prepared once per connection.
+ *
+ * Statements handed out are proxies whose close() resets the statement and puts it back in the cache.
+ * The least recently used statement is really closed once the cache is full. A physical connection is
+ * only ever used by one borrower at a time, so this class needs no locking.
+ */
+class StatementCache {
+
+    private final Connection physical;
+    private final int capacity;
+    private final LongAdder prepares;
+    private final LongAdder hits;
+    private final LinkedHashMap<String, Entry> statements = new LinkedHashMap<>(16, 0.75f, true);
+
+    StatementCache(Connection physical, int capacity, LongAdder prepares, LongAdder hits) {
+        this.physical = physical;
+        this.capacity = capacity;
+        this.prepares = prepares;
+        this.hits = hits;
+    }
+
+    PreparedStatement prepare(String sql) throws SQLException {
+        Entry entry = statements.get(sql);
+        if (entry != null && !entry.inUse) {
+            hits.increment();
+            entry.inUse = true;
+            return entry.proxy;
+        }
+        prepares.increment();
+        PreparedStatement statement = physical.prepareStatement(sql);
+        if (entry != null || capacity <= 0) {
+            // the cached one is busy (same SQL prepared twice at once) or caching is off: hand out a plain one
+            return statement;
+        }
+        entry = new Entry(statement);
+        entry.inUse = true;
+        statements.put(sql, entry);
+        evictOverflow();
+        return entry.proxy;
+    }
+
+    private void evictOverflow() {
+        Iterator<Entry> it = statements.values().iterator();
+        while (statements.size() > capacity && it.hasNext()) {
+            Entry eldest = it.next();
+            it.remove();
+            eldest.evicted = true;
+            if (!eldest.inUse) {
+                closeQuietly(eldest.statement);
+            }
+        }
+    }
+
+    void releaseAll() throws SQLException {
+        for (Entry entry : statements.values()) {
+            if (entry.inUse) {
+                entry.proxy.close();
+            }
+        }
+    }
+
+    void closeAll() {
+        for (Entry entry : statements.values()) {
+            closeQuietly(entry.statement);
+        }
+        statements.clear();
+    }
+
+    int size() {
+        return statements.size();
+    }
+
+    private static void closeQuietly(PreparedStatement statement) {
+        try {
+            statement.close();
+        } catch (SQLException e) {
+            // the statement is being thrown away anyway
+        }
+    }
+
+    private static class Entry implements InvocationHandler {
+        private final PreparedStatement statement;
+        private final PreparedStatement proxy;
+        private boolean inUse = false;
+        private boolean evicted = false;
+
+        private Entry(PreparedStatement statement) {
+            this.statement = statement;
+            this.proxy = (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+                    new Class<?>[]{PreparedStatement.class}, this);
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (inUse) {
+                        inUse = false;
+                        if (evicted) {
+                            statement.close();
+                        } else {
+                            statement.clearParameters();
+                            statement.clearBatch();
+                        }
+                    }
+                    return null;
+                case "isClosed":
+                    return !inUse || statement.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "CachedStatement[" + statement + "]";
+                default:
+                    if (!inUse) {
+                        throw new SQLException("Statement has already been closed");
+                    }
+                    try {
+                        return method.invoke(statement, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+            }
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package scheduler.db;
+
+import scheduler.model.Appointment;
+import scheduler.model.Availability;
+import scheduler.model.Booking;
+import scheduler.model.Reservation;
+
+import java.sql.Date;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Everything the scheduler reads from or writes to its tables (see resources/create.sql).
+ * The model classes and Scheduler only talk to the database through this interface, so the
+ * backing storage can be swapped without touching them (see {@link Stores}).
+ */
+public interface Store {
+
+    // creates or upgrades the tables to the schema this version of the scheduler expects
+    void migrate() throws SQLException;
+
+    // Patients
+    boolean patientExists(String username) throws SQLException;
+
+    void insertPatient(String username, byte[] salt, byte[] hash) throws SQLException;
+
+    // returns null if there is no such patient
+    Credentials getPatientCredentials(String username) throws SQLException;
+
+    void updatePatientCredentials(String username, byte[] salt, byte[] hash) throws SQLException;
+
+    List<String> getPatientUsernames() throws SQLException;
+
+    // of the given usernames, the ones that already exist
+    Set<String> findExistingPatients(Collection<String> usernames) throws SQLException;
+
+    // inserts the patients (username -> credentials) in batched transactions, skipping usernames that
+    // already exist; returns the usernames that were actually added
+    List<String> insertPatients(Map<String, Credentials> patients) throws SQLException;
+
+    // Caregivers
+    boolean caregiverExists(String username) throws SQLException;
+
+    void insertCaregiver(String username, byte[] salt, byte[] hash) throws SQLException;
+
+    // returns null if there is no such caregiver
+    Credentials getCaregiverCredentials(String username) throws SQLException;
+
+    void updateCaregiverCredentials(String username, byte[] salt, byte[] hash) throws SQLException;
+
+    List<String> getCaregiverUsernames() throws SQLException;
+
+    Set<String> findExistingCaregivers(Collection<String> usernames) throws SQLException;
+
+    List<String> insertCaregivers(Map<String, Credentials> caregivers) throws SQLException;
+
+    // Availabilities
+    // the booked counts of the row are ignored; a new day has nothing booked
+    void insertAvailability(Availability availability) throws SQLException;
+
+    // inserts all the days in one transaction, skipping ones already there;
+    // returns the dates that were actually added
+    List<Date> insertAvailabilities(List<Availability> availabilities) throws SQLException;
+
+    // the whole table, ordered by date, with the appointments booked in each slot
+    List<Availability> getAvailabilities() throws SQLException;
+
+    // the caregiver's day with the appointments booked in each slot, or null if they are not available then
+    Availability getAvailability(String caregiver, Date date) throws SQLException;
+
+    // Vaccines
+    // returns null if the vaccine does not exist
+    Integer getDoses(String vaccine) throws SQLException;
+
+    void insertVaccine(String vaccine, int doses) throws SQLException;
+
+    // adds each delta (which may be negative) to the vaccine's doses, all in one transaction
+    void addDoses(Map<String, Integer> deltas) throws SQLException;
+
+    // vaccine name -> available doses, ordered by name
+    Map<String, Integer> getVaccines() throws SQLException;
+
+    // Schedule
+    /**
+     * Books an appointment in one atomic step: takes one of the places in the given time slot of the
+     * caregiver's availability for the date, inserts the Schedule row at that slot's time and location,
+     * and takes a dose of the vaccine. Either all of it happens or none does, also when many clients reserve
+     * at the same time. Returns NO_CAREGIVER if the caregiver is not available that day or the slot is
+     * already booked out, and NO_DOSES if the vaccine has none left.
+     */
+    Reservation reserve(String patient, String caregiver, Date date, int slot, String vaccine)
+            throws SQLException;
+
+    /**
+     * Books several appointments in one transaction, as {@link #reserve} would one at a time: all of them,
+     * or none if any of the slots no longer has room or a vaccine has too few doses. Returns the
+     * appointments in the order of the bookings, or null if nothing was booked. At most a few hundred
+     * bookings per call.
+     */
+    List<Appointment> reserveAll(List<Booking> bookings) throws SQLException;
+
+    List<Appointment> getAppointmentsForPatient(String patient) throws SQLException;
+
+    List<Appointment> getAppointmentsForCaregiver(String caregiver) throws SQLException;
+
+    /**
+     * Passes the appointments matching the query to the sink one at a time, in ID order, without holding
+     * them all in memory. Returns how many were passed.
+     */
+    int streamAppointments(AppointmentQuery query, Consumer<Appointment> sink) throws SQLException;
+
+    /**
+     * Cancels an appointment in one atomic step: deletes the Schedule row, gives its place back to the
+     * caregiver's day (Booked goes down and its time slot is no longer full) and its dose back to the
+     * vaccine. If patient or caregiver is not null, the appointment must be theirs. Returns the cancelled
+     * appointment, or null if there was no such appointment.
+     */
+    Appointment cancelAppointment(int id, String patient, String caregiver) throws SQLException;
+
+    // cancels all the caregiver's appointments on the date the same way, in one step; returns them by ID
+    List<Appointment> cancelDay(String caregiver, Date date) throws SQLException;
+
+    // Change tracking
+    // names the database the change versions belong to; versions from another database mean nothing here
+    String getChangeSource() throws SQLException;
+
+    /**
+     * The caregiver days, vaccines and account usernames written at or after the change version, or all of
+     * them for version 0. Rows written while this runs may be returned again by the next call, from the
+     * returned set's version, but are never missed.
+     */
+    ChangeSet getChangesSince(long version) throws SQLException;
+}
@@ -0,0 +1,65 @@
+package scheduler.db;
+
+import scheduler.journal.Journal;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+
+/**
+ * Picks the storage backend for the process.
+ *
+ * Set the SchedulerStore environment variable to "embedded" to run entirely in memory (no database
+ * needed, useful for local load tests and single-node setups). Anything else, or leaving it unset,
+ * uses the SQL Server database configured through ConnectionPool. Either way the store handed out
+ * counts its calls in Metrics (see {@link InstrumentedStore}). Set SchedulerJournal to a directory to
+ * also record every change in an event journal there (see {@link JournaledStore}).
+ */
+public class Stores {
+
+    private static Store instance = null;
+    private static Journal journal = null;
+
+    public static synchronized Store get() {
+        if (instance == null) {
+            String kind = System.getenv("SchedulerStore");
+            Store store;
+            if (kind != null && kind.equalsIgnoreCase("embedded")) {
+                store = new EmbeddedStore();
+            } else {
+                store = new SqlServerStore();
+            }
+            String dir = System.getenv("SchedulerJournal");
+            if (dir != null && !dir.isEmpty()) {
+                try {
+                    journal = Journal.open(Paths.get(dir));
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Could not open the journal in " + dir, e);
+                }
+                store = JournaledStore.wrap(store, journal);
+            }
+            instance = InstrumentedStore.wrap(store);
+        }
+        return instance;
+    }
+
+    // the journal the store writes to, or null if it keeps none
+    public static synchronized Journal getJournal() {
+        get();
+        return journal;
+    }
+
+    // true if the exception is a primary key / unique constraint violation, from either backend
+    public static boolean isDuplicateKey(SQLException e) {
+        // 2627: PRIMARY KEY or UNIQUE constraint, 2601: unique index (SQL Server)
+        return e instanceof SQLIntegrityConstraintViolationException && !e.getMessage().contains("FOREIGN KEY")
+                || e.getErrorCode() == 2627 || e.getErrorCode() == 2601;
+    }
+
+    // lets tools and benchmarks choose the backend explicitly
+    public static synchronized void set(Store store) {
+        instance = InstrumentedStore.wrap(store);
+    }
+}
@@ -0,0 +1,64 @@
+package scheduler.db;
+
+import java.sql.Date;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * The keys of the rows deleted from the tables the scheduler keeps in memory, as recorded by the triggers of
+ * V9__deletion_tracking.sql: caregiver days, vaccines and account usernames.
+ */
+public class Tombstones {
+
+    // date -> caregivers whose day was deleted
+    private final Map<Date, Set<String>> availabilities = new TreeMap<>();
+    private final Set<String> vaccines = new HashSet<>();
+    private final Set<String> patients = new HashSet<>();
+    private final Set<String> caregivers = new HashSet<>();
+
+    // one Tombstones row; rows of other tables are ignored
+    void add(String table, String name, Date time) {
+        switch (table) {
+            case "Availabilities":
+                availabilities.computeIfAbsent(time, d -> new HashSet<>()).add(name);
+                break;
+            case "Vaccines":
+                vaccines.add(name);
+                break;
+            case "Patients":
+                patients.add(name);
+                break;
+            case "Caregivers":
+                caregivers.add(name);
+                break;
+            default:
+                break;
+        }
+    }
+
+    public Map<Date, Set<String>> getAvailabilities() {
+        return availabilities;
+    }
+
+    public Set<String> getVaccines() {
+        return vaccines;
+    }
+
+    public Set<String> getPatients() {
+        return patients;
+    }
+
+    public Set<String> getCaregivers() {
+        return caregivers;
+    }
+
+    public int size() {
+        int days = 0;
+        for (Set<String> onDate : availabilities.values()) {
+            days += onDate.size();
+        }
+        return days + vaccines.size() + patients.size() + caregivers.size();
+    }
+}
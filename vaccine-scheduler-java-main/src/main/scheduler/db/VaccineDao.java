@@ -0,0 +1,75 @@
+package scheduler.db;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// SQL for the Vaccines table
+public class VaccineDao {
+
+    private static final String GET_DOSES = "SELECT Doses FROM Vaccines WHERE Name = ?";
+    private static final String INSERT = "INSERT INTO Vaccines (Name, Doses) VALUES (?, ?)";
+    private static final String ADD_DOSES = "UPDATE Vaccines SET Doses = Doses + ? WHERE Name = ?";
+    private static final String GET_ALL = "SELECT Name, Doses FROM Vaccines ORDER BY Name";
+    private static final String GET_CHANGED = "SELECT Name, Doses FROM Vaccines "
+            + "WHERE RowVer >= CONVERT(binary(8), CAST(? AS bigint)) ORDER BY Name";
+
+    // returns null if the vaccine does not exist
+    public Integer getDoses(Connection con, String vaccine) throws SQLException {
+        try (PreparedStatement statement = con.prepareStatement(GET_DOSES)) {
+            statement.setString(1, vaccine);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return resultSet.next() ? resultSet.getInt("Doses") : null;
+            }
+        }
+    }
+
+    public void insert(Connection con, String vaccine, int doses) throws SQLException {
+        try (PreparedStatement statement = con.prepareStatement(INSERT)) {
+            statement.setString(1, vaccine);
+            statement.setInt(2, doses);
+            statement.executeUpdate();
+        }
+    }
+
+    // one batch of relative updates, so concurrent writers never overwrite each other
+    public void addDoses(Connection con, Map<String, Integer> deltas) throws SQLException {
+        try (PreparedStatement statement = con.prepareStatement(ADD_DOSES)) {
+            for (Map.Entry<String, Integer> delta : deltas.entrySet()) {
+                statement.setInt(1, delta.getValue());
+                statement.setString(2, delta.getKey());
+                statement.addBatch();
+            }
+            statement.executeBatch();
+        }
+    }
+
+    // vaccine name -> doses, ordered by name
+    public Map<String, Integer> getAll(Connection con) throws SQLException {
+        Map<String, Integer> vaccines = new LinkedHashMap<>();
+        try (PreparedStatement statement = con.prepareStatement(GET_ALL);
+             ResultSet resultSet = statement.executeQuery()) {
+            while (resultSet.next()) {
+                vaccines.put(resultSet.getString("Name"), resultSet.getInt("Doses"));
+            }
+        }
+        return vaccines;
+    }
+
+    // the vaccines added or given doses at or after the change version
+    public Map<String, Integer> getChangedSince(Connection con, long version) throws SQLException {
+        Map<String, Integer> vaccines = new LinkedHashMap<>();
+        try (PreparedStatement statement = con.prepareStatement(GET_CHANGED)) {
+            statement.setLong(1, version);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    vaccines.put(resultSet.getString("Name"), resultSet.getInt("Doses"));
+                }
+            }
+        }
+        return vaccines;
+    }
+}
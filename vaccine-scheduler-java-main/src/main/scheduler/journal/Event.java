@@ -0,0 +1,253 @@
+package scheduler.journal;
+
+import scheduler.model.Appointment;
+import scheduler.model.Availability;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.sql.Date;
+import java.time.LocalDate;
+import java.time.LocalTime;
+
+/**
+ * One change to the scheduler's data, as recorded in the {@link Journal}. Events read back from the
+ * journal carry the sequence number and time the journal gave them; new ones have neither until they are
+ * appended. Passwords never reach the journal: a new account is recorded by its username only.
+ */
+public class Event {
+
+    public enum Type {
+        PATIENT_ADDED(1),
+        CAREGIVER_ADDED(2),
+        VACCINE_ADDED(3),
+        DOSES_ADDED(4),
+        AVAILABILITY_ADDED(5),
+        RESERVED(6),
+        CANCELLED(7);
+
+        // the byte stored in the journal; never reuse or renumber one
+        private final byte code;
+
+        Type(int code) {
+            this.code = (byte) code;
+        }
+
+        byte code() {
+            return code;
+        }
+
+        static Type of(byte code) throws IOException {
+            for (Type type : values()) {
+                if (type.code == code) {
+                    return type;
+                }
+            }
+            throw new IOException("Unknown journal event type " + code);
+        }
+    }
+
+    private final long seq;
+    private final long time;
+    private final Type type;
+    // the username or vaccine name
+    private final String name;
+    // the doses, the change in doses or the appointment ID
+    private final int number;
+    private final Availability availability;
+    private final Appointment appointment;
+    private final int slot;
+
+    private Event(long seq, long time, Type type, String name, int number, Availability availability,
+                  Appointment appointment, int slot) {
+        this.seq = seq;
+        this.time = time;
+        this.type = type;
+        this.name = name;
+        this.number = number;
+        this.availability = availability;
+        this.appointment = appointment;
+        this.slot = slot;
+    }
+
+    public static Event patientAdded(String username) {
+        return new Event(0, 0, Type.PATIENT_ADDED, username, 0, null, null, -1);
+    }
+
+    public static Event caregiverAdded(String username) {
+        return new Event(0, 0, Type.CAREGIVER_ADDED, username, 0, null, null, -1);
+    }
+
+    public static Event vaccineAdded(String vaccine, int doses) {
+        return new Event(0, 0, Type.VACCINE_ADDED, vaccine, doses, null, null, -1);
+    }
+
+    // delta may be negative: doses taken by appointments reach the store as negative deltas
+    public static Event dosesAdded(String vaccine, int delta) {
+        return new Event(0, 0, Type.DOSES_ADDED, vaccine, delta, null, null, -1);
+    }
+
+    // a new caregiver day; its booked counts are not recorded
+    public static Event availabilityAdded(Availability availability) {
+        return new Event(0, 0, Type.AVAILABILITY_ADDED, availability.getCaregiver(), 0, availability, null, -1);
+    }
+
+    public static Event reserved(Appointment appointment, int slot) {
+        return new Event(0, 0, Type.RESERVED, appointment.getPatient(), appointment.getId(), null, appointment,
+                slot);
+    }
+
+    public static Event cancelled(int id) {
+        return new Event(0, 0, Type.CANCELLED, null, id, null, null, -1);
+    }
+
+    // 0 until appended
+    public long getSeq() {
+        return seq;
+    }
+
+    // milliseconds since the epoch when it was appended
+    public long getTime() {
+        return time;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getNumber() {
+        return number;
+    }
+
+    public Availability getAvailability() {
+        return availability;
+    }
+
+    public Appointment getAppointment() {
+        return appointment;
+    }
+
+    public int getSlot() {
+        return slot;
+    }
+
+    // the fields of the event, without the sequence number and time
+    byte[] encode() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            switch (type) {
+                case PATIENT_ADDED:
+                case CAREGIVER_ADDED:
+                    out.writeUTF(name);
+                    break;
+                case VACCINE_ADDED:
+                case DOSES_ADDED:
+                    out.writeUTF(name);
+                    out.writeInt(number);
+                    break;
+                case AVAILABILITY_ADDED:
+                    out.writeLong(availability.getDate().toLocalDate().toEpochDay());
+                    out.writeUTF(availability.getCaregiver());
+                    out.writeUTF(availability.getLocation());
+                    out.writeInt(availability.getStart().toSecondOfDay());
+                    out.writeShort(availability.getSlotMinutes());
+                    out.writeByte(availability.getSlots());
+                    out.writeShort(availability.getSlotCapacity());
+                    break;
+                case RESERVED:
+                    out.writeInt(appointment.getId());
+                    out.writeUTF(appointment.getPatient());
+                    out.writeUTF(appointment.getCaregiver());
+                    out.writeUTF(appointment.getVaccine());
+                    out.writeLong(appointment.getDate().toLocalDate().toEpochDay());
+                    out.writeByte(slot);
+                    out.writeInt(appointment.getTime() == null ? -1 : appointment.getTime().toSecondOfDay());
+                    out.writeUTF(appointment.getLocation() == null ? "" : appointment.getLocation());
+                    break;
+                case CANCELLED:
+                    out.writeInt(number);
+                    break;
+                default:
+                    throw new IllegalStateException("No encoding for " + type);
+            }
+        } catch (IOException e) {
+            // writing to memory does not fail
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    static Event decode(long seq, long time, byte code, byte[] fields) throws IOException {
+        Type type = Type.of(code);
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(fields));
+        switch (type) {
+            case PATIENT_ADDED:
+            case CAREGIVER_ADDED:
+                return new Event(seq, time, type, in.readUTF(), 0, null, null, -1);
+            case VACCINE_ADDED:
+            case DOSES_ADDED:
+                return new Event(seq, time, type, in.readUTF(), in.readInt(), null, null, -1);
+            case AVAILABILITY_ADDED: {
+                Date date = Date.valueOf(LocalDate.ofEpochDay(in.readLong()));
+                String caregiver = in.readUTF();
+                String location = in.readUTF();
+                LocalTime start = LocalTime.ofSecondOfDay(in.readInt());
+                int slotMinutes = in.readShort();
+                int slots = in.readByte();
+                int slotCapacity = in.readShort();
+                Availability availability = new Availability(date, caregiver, location, start, slotMinutes, slots,
+                        slotCapacity);
+                return new Event(seq, time, type, caregiver, 0, availability, null, -1);
+            }
+            case RESERVED: {
+                int id = in.readInt();
+                String patient = in.readUTF();
+                String caregiver = in.readUTF();
+                String vaccine = in.readUTF();
+                Date date = Date.valueOf(LocalDate.ofEpochDay(in.readLong()));
+                int slot = in.readByte();
+                int seconds = in.readInt();
+                String location = in.readUTF();
+                Appointment appointment = new Appointment(id, patient, caregiver, vaccine, date,
+                        seconds < 0 ? null : LocalTime.ofSecondOfDay(seconds), location.isEmpty() ? null : location);
+                return new Event(seq, time, type, patient, id, null, appointment, slot);
+            }
+            default:
+                return new Event(seq, time, type, null, in.readInt(), null, null, -1);
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder().append('#').append(seq).append(' ').append(type);
+        switch (type) {
+            case AVAILABILITY_ADDED:
+                text.append(' ').append(availability.getDate()).append(' ').append(name)
+                        .append(' ').append(availability.getStart()).append('+').append(availability.getSlots())
+                        .append('x').append(availability.getSlotMinutes()).append("min cap ")
+                        .append(availability.getSlotCapacity()).append(' ').append(availability.getLocation());
+                break;
+            case RESERVED:
+                text.append(' ').append(number).append(' ').append(appointment.getPatient())
+                        .append(' ').append(appointment.getCaregiver()).append(' ').append(appointment.getVaccine())
+                        .append(' ').append(appointment.getDate()).append(" slot ").append(slot);
+                break;
+            case CANCELLED:
+                text.append(' ').append(number);
+                break;
+            case VACCINE_ADDED:
+            case DOSES_ADDED:
+                text.append(' ').append(name).append(' ').append(number);
+                break;
+            default:
+                text.append(' ').append(name);
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,325 @@
+package scheduler.journal;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only log of every change made to the scheduler's data, kept in memory-mapped segment files.
+ *
+ * Every event gets the next sequence number. A segment is named after the sequence number of its first
+ * event ({@code 00000000000000000001.journal}) and holds, after an 8-byte header (magic, version), one
+ * record per event:
+ *
+ * <pre>
+ *   length (int, of the next four fields) | seq (long) | time (long) | type (byte) | fields | CRC32 (int)
+ * </pre>
+ *
+ * Segments are preallocated and zero-filled, so a zero length marks the end of the log. Appending copies
+ * the record into the mapping and returns; it is then in the page cache and survives the process dying.
+ * To survive the machine dying as well, a caller waits in {@link #sync(long)} until a flusher thread has
+ * forced the mapping to disk. One force covers everything appended before it, so concurrent writers
+ * share the cost (group commit). After a crash, opening the journal keeps the longest prefix of records
+ * whose checksums match and appends after it.
+ */
+public class Journal implements Closeable {
+
+    public static final long DEFAULT_SEGMENT_BYTES = 64L << 20;
+
+    static final int MAGIC = 0x534a4e4c;  // "SJNL"
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 8;
+    // seq, time and type, counted in the length
+    static final int RECORD_HEAD = 8 + 8 + 1;
+    private static final String SUFFIX = ".journal";
+
+    private final Path dir;
+    private final long segmentBytes;
+    private final CRC32 crc = new CRC32();
+
+    // the segment being appended to; guarded by this
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private long nextSeq;
+    private boolean closed = false;
+
+    // group commit; guarded by commits
+    private final Object commits = new Object();
+    private long requested = 0;
+    private long durable;
+    private long forces = 0;
+    private IOException flushError = null;
+    private final Thread flusher;
+
+    private Journal(Path dir, long segmentBytes) throws IOException {
+        this.dir = dir;
+        this.segmentBytes = segmentBytes;
+        Files.createDirectories(dir);
+        List<Path> segments = segments(dir);
+        if (segments.isEmpty()) {
+            nextSeq = 1;
+            startSegment();
+        } else {
+            Path last = segments.get(segments.size() - 1);
+            channel = FileChannel.open(last, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(channel.size(), segmentBytes));
+            checkHeader(buffer, last);
+            nextSeq = firstSeqOf(last);
+            recover();
+        }
+        durable = nextSeq - 1;
+        flusher = new Thread(this::flushLoop, "journal-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    public static Journal open(Path dir) throws IOException {
+        return open(dir, DEFAULT_SEGMENT_BYTES);
+    }
+
+    public static Journal open(Path dir, long segmentBytes) throws IOException {
+        return new Journal(dir, segmentBytes);
+    }
+
+    public Path getDirectory() {
+        return dir;
+    }
+
+    /**
+     * Appends the event and returns its sequence number. The event is readable straight away but only
+     * guaranteed to be on disk once {@link #sync(long)} returns for it (or a later number).
+     */
+    public long append(Event event) throws IOException {
+        byte[] fields = event.encode();
+        int length = RECORD_HEAD + fields.length;
+        // the record, plus room for the zero length that ends the segment
+        if (HEADER_BYTES + 4 + length + 4 + 4 > segmentBytes) {
+            throw new IOException("A " + event.getType() + " event of " + length + " bytes does not fit a journal "
+                    + "segment");
+        }
+        synchronized (this) {
+            if (closed) {
+                throw new IOException("The journal is closed");
+            }
+            if (buffer.remaining() < 4 + length + 4 + 4) {
+                nextSegment();
+            }
+            long seq = nextSeq++;
+            int start = buffer.position();
+            buffer.putInt(length).putLong(seq).putLong(System.currentTimeMillis()).put(event.getType().code())
+                    .put(fields);
+            crc.reset();
+            crc.update(buffer.slice(start + 4, length));
+            buffer.putInt((int) crc.getValue());
+            return seq;
+        }
+    }
+
+    /**
+     * Waits until every event up to {@code seq} has been forced to disk. Many threads waiting at once are
+     * served by the same force.
+     */
+    public void sync(long seq) throws IOException {
+        synchronized (commits) {
+            while (durable < seq) {
+                if (flushError != null) {
+                    throw new IOException("Could not write the journal to disk", flushError);
+                }
+                if (seq > requested) {
+                    requested = seq;
+                    commits.notifyAll();
+                }
+                try {
+                    commits.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting for the journal");
+                }
+            }
+        }
+    }
+
+    // the sequence number the next event will get
+    public synchronized long getNextSeq() {
+        return nextSeq;
+    }
+
+    // how many times the journal was forced to disk; appended events / forces is the group commit size
+    public long getForces() {
+        synchronized (commits) {
+            return forces;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        synchronized (commits) {
+            commits.notifyAll();
+        }
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            buffer.force();
+            channel.close();
+        }
+    }
+
+    private void flushLoop() {
+        while (true) {
+            synchronized (commits) {
+                while (requested <= durable && !isClosed()) {
+                    try {
+                        commits.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (requested <= durable) {
+                    return;
+                }
+            }
+            // everything appended so far, including what arrived while the last force ran
+            MappedByteBuffer segment;
+            long upTo;
+            synchronized (this) {
+                segment = buffer;
+                upTo = nextSeq - 1;
+            }
+            // earlier segments were forced when they filled up
+            IOException error = null;
+            try {
+                segment.force();
+            } catch (RuntimeException e) {
+                error = new IOException(e);
+            }
+            synchronized (commits) {
+                if (error != null) {
+                    flushError = error;
+                } else {
+                    durable = Math.max(durable, upTo);
+                    forces++;
+                }
+                commits.notifyAll();
+                if (error != null) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private synchronized boolean isClosed() {
+        return closed;
+    }
+
+    // finds the end of the last segment: the first record that is missing or does not check out
+    private void recover() {
+        int position = HEADER_BYTES;
+        while (true) {
+            Record record = Record.at(buffer, position, crc);
+            if (record == null) {
+                break;
+            }
+            nextSeq = record.seq + 1;
+            position = record.next;
+        }
+        // a record torn by a crash would otherwise sit after the new ones
+        if (position + 4 <= buffer.limit() && buffer.getInt(position) != 0) {
+            for (int i = position; i < buffer.limit(); i++) {
+                buffer.put(i, (byte) 0);
+            }
+        }
+        buffer.position(position);
+    }
+
+    private void nextSegment() throws IOException {
+        buffer.force();
+        channel.close();
+        startSegment();
+    }
+
+    private void startSegment() throws IOException {
+        Path path = dir.resolve(String.format("%020d%s", nextSeq, SUFFIX));
+        channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+        buffer.putInt(MAGIC).putInt(VERSION);
+    }
+
+    // the journal's segment files, oldest first
+    static List<Path> segments(Path dir) throws IOException {
+        List<Path> segments = new ArrayList<>();
+        if (!Files.isDirectory(dir)) {
+            return segments;
+        }
+        try (Stream<Path> files = Files.list(dir)) {
+            files.filter(path -> path.getFileName().toString().endsWith(SUFFIX)).sorted().forEach(segments::add);
+        }
+        return segments;
+    }
+
+    static long firstSeqOf(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+    }
+
+    static void checkHeader(MappedByteBuffer buffer, Path segment) throws IOException {
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IOException(segment + " is not a version " + VERSION + " scheduler journal");
+        }
+    }
+
+    // a record's position in a segment, as found by recovery and by JournalReader
+    static final class Record {
+        final long seq;
+        final long time;
+        final byte type;
+        final int fields;
+        final int fieldsLength;
+        final int next;
+
+        private Record(long seq, long time, byte type, int fields, int fieldsLength, int next) {
+            this.seq = seq;
+            this.time = time;
+            this.type = type;
+            this.fields = fields;
+            this.fieldsLength = fieldsLength;
+            this.next = next;
+        }
+
+        // the record at the position, or null at the end of the log
+        static Record at(MappedByteBuffer buffer, int position, CRC32 crc) {
+            if (position + 4 > buffer.limit()) {
+                return null;
+            }
+            int length = buffer.getInt(position);
+            if (length < RECORD_HEAD || position + 4 + length + 4 > buffer.limit()) {
+                return null;
+            }
+            crc.reset();
+            crc.update(buffer.slice(position + 4, length));
+            if ((int) crc.getValue() != buffer.getInt(position + 4 + length)) {
+                return null;
+            }
+            return new Record(buffer.getLong(position + 4), buffer.getLong(position + 12), buffer.get(position + 20),
+                    position + 4 + RECORD_HEAD, length - RECORD_HEAD, position + 4 + length + 4);
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package scheduler.journal;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Reads a journal's events back in sequence order, mapping one segment at a time read-only. Safe to use
+ * while a {@link Journal} is appending to the same directory; it sees the events appended up to the
+ * moment it reaches the end of the last segment.
+ */
+public class JournalReader {
+
+    public interface Handler {
+        void accept(Event event) throws IOException;
+    }
+
+    private final Path dir;
+
+    public JournalReader(Path dir) {
+        this.dir = dir;
+    }
+
+    /**
+     * Passes every event with a sequence number of at least {@code fromSeq} to the handler, in order.
+     * Returns the sequence number of the last event read, or {@code fromSeq - 1} if there was none.
+     */
+    public long replay(long fromSeq, Handler handler) throws IOException {
+        List<Path> segments = Journal.segments(dir);
+        CRC32 crc = new CRC32();
+        long last = fromSeq - 1;
+        for (int i = 0; i < segments.size(); i++) {
+            // skip segments that end before fromSeq
+            if (i + 1 < segments.size() && Journal.firstSeqOf(segments.get(i + 1)) <= fromSeq) {
+                continue;
+            }
+            Path segment = segments.get(i);
+            try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                Journal.checkHeader(buffer, segment);
+                int position = Journal.HEADER_BYTES;
+                Journal.Record record;
+                while ((record = Journal.Record.at(buffer, position, crc)) != null) {
+                    position = record.next;
+                    if (record.seq < fromSeq) {
+                        continue;
+                    }
+                    if (record.seq != last + 1 && last >= fromSeq) {
+                        throw new IOException("Journal " + dir + " skips from event " + last + " to " + record.seq);
+                    }
+                    byte[] fields = new byte[record.fieldsLength];
+                    buffer.get(record.fields, fields);
+                    handler.accept(Event.decode(record.seq, record.time, record.type, fields));
+                    last = record.seq;
+                }
+            }
+        }
+        return last;
+    }
+}
@@ -0,0 +1,126 @@
+package scheduler.journal;
+
+import scheduler.model.Appointment;
+import scheduler.model.Availability;
+import scheduler.service.AssignmentPolicy;
+import scheduler.service.AvailabilityIndex;
+
+import java.sql.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * The scheduler's data rebuilt from journal events alone, as the store holds it after the same changes:
+ * the accounts, each vaccine's doses, every caregiver day with its bookings, and the appointments.
+ * Feed it events with {@link JournalReader#replay}, then build the in-memory indexes from it.
+ */
+public class JournalReplay implements JournalReader.Handler {
+
+    private final Set<String> patients = new HashSet<>();
+    private final Set<String> caregivers = new HashSet<>();
+    private final Map<String, Integer> doses = new TreeMap<>();
+    // date -> caregiver -> the day with its booked counts
+    private final NavigableMap<Date, Map<String, Availability>> availabilities = new TreeMap<>();
+    private final Map<Integer, Appointment> appointments = new HashMap<>();
+    private final Map<Event.Type, Integer> counts = new TreeMap<>();
+    private long lastSeq = 0;
+
+    @Override
+    public void accept(Event event) {
+        lastSeq = event.getSeq();
+        counts.merge(event.getType(), 1, Integer::sum);
+        switch (event.getType()) {
+            case PATIENT_ADDED:
+                patients.add(event.getName());
+                break;
+            case CAREGIVER_ADDED:
+                caregivers.add(event.getName());
+                break;
+            case VACCINE_ADDED:
+                doses.putIfAbsent(event.getName(), event.getNumber());
+                break;
+            case DOSES_ADDED:
+                doses.merge(event.getName(), event.getNumber(), Integer::sum);
+                break;
+            case AVAILABILITY_ADDED: {
+                Availability day = event.getAvailability();
+                availabilities.computeIfAbsent(day.getDate(), d -> new HashMap<>()).putIfAbsent(day.getCaregiver(), day);
+                break;
+            }
+            case RESERVED: {
+                // the store takes the dose in the same transaction as the place
+                Appointment appointment = event.getAppointment();
+                appointments.put(appointment.getId(), appointment);
+                doses.computeIfPresent(appointment.getVaccine(), (name, count) -> count - 1);
+                Map<String, Availability> days = availabilities.get(appointment.getDate());
+                Availability day = days == null ? null : days.get(appointment.getCaregiver());
+                if (day != null) {
+                    days.put(day.getCaregiver(), day.withBooking(event.getSlot()));
+                }
+                break;
+            }
+            case CANCELLED: {
+                // the store gives the place back to the caregiver's day and the dose back to the vaccine
+                Appointment appointment = appointments.remove(event.getNumber());
+                if (appointment == null) {
+                    break;
+                }
+                doses.computeIfPresent(appointment.getVaccine(), (name, count) -> count + 1);
+                Map<String, Availability> days = availabilities.get(appointment.getDate());
+                Availability day = days == null ? null : days.get(appointment.getCaregiver());
+                int slot = day == null || appointment.getTime() == null ? -1 : day.slotAt(appointment.getTime());
+                if (slot >= 0) {
+                    days.put(day.getCaregiver(), day.withoutBooking(slot));
+                }
+                break;
+            }
+            default:
+                break;
+        }
+    }
+
+    public long getLastSeq() {
+        return lastSeq;
+    }
+
+    // how many events of each type were replayed
+    public Map<Event.Type, Integer> getCounts() {
+        return counts;
+    }
+
+    public Set<String> getPatients() {
+        return patients;
+    }
+
+    public Set<String> getCaregivers() {
+        return caregivers;
+    }
+
+    // vaccine name -> available doses, ordered by name
+    public Map<String, Integer> getDoses() {
+        return doses;
+    }
+
+    public NavigableMap<Date, Map<String, Availability>> getAvailabilities() {
+        return availabilities;
+    }
+
+    public Map<Integer, Appointment> getAppointments() {
+        return appointments;
+    }
+
+    // the availability index reserve would load from the store after the same changes
+    public AvailabilityIndex buildIndex(AssignmentPolicy policy) {
+        AvailabilityIndex index = new AvailabilityIndex(policy);
+        for (Map<String, Availability> days : availabilities.values()) {
+            for (Availability day : days.values()) {
+                index.add(day);
+            }
+        }
+        return index;
+    }
+}
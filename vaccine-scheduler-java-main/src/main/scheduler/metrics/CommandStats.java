@@ -0,0 +1,91 @@
+package scheduler.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+// running totals for one command name
+public class CommandStats implements CommandStatsMBean {
+
+    private final String name;
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder queries = new LongAdder();
+    private final LongAdder rows = new LongAdder();
+    private final LongAdder acquireNanos = new LongAdder();
+
+    CommandStats(String name) {
+        this.name = name;
+    }
+
+    void record(long nanos, boolean failed, int queries, long rows, long acquireNanos) {
+        latency.recordNanos(nanos);
+        if (failed) {
+            errors.increment();
+        }
+        this.queries.add(queries);
+        this.rows.add(rows);
+        this.acquireNanos.add(acquireNanos);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    @Override
+    public long getCount() {
+        return latency.getCount();
+    }
+
+    @Override
+    public long getErrors() {
+        return errors.sum();
+    }
+
+    @Override
+    public double getMeanMicros() {
+        return latency.getMean();
+    }
+
+    @Override
+    public long getP50Micros() {
+        return latency.getPercentile(50);
+    }
+
+    @Override
+    public long getP99Micros() {
+        return latency.getPercentile(99);
+    }
+
+    @Override
+    public long getP999Micros() {
+        return latency.getPercentile(99.9);
+    }
+
+    @Override
+    public long getMaxMicros() {
+        return latency.getMax();
+    }
+
+    @Override
+    public double getQueriesPerCommand() {
+        return perCommand(queries.sum());
+    }
+
+    @Override
+    public double getRowsPerCommand() {
+        return perCommand(rows.sum());
+    }
+
+    @Override
+    public double getConnectionAcquireMicrosPerCommand() {
+        return perCommand(acquireNanos.sum()) / 1_000.0;
+    }
+
+    private double perCommand(long total) {
+        long count = getCount();
+        return count == 0 ? 0 : (double) total / count;
+    }
+}
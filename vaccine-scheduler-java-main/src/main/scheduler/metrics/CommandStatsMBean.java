@@ -0,0 +1,25 @@
+package scheduler.metrics;
+
+// what JMX shows for one command, under scheduler:type=Command,name=<command>
+public interface CommandStatsMBean {
+
+    long getCount();
+
+    long getErrors();
+
+    double getMeanMicros();
+
+    long getP50Micros();
+
+    long getP99Micros();
+
+    long getP999Micros();
+
+    long getMaxMicros();
+
+    double getQueriesPerCommand();
+
+    double getRowsPerCommand();
+
+    double getConnectionAcquireMicrosPerCommand();
+}
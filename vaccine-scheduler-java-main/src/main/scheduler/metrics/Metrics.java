@@ -0,0 +1,118 @@
+package scheduler.metrics;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Process-wide counters: latency per command, and the database work (store calls, rows, time spent
+ * waiting for a pooled connection) done on behalf of each command.
+ *
+ * Scheduler.execute brackets every command with {@link #begin} and {@link #end}; the store and the
+ * connection pool report into whatever command is running on the current thread. Work done outside a
+ * command (startup, the background dose flush) only counts toward the process-wide totals. Recording
+ * is a handful of non-blocking increments. Command names come from a fixed set (see Scheduler), and each
+ * command's stats are also registered with JMX.
+ */
+public class Metrics {
+
+    private static final Map<String, CommandStats> commands = new ConcurrentHashMap<>();
+    private static final LatencyHistogram connectionAcquire = new LatencyHistogram();
+    private static final LongAdder queries = new LongAdder();
+    private static final LongAdder rows = new LongAdder();
+    private static final ThreadLocal<Current> current = ThreadLocal.withInitial(Current::new);
+
+    // the command running on a thread; reused from one command to the next
+    private static class Current {
+        private String command = null;
+        private long startNanos;
+        private int queries;
+        private long rows;
+        private long acquireNanos;
+    }
+
+    private Metrics() {
+    }
+
+    public static void begin(String command) {
+        Current c = current.get();
+        c.command = command;
+        c.queries = 0;
+        c.rows = 0;
+        c.acquireNanos = 0;
+        c.startNanos = System.nanoTime();
+    }
+
+    public static void end(boolean failed) {
+        Current c = current.get();
+        if (c.command == null) {
+            return;
+        }
+        long elapsed = System.nanoTime() - c.startNanos;
+        statsFor(c.command).record(elapsed, failed, c.queries, c.rows, c.acquireNanos);
+        c.command = null;
+    }
+
+    // one call into the store that returned this many rows
+    public static void recordQuery(long rowCount) {
+        queries.increment();
+        rows.add(rowCount);
+        Current c = current.get();
+        if (c.command != null) {
+            c.queries++;
+            c.rows += rowCount;
+        }
+    }
+
+    public static void recordConnectionAcquire(long nanos) {
+        connectionAcquire.recordNanos(nanos);
+        Current c = current.get();
+        if (c.command != null) {
+            c.acquireNanos += nanos;
+        }
+    }
+
+    // ordered by name
+    public static List<CommandStats> getCommands() {
+        List<CommandStats> all = new ArrayList<>(commands.values());
+        all.sort(Comparator.comparing(CommandStats::getName));
+        return all;
+    }
+
+    public static LatencyHistogram getConnectionAcquire() {
+        return connectionAcquire;
+    }
+
+    public static long getQueries() {
+        return queries.sum();
+    }
+
+    public static long getRows() {
+        return rows.sum();
+    }
+
+    private static CommandStats statsFor(String command) {
+        CommandStats stats = commands.get(command);
+        if (stats == null) {
+            stats = commands.computeIfAbsent(command, Metrics::register);
+        }
+        return stats;
+    }
+
+    private static CommandStats register(String command) {
+        CommandStats stats = new CommandStats(command);
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(stats,
+                    new ObjectName("scheduler:type=Command,name=" + command));
+        } catch (JMException e) {
+            // still counted, just not visible over JMX
+        }
+        return stats;
+    }
+}
@@ -0,0 +1,56 @@
+package scheduler.model;
+
+import java.sql.Date;
+import java.time.LocalTime;
+
+// one row of the Schedule table
+public class Appointment {
+    private final int id;
+    private final String patient;
+    private final String caregiver;
+    private final String vaccine;
+    private final Date date;
+    // start of the booked time slot
+    private final LocalTime time;
+    private final String location;
+
+    public Appointment(int id, String patient, String caregiver, String vaccine, Date date, LocalTime time,
+                       String location) {
+        this.id = id;
+        this.patient = patient;
+        this.caregiver = caregiver;
+        this.vaccine = vaccine;
+        this.date = date;
+        this.time = time;
+        this.location = location;
+    }
+
+    // Getters
+    public int getId() {
+        return id;
+    }
+
+    public String getPatient() {
+        return patient;
+    }
+
+    public String getCaregiver() {
+        return caregiver;
+    }
+
+    public String getVaccine() {
+        return vaccine;
+    }
+
+    public Date getDate() {
+        return date;
+    }
+
+    public LocalTime getTime() {
+        return time;
+    }
+
+    public String getLocation() {
+        return location;
+    }
+}
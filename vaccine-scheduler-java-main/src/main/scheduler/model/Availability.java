@@ -0,0 +1,137 @@
+package scheduler.model;
+
+import java.sql.Date;
+import java.time.Duration;
+import java.time.LocalTime;
+
+/**
+ * One row of the Availabilities table: a caregiver's working day at a location, split into equal time
+ * slots that each take up to slotCapacity appointments. The per-slot counts are what the scheduler has
+ * booked so far; the row itself is immutable, bookings make a new one.
+ */
+public class Availability {
+    // slots are bits of a long, and the sign bit is left alone
+    public static final int MAX_SLOTS = 63;
+
+    private final Date date;
+    private final String caregiver;
+    private final String location;
+    private final LocalTime start;
+    private final int slotMinutes;
+    private final int slotCapacity;
+    // appointments booked in each slot
+    private final int[] booked;
+
+    // a day with nothing booked yet
+    public Availability(Date date, String caregiver, String location, LocalTime start, int slotMinutes,
+                        int slots, int slotCapacity) {
+        this(date, caregiver, location, start, slotMinutes, slotCapacity, new int[slots]);
+    }
+
+    // takes ownership of booked, which has one count per slot
+    public Availability(Date date, String caregiver, String location, LocalTime start, int slotMinutes,
+                        int slotCapacity, int[] booked) {
+        if (booked.length < 1 || booked.length > MAX_SLOTS) {
+            throw new IllegalArgumentException("A day has between 1 and " + MAX_SLOTS + " slots");
+        }
+        this.date = date;
+        this.caregiver = caregiver;
+        this.location = location;
+        this.start = start;
+        this.slotMinutes = slotMinutes;
+        this.slotCapacity = slotCapacity;
+        this.booked = booked;
+    }
+
+    // Getters
+    public Date getDate() {
+        return date;
+    }
+
+    public String getCaregiver() {
+        return caregiver;
+    }
+
+    public String getLocation() {
+        return location;
+    }
+
+    public LocalTime getStart() {
+        return start;
+    }
+
+    public int getSlotMinutes() {
+        return slotMinutes;
+    }
+
+    public int getSlots() {
+        return booked.length;
+    }
+
+    public int getSlotCapacity() {
+        return slotCapacity;
+    }
+
+    public int getBooked(int slot) {
+        return booked[slot];
+    }
+
+    public int getCapacity() {
+        return booked.length * slotCapacity;
+    }
+
+    public int getBooked() {
+        int total = 0;
+        for (int count : booked) {
+            total += count;
+        }
+        return total;
+    }
+
+    public int getRemaining() {
+        return getCapacity() - getBooked();
+    }
+
+    public LocalTime getSlotTime(int slot) {
+        return start.plusMinutes((long) slot * slotMinutes);
+    }
+
+    // the slot starting at the time, or -1 if no slot does
+    public int slotAt(LocalTime time) {
+        long minutes = Duration.between(start, time).toMinutes();
+        if (minutes < 0 || minutes % slotMinutes != 0 || minutes / slotMinutes >= booked.length) {
+            return -1;
+        }
+        return (int) (minutes / slotMinutes);
+    }
+
+    // bit i is set if slot i still has room
+    public long getFreeSlots() {
+        long free = 0;
+        for (int slot = 0; slot < booked.length; slot++) {
+            if (booked[slot] < slotCapacity) {
+                free |= 1L << slot;
+            }
+        }
+        return free;
+    }
+
+    // the same day shape for another date, with nothing booked
+    public Availability on(Date date) {
+        return new Availability(date, caregiver, location, start, slotMinutes, booked.length, slotCapacity);
+    }
+
+    // a copy with one more appointment in the slot
+    public Availability withBooking(int slot) {
+        int[] counts = booked.clone();
+        counts[slot]++;
+        return new Availability(date, caregiver, location, start, slotMinutes, slotCapacity, counts);
+    }
+
+    // a copy with one appointment fewer in the slot (if it has any)
+    public Availability withoutBooking(int slot) {
+        int[] counts = booked.clone();
+        counts[slot] = Math.max(0, counts[slot] - 1);
+        return new Availability(date, caregiver, location, start, slotMinutes, slotCapacity, counts);
+    }
+}
@@ -0,0 +1,41 @@
+package scheduler.model;
+
+import java.sql.Date;
+
+// an appointment to be booked: a patient in a caregiver's time slot on a date
+public class Booking {
+    private final String patient;
+    private final String caregiver;
+    private final Date date;
+    private final int slot;
+    private final String vaccine;
+
+    public Booking(String patient, String caregiver, Date date, int slot, String vaccine) {
+        this.patient = patient;
+        this.caregiver = caregiver;
+        this.date = date;
+        this.slot = slot;
+        this.vaccine = vaccine;
+    }
+
+    // Getters
+    public String getPatient() {
+        return patient;
+    }
+
+    public String getCaregiver() {
+        return caregiver;
+    }
+
+    public Date getDate() {
+        return date;
+    }
+
+    public int getSlot() {
+        return slot;
+    }
+
+    public String getVaccine() {
+        return vaccine;
+    }
+}
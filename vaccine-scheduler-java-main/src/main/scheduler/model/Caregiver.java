@@ -1,10 +1,17 @@
 package scheduler.model;
 
-import scheduler.db.ConnectionManager;
+import scheduler.db.Credentials;
+import scheduler.db.Stores;
+import scheduler.service.AvailabilityIndex;
+import scheduler.service.UsernameFilter;
+import scheduler.util.PasswordHasher;
 import scheduler.util.Util;
 
-import java.sql.*;
-import java.util.Arrays;
+import java.sql.Date;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
 
 public class Caregiver {
     private final String username;
@@ -37,38 +44,48 @@ public class Caregiver {
     }
 
     public void saveToDB() throws SQLException {
-        ConnectionManager cm = new ConnectionManager();
-        Connection con = cm.createConnection();
-
-        String addCaregiver = "INSERT INTO Caregivers VALUES (? , ?, ?)";
-        try {
-            PreparedStatement statement = con.prepareStatement(addCaregiver);
-            statement.setString(1, this.username);
-            statement.setBytes(2, this.salt);
-            statement.setBytes(3, this.hash);
-            statement.executeUpdate();
-        } catch (SQLException e) {
-            throw new SQLException();
-        } finally {
-            cm.closeConnection();
-        }
+        Stores.get().insertCaregiver(this.username, this.salt, this.hash);
+        UsernameFilter.caregivers().add(this.username);
+    }
+
+    // day gives the date and its time slots; its caregiver is this one
+    public void uploadAvailability(Availability day) throws SQLException {
+        Stores.get().insertAvailability(day);
+        // keep the in-memory copy in step with the table
+        AvailabilityIndex.get().add(day);
     }
 
-    public void uploadAvailability(Date d) throws SQLException {
-        ConnectionManager cm = new ConnectionManager();
-        Connection con = cm.createConnection();
-
-        String addAvailability = "INSERT INTO Availabilities VALUES (? , ?)";
-        try {
-            PreparedStatement statement = con.prepareStatement(addAvailability);
-            statement.setDate(1, d);
-            statement.setString(2, this.username);
-            statement.executeUpdate();
-        } catch (SQLException e) {
-            throw new SQLException();
-        } finally {
-            cm.closeConnection();
+    /**
+     * Uploads availability for every day from first's date to end (inclusive) in one batch, each with
+     * first's time slots.
+     * weekdayMask has 7 characters for Monday..Sunday, '1' meaning available that weekday
+     * (e.g. "1111100" for weekdays only); null means every day.
+     * Days that were already uploaded are skipped. Returns the number of days added.
+     */
+    public int uploadAvailability(Availability first, Date end, String weekdayMask) throws SQLException {
+        if (weekdayMask != null && !weekdayMask.matches("[01]{7}")) {
+            throw new IllegalArgumentException("Weekday mask must be 7 characters of 0/1, Monday first");
+        }
+        LocalDate last = end.toLocalDate();
+        Date start = first.getDate();
+        if (last.isBefore(start.toLocalDate())) {
+            throw new IllegalArgumentException("End date is before start date");
+        }
+        List<Availability> days = new ArrayList<>();
+        for (LocalDate day = start.toLocalDate(); !day.isAfter(last); day = day.plusDays(1)) {
+            if (weekdayMask == null || weekdayMask.charAt(day.getDayOfWeek().getValue() - 1) == '1') {
+                days.add(first.on(Date.valueOf(day)));
+            }
         }
+        if (days.isEmpty()) {
+            return 0;
+        }
+        List<Date> added = Stores.get().insertAvailabilities(days);
+        AvailabilityIndex index = AvailabilityIndex.get();
+        for (Date d : added) {
+            index.add(first.on(d));
+        }
+        return added.size();
     }
 
     public static class CaregiverBuilder {
@@ -99,35 +116,27 @@ public class Caregiver {
         }
 
         public Caregiver get() throws SQLException {
-            ConnectionManager cm = new ConnectionManager();
-            Connection con = cm.createConnection();
-
-            String getCaregiver = "SELECT Salt, Hash FROM Caregivers WHERE Username = ?";
-            try {
-                PreparedStatement statement = con.prepareStatement(getCaregiver);
-                statement.setString(1, this.username);
-                ResultSet resultSet = statement.executeQuery();
-                while (resultSet.next()) {
-                    byte[] salt = resultSet.getBytes("Salt");
-                    // we need to call Util.trim() to get rid of the paddings,
-                    // try to remove the use of Util.trim() and you'll see :)
-                    byte[] hash = Util.trim(resultSet.getBytes("Hash"));
-                    // check if the password matches
-                    byte[] calculatedHash = Util.generateHash(password, salt);
-                    if (!Arrays.equals(hash, calculatedHash)) {
-                        return null;
-                    } else {
-                        this.salt = salt;
-                        this.hash = hash;
-                        return new Caregiver(this);
-                    }
-                }
+            Credentials credentials = Stores.get().getCaregiverCredentials(this.username);
+            if (credentials == null) {
+                return null;
+            }
+            // check if the password matches (the hasher ignores the BINARY column's zero padding)
+            PasswordHasher hasher = PasswordHasher.get();
+            PasswordHasher.Verification verification =
+                    hasher.verify(password, credentials.getSalt(), credentials.getHash());
+            if (verification == PasswordHasher.Verification.NO_MATCH) {
                 return null;
-            } catch (SQLException e) {
-                throw new SQLException();
-            } finally {
-                cm.closeConnection();
             }
+            if (verification == PasswordHasher.Verification.MATCH_NEEDS_REHASH) {
+                // stored with older hash settings; upgrade it now that we know the password
+                this.salt = Util.generateSalt();
+                this.hash = hasher.hash(password, this.salt);
+                Stores.get().updateCaregiverCredentials(this.username, this.salt, this.hash);
+            } else {
+                this.salt = credentials.getSalt();
+                this.hash = credentials.getHash();
+            }
+            return new Caregiver(this);
         }
     }
 }
@@ -1,13 +1,12 @@
 package scheduler.model;
 
-import scheduler.db.ConnectionManager;
+import scheduler.db.Credentials;
+import scheduler.db.Stores;
+import scheduler.service.UsernameFilter;
+import scheduler.util.PasswordHasher;
 import scheduler.util.Util;
 
-import java.sql.Connection;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.Arrays;
 
 public class Patient {
     private final String username;
@@ -39,25 +38,8 @@ public class Patient {
     }
 
     public void saveToDB() throws SQLException {
-        ConnectionManager cm = new ConnectionManager();
-        Connection con = cm.createConnection();
-
-        String addPatient = "INSERT INTO Patients VALUES (?, ?, ?, ?, ?, ?)";
-
-        try {
-            PreparedStatement statement = con.prepareStatement(addPatient);
-            statement.setString(1, this.username);
-            statement.setBytes(2, this.salt);
-            statement.setBytes(3, this.hash);
-            statement.setString(4, null);
-            statement.setDate(5, null);
-            statement.setInt(6, 0);
-            statement.executeUpdate();
-        } catch (SQLException e) {
-            throw new SQLException();
-        } finally {
-            cm.closeConnection();
-        }
+        Stores.get().insertPatient(this.username, this.salt, this.hash);
+        UsernameFilter.patients().add(this.username);
     }
 
 //    Not sure if adding the patient should change the availability. Here, not change.
@@ -90,35 +72,27 @@ public class Patient {
         }
 
         public Patient get() throws SQLException {
-            ConnectionManager cm = new ConnectionManager();
-            Connection con = cm.createConnection();
-
-            String getPatient = "SELECT Salt, Hash FROM Patients WHERE Username = ?";
-
-            try {
-                PreparedStatement statement = con.prepareStatement(getPatient);
-                statement.setString(1, this.username);
-                ResultSet resultSet = statement.executeQuery();
-
-                while (resultSet.next()) {
-                    byte[] salt = resultSet.getBytes("salt");
-                    byte[] hash = Util.trim(resultSet.getBytes("Hash"));
-                    byte[] calculatedHash = Util.generateHash(password, salt);
-
-                    if (!Arrays.equals(hash, calculatedHash)) {
-                        return null;
-                    } else {
-                        this.salt = salt;
-                        this.hash = hash;
-                        return new Patient(this);
-                    }
-                }
+            Credentials credentials = Stores.get().getPatientCredentials(this.username);
+            if (credentials == null) {
+                return null;
+            }
+            // check if the password matches (the hasher ignores the BINARY column's zero padding)
+            PasswordHasher hasher = PasswordHasher.get();
+            PasswordHasher.Verification verification =
+                    hasher.verify(password, credentials.getSalt(), credentials.getHash());
+            if (verification == PasswordHasher.Verification.NO_MATCH) {
                 return null;
-            } catch (SQLException e) {
-                throw new SQLException();
-            } finally {
-                cm.closeConnection();
             }
+            if (verification == PasswordHasher.Verification.MATCH_NEEDS_REHASH) {
+                // stored with older hash settings; upgrade it now that we know the password
+                this.salt = Util.generateSalt();
+                this.hash = hasher.hash(password, this.salt);
+                Stores.get().updatePatientCredentials(this.username, this.salt, this.hash);
+            } else {
+                this.salt = credentials.getSalt();
+                this.hash = credentials.getHash();
+            }
+            return new Patient(this);
         }
     }
 }
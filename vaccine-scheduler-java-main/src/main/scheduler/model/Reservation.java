@@ -0,0 +1,42 @@
+package scheduler.model;
+
+// the outcome of trying to reserve an appointment
+public class Reservation {
+
+    public enum Status {
+        RESERVED,
+        NO_CAREGIVER,
+        NO_DOSES,
+        UNKNOWN_VACCINE
+    }
+
+    private final Status status;
+    private final Appointment appointment;
+
+    private Reservation(Status status, Appointment appointment) {
+        this.status = status;
+        this.appointment = appointment;
+    }
+
+    public static Reservation reserved(Appointment appointment) {
+        return new Reservation(Status.RESERVED, appointment);
+    }
+
+    public static Reservation failed(Status status) {
+        return new Reservation(status, null);
+    }
+
+    // Getters
+    public Status getStatus() {
+        return status;
+    }
+
+    // null unless the status is RESERVED
+    public Appointment getAppointment() {
+        return appointment;
+    }
+
+    public boolean isReserved() {
+        return status == Status.RESERVED;
+    }
+}
@@ -0,0 +1,187 @@
+package scheduler.server;
+
+import scheduler.Scheduler;
+import scheduler.Session;
+import scheduler.util.Util;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Serves the scheduler's commands to many users at once over a plain TCP line protocol.
+ *
+ * Every connection is its own {@link Session} (its own login), handled on its own thread: a virtual
+ * thread when the JVM has them (Java 21+), otherwise a thread from a pool of SchedulerMaxSessions threads.
+ * At most SchedulerMaxSessions (default 256) connections are served at once; more are told so and closed.
+ * The client sends one command per line, exactly as typed at the console, of at most MAX_LINE characters;
+ * the server answers with the command's output followed by a line holding a single "." so clients know
+ * where each response ends. The greeting sent on connect is terminated the same way. import_users, which
+ * reads a file on the server's disk, is only available at the console.
+ *
+ * The protocol has no authentication of its own beyond the scheduler's logins and no TLS, so passwords
+ * cross the network in the clear. The server therefore listens on the loopback interface unless
+ * SchedulerServerBind names another address; expose it only behind a TLS-terminating proxy or on a
+ * trusted network.
+ */
+public class SchedulerServer {
+
+    public static final int DEFAULT_PORT = 5433;
+    public static final String END_OF_RESPONSE = ".";
+    // the longest command line accepted, in characters
+    public static final int MAX_LINE = 4096;
+
+    private final int port;
+    private final String bindAddress = Util.envString("SchedulerServerBind", "127.0.0.1");
+    private final int maxSessions = Util.envInt("SchedulerMaxSessions", 256, 1);
+    private final Semaphore sessions = new Semaphore(maxSessions);
+    private final ExecutorService executor = newSessionExecutor(maxSessions);
+    private final AtomicInteger openSessions = new AtomicInteger();
+
+    public SchedulerServer(int port) {
+        this.port = port;
+    }
+
+    private static ExecutorService newSessionExecutor(int maxSessions) {
+        try {
+            // looked up reflectively so the code still builds and runs on Java 11/17
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(maxSessions, maxSessions, 60, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(), r -> {
+                        Thread t = new Thread(r, "scheduler-session");
+                        t.setDaemon(true);
+                        return t;
+                    });
+            pool.allowCoreThreadTimeOut(true);
+            return pool;
+        }
+    }
+
+    public void run() throws IOException {
+        try (ServerSocket serverSocket = new ServerSocket(port, 1024, InetAddress.getByName(bindAddress))) {
+            System.out.println("Scheduler server listening on " + serverSocket.getInetAddress().getHostAddress()
+                    + " port " + serverSocket.getLocalPort() + " (no TLS; see SchedulerServerBind)");
+            while (true) {
+                Socket socket = serverSocket.accept();
+                if (!sessions.tryAcquire()) {
+                    reject(socket);
+                    continue;
+                }
+                try {
+                    executor.execute(() -> {
+                        try {
+                            serve(socket);
+                        } finally {
+                            sessions.release();
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    sessions.release();
+                    reject(socket);
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    // tells a connection over the limit to come back later; on the accepting thread, so it must not block
+    private static void reject(Socket socket) {
+        try (Socket s = socket) {
+            s.setSoTimeout(1_000);
+            OutputStream out = s.getOutputStream();
+            out.write(("Too many connections, please try again later." + System.lineSeparator() + END_OF_RESPONSE
+                    + System.lineSeparator()).getBytes(StandardCharsets.UTF_8));
+            out.flush();
+        } catch (IOException e) {
+            // the client is gone anyway
+        }
+    }
+
+    public int getOpenSessions() {
+        return openSessions.get();
+    }
+
+    private void serve(Socket socket) {
+        openSessions.incrementAndGet();
+        try (Socket s = socket;
+             BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8));
+             PrintStream out = new PrintStream(new BufferedOutputStream(s.getOutputStream()), false, "UTF-8")) {
+            s.setTcpNoDelay(true);
+            Session session = new Session(out, StandardCharsets.UTF_8, true);
+            Scheduler.printGreeting(out);
+            endResponse(out);
+
+            String line;
+            while ((line = readLine(in)) != null) {
+                if (line.length() > MAX_LINE) {
+                    out.println("Command too long (at most " + MAX_LINE + " characters); closing the connection.");
+                    endResponse(out);
+                    break;
+                }
+                boolean keepGoing;
+                try {
+                    keepGoing = Scheduler.execute(session, line);
+                } catch (SQLException | RuntimeException e) {
+                    out.println("Error occurred when running the command.");
+                    e.printStackTrace();
+                    keepGoing = true;
+                }
+                endResponse(out);
+                if (!keepGoing) {
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            // the client went away; nothing to clean up beyond the socket
+        } finally {
+            openSessions.decrementAndGet();
+        }
+    }
+
+    // a line without its terminator, or null at the end of the stream; reading stops one character past
+    // MAX_LINE, so a client cannot make the server buffer an endless line
+    private static String readLine(BufferedReader in) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int c;
+        while ((c = in.read()) != -1) {
+            if (c == '\n') {
+                break;
+            }
+            line.append((char) c);
+            if (line.length() > MAX_LINE) {
+                return line.toString();
+            }
+        }
+        if (c == -1 && line.length() == 0) {
+            return null;
+        }
+        int end = line.length();
+        if (end > 0 && line.charAt(end - 1) == '\r') {
+            line.setLength(end - 1);
+        }
+        return line.toString();
+    }
+
+    private static void endResponse(PrintStream out) {
+        out.println(END_OF_RESPONSE);
+        out.flush();
+    }
+}
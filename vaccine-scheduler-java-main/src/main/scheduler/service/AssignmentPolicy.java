@@ -0,0 +1,54 @@
+package scheduler.service;
+
+import java.util.Locale;
+
+/**
+ * Decides which of the caregivers available on a day gets the next appointment that day.
+ *
+ * A policy only orders two caregivers by their load; caregivers it considers equal are taken in an order
+ * the {@link AvailabilityIndex} shuffles once per day, so equal work is still spread across everyone.
+ * The default is read from the SchedulerAssignment environment variable.
+ */
+public interface AssignmentPolicy {
+
+    // fewest appointments that day first, so everyone's day fills up evenly
+    AssignmentPolicy LEAST_LOADED = (a, b) -> Integer.compare(a.getBooked(), b.getBooked());
+    // most free places first; the same as LEAST_LOADED when everyone has the same capacity
+    AssignmentPolicy MOST_REMAINING = (a, b) -> Integer.compare(b.getRemaining(), a.getRemaining());
+    // most appointments first, so as few caregivers as possible are needed that day
+    AssignmentPolicy FILL_FIRST = (a, b) -> Integer.compare(b.getBooked(), a.getBooked());
+    // ignores the load: the index picks any caregiver with room, uniformly at random, for every appointment
+    AssignmentPolicy RANDOM = (a, b) -> 0;
+
+    // negative if a should be assigned before b, 0 if the policy does not mind
+    int compare(CaregiverDay a, CaregiverDay b);
+
+    // accepts the names above case-insensitively; returns null for anything else
+    static AssignmentPolicy parse(String name) {
+        switch (name.toLowerCase(Locale.ROOT)) {
+            case "least_loaded":
+                return LEAST_LOADED;
+            case "most_remaining":
+                return MOST_REMAINING;
+            case "fill_first":
+                return FILL_FIRST;
+            case "random":
+                return RANDOM;
+            default:
+                return null;
+        }
+    }
+
+    static AssignmentPolicy fromEnvironment() {
+        String name = System.getenv("SchedulerAssignment");
+        if (name == null || name.isEmpty()) {
+            return LEAST_LOADED;
+        }
+        AssignmentPolicy policy = parse(name.trim());
+        if (policy == null) {
+            System.out.println("Ignoring unknown assignment policy " + name + ", using least_loaded");
+            return LEAST_LOADED;
+        }
+        return policy;
+    }
+}
@@ -0,0 +1,313 @@
+package scheduler.service;
+
+import scheduler.db.Store;
+import scheduler.db.Stores;
+import scheduler.model.Availability;
+import scheduler.snapshot.WarmStart;
+
+import java.sql.Date;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * In-memory copy of the Availabilities table: date -> the caregivers available that day, with the time
+ * slots of each and how many appointments each slot has taken.
+ *
+ * It is loaded once from the store and then kept in sync by whoever writes the table (uploading
+ * availability adds to it, reserving books a place), so looking up or assigning a caregiver for a date
+ * does not need a database round trip. The caregivers of a day who still have room are kept in a sorted
+ * set in the order the {@link AssignmentPolicy} wants them assigned, so assigning one and putting them
+ * back with their new load takes O(log n); the random policy instead picks uniformly among them, in O(n),
+ * so each appointment goes to a fresh random choice rather than filling caregivers in a fixed order.
+ * Within the caregiver's day the earliest slot with room is taken, in constant time (see
+ * {@link CaregiverDay}).
+ *
+ * The dates on which anybody still has room are also kept in order, so the earliest one in a range is a
+ * single O(log n) lookup instead of a search day by day.
+ */
+public class AvailabilityIndex {
+
+    private static AvailabilityIndex instance = null;
+
+    private final AssignmentPolicy policy;
+    private final Comparator<CaregiverDay> order;
+    private final boolean pickRandomly;
+    private final Map<LocalDate, Day> byDate = new ConcurrentHashMap<>();
+    // dates with at least one caregiver who has room; changed under the day's lock
+    private final NavigableSet<LocalDate> openDates = new ConcurrentSkipListSet<>();
+    private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+    private final AtomicInteger nextId = new AtomicInteger();
+
+    public static synchronized AvailabilityIndex get() throws SQLException {
+        if (instance == null) {
+            AvailabilityIndex index = new AvailabilityIndex();
+            WarmStart warmStart = WarmStart.get();
+            index.load(warmStart != null ? warmStart.getSnapshot().getAvailabilities()
+                    : Stores.get().getAvailabilities());
+            instance = index;
+        }
+        return instance;
+    }
+
+    public AvailabilityIndex() {
+        this(AssignmentPolicy.fromEnvironment());
+    }
+
+    public AvailabilityIndex(AssignmentPolicy policy) {
+        this.policy = policy;
+        this.pickRandomly = policy == AssignmentPolicy.RANDOM;
+        // the set needs a total order: policy first, then the day's shuffle, then the id
+        this.order = (a, b) -> {
+            int result = policy.compare(a, b);
+            if (result == 0) {
+                result = Integer.compare(a.tieBreak, b.tieBreak);
+            }
+            return result != 0 ? result : Integer.compare(a.id, b.id);
+        };
+    }
+
+    public AssignmentPolicy getPolicy() {
+        return policy;
+    }
+
+    public void load(Store store) throws SQLException {
+        load(store.getAvailabilities());
+    }
+
+    public void load(Collection<Availability> availabilities) {
+        for (Availability availability : availabilities) {
+            add(availability);
+        }
+    }
+
+    // adds the caregiver's day with the row's bookings, or replaces it if it is already there
+    public void add(Availability availability) {
+        int id = idOf(availability.getCaregiver());
+        int[] slotBooked = new int[availability.getSlots()];
+        for (int slot = 0; slot < slotBooked.length; slot++) {
+            slotBooked[slot] = availability.getBooked(slot);
+        }
+        Day day = byDate.computeIfAbsent(availability.getDate().toLocalDate(), d -> new Day(d, order));
+        synchronized (day) {
+            CaregiverDay old = day.caregivers.get(id);
+            if (old != null) {
+                day.open.remove(old);
+                day.remaining -= old.getRemaining();
+            }
+            CaregiverDay entry = new CaregiverDay(id, availability.getCaregiver(),
+                    old != null ? old.tieBreak : ThreadLocalRandom.current().nextInt(), availability.getStart(),
+                    availability.getSlotMinutes(), availability.getSlotCapacity(), slotBooked);
+            day.caregivers.put(id, entry);
+            if (entry.hasRoom()) {
+                day.open.add(entry);
+            }
+            day.remaining += entry.getRemaining();
+            updated(day);
+        }
+    }
+
+    // takes the caregiver's day out of the index altogether
+    public boolean remove(Date date, String caregiver) {
+        Integer id = ids.get(caregiver);
+        Day day = byDate.get(date.toLocalDate());
+        if (id == null || day == null) {
+            return false;
+        }
+        synchronized (day) {
+            CaregiverDay entry = day.caregivers.remove(id);
+            if (entry == null) {
+                return false;
+            }
+            day.open.remove(entry);
+            day.remaining -= entry.getRemaining();
+            updated(day);
+            return true;
+        }
+    }
+
+    /**
+     * Replaces the caregiver's day with the store's copy, or takes it out if the caregiver is no longer
+     * available then. For when the store turned down a claim on the day: only that day was out of date,
+     * so the caregiver's other slots stay bookable.
+     */
+    public void reload(Store store, Date date, String caregiver) throws SQLException {
+        Availability current = store.getAvailability(caregiver, date);
+        if (current != null) {
+            add(current);
+        } else {
+            remove(date, caregiver);
+        }
+    }
+
+    // true if the caregiver is available on the date and still has room
+    public boolean contains(Date date, String caregiver) {
+        Integer id = ids.get(caregiver);
+        Day day = byDate.get(date.toLocalDate());
+        if (id == null || day == null) {
+            return false;
+        }
+        synchronized (day) {
+            CaregiverDay entry = day.caregivers.get(id);
+            return entry != null && entry.hasRoom();
+        }
+    }
+
+    // caregivers available on the date who still have room, sorted by name
+    public List<String> getCaregivers(Date date) {
+        Day day = byDate.get(date.toLocalDate());
+        if (day == null) {
+            return new ArrayList<>();
+        }
+        List<String> result;
+        synchronized (day) {
+            result = new ArrayList<>(day.open.size());
+            for (CaregiverDay entry : day.open) {
+                result.add(entry.caregiver);
+            }
+        }
+        Collections.sort(result);
+        return result;
+    }
+
+    /**
+     * Assigns the caregiver the policy puts first for the date and takes a place in their earliest slot
+     * with room, in the same step, so two callers never get the same place. Returns null if nobody has
+     * room left. Callers that fail to book the claim afterwards should {@link #release} it.
+     */
+    public SlotClaim claim(Date date) {
+        Day day = byDate.get(date.toLocalDate());
+        if (day == null) {
+            return null;
+        }
+        synchronized (day) {
+            CaregiverDay next = pickRandomly ? removeRandom(day.open) : day.open.pollFirst();
+            if (next == null) {
+                return null;
+            }
+            int slot = next.book();
+            if (next.hasRoom()) {
+                day.open.add(next);
+            }
+            day.remaining--;
+            updated(day);
+            return new SlotClaim(next.caregiver, slot);
+        }
+    }
+
+    // gives back a place taken by claim()
+    public void release(Date date, SlotClaim claim) {
+        release(date, claim.getCaregiver(), claim.getSlot(), null);
+    }
+
+    // gives back the place of a cancelled appointment with the caregiver at that time
+    public void release(Date date, String caregiver, LocalTime time) {
+        if (time != null) {
+            release(date, caregiver, -1, time);
+        }
+    }
+
+    // the slot, or if time is given, the slot starting then
+    private void release(Date date, String caregiver, int slot, LocalTime time) {
+        Integer id = ids.get(caregiver);
+        Day day = byDate.get(date.toLocalDate());
+        if (id == null || day == null) {
+            return;
+        }
+        synchronized (day) {
+            CaregiverDay entry = day.caregivers.get(id);
+            if (entry == null) {
+                return;
+            }
+            day.open.remove(entry);
+            int before = entry.getRemaining();
+            entry.unbook(time == null ? slot : entry.slotAt(time));
+            day.remaining += entry.getRemaining() - before;
+            if (entry.hasRoom()) {
+                day.open.add(entry);
+            }
+            updated(day);
+        }
+    }
+
+    /**
+     * The first date from {@code from} to {@code to} (inclusive; null for no end) on which some caregiver
+     * still has room, or null if there is none. Reads without locking, so a date can be booked out by the
+     * time the caller reserves it; reserve checks again.
+     */
+    public Date findEarliest(Date from, Date to) {
+        LocalDate first = openDates.ceiling(from.toLocalDate());
+        if (first == null || (to != null && first.isAfter(to.toLocalDate()))) {
+            return null;
+        }
+        return Date.valueOf(first);
+    }
+
+    // appointments that can still be booked on the date, over all caregivers
+    public int getRemaining(Date date) {
+        Day day = byDate.get(date.toLocalDate());
+        if (day == null) {
+            return 0;
+        }
+        synchronized (day) {
+            return day.remaining;
+        }
+    }
+
+    // takes out and returns any of the caregivers, each as likely as the others; null if there are none
+    private static CaregiverDay removeRandom(TreeSet<CaregiverDay> open) {
+        if (open.isEmpty()) {
+            return null;
+        }
+        Iterator<CaregiverDay> it = open.iterator();
+        for (int skip = ThreadLocalRandom.current().nextInt(open.size()); skip > 0; skip--) {
+            it.next();
+        }
+        CaregiverDay picked = it.next();
+        it.remove();
+        return picked;
+    }
+
+    // keeps openDates in step with the day; called with the day's lock held
+    private void updated(Day day) {
+        if (day.open.isEmpty()) {
+            openDates.remove(day.date);
+        } else {
+            openDates.add(day.date);
+        }
+    }
+
+    private int idOf(String caregiver) {
+        Integer id = ids.get(caregiver);
+        return id != null ? id : ids.computeIfAbsent(caregiver, name -> nextId.getAndIncrement());
+    }
+
+    // the caregivers of one date; guarded by its own monitor
+    private static class Day {
+        private final LocalDate date;
+        private final Map<Integer, CaregiverDay> caregivers = new HashMap<>();
+        // the ones with room left, next to be assigned first
+        private final TreeSet<CaregiverDay> open;
+        // free places over all of them
+        private int remaining;
+
+        private Day(LocalDate date, Comparator<CaregiverDay> order) {
+            this.date = date;
+            this.open = new TreeSet<>(order);
+        }
+    }
+}
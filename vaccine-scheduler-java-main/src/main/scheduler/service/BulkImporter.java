@@ -0,0 +1,162 @@
+package scheduler.service;
+
+import scheduler.db.Credentials;
+import scheduler.db.Store;
+import scheduler.util.PasswordHasher;
+import scheduler.util.Util;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Imports patients and caregivers from CSV in bulk.
+ *
+ * Each line is "role,username,password" where role is patient or caregiver (a header line starting with
+ * "role" is skipped). Passwords are hashed on the {@link PasswordHasher}'s threads, existing usernames are
+ * found with one set-based lookup per role, and the new accounts are inserted in batched transactions. Bad
+ * lines and taken usernames are rejected with a reason instead of stopping the import.
+ */
+public class BulkImporter {
+
+    private final Store store;
+
+    public BulkImporter(Store store) {
+        this.store = store;
+    }
+
+    public Result importCsv(Reader csv) throws IOException, SQLException {
+        long start = System.nanoTime();
+        Result result = new Result();
+
+        // 1. parse, keeping the first occurrence of each username per role
+        Map<String, String> patients = new LinkedHashMap<>();
+        Map<String, String> caregivers = new LinkedHashMap<>();
+        BufferedReader reader = new BufferedReader(csv);
+        String line;
+        int lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (line.trim().isEmpty() || (lineNumber == 1 && line.toLowerCase().startsWith("role"))) {
+                continue;
+            }
+            result.rows++;
+            String[] fields = line.split(",", -1);
+            if (fields.length != 3 || fields[1].trim().isEmpty() || fields[2].isEmpty()) {
+                result.reject(lineNumber, "expected role,username,password");
+                continue;
+            }
+            String role = fields[0].trim().toLowerCase();
+            String username = fields[1].trim();
+            Map<String, String> target = role.equals("patient") ? patients
+                    : role.equals("caregiver") ? caregivers : null;
+            if (target == null) {
+                result.reject(lineNumber, "unknown role " + fields[0]);
+            } else if (target.putIfAbsent(username, fields[2]) != null) {
+                result.reject(lineNumber, "duplicate username " + username + " in file");
+            }
+        }
+
+        // 2. drop usernames that are already taken
+        rejectExisting(patients, store.findExistingPatients(patients.keySet()), "patient", result);
+        rejectExisting(caregivers, store.findExistingCaregivers(caregivers.keySet()), "caregiver", result);
+
+        // 3. hash, 4. insert in batches
+        List<String> added = store.insertPatients(hashAll(patients));
+        result.patients += added.size();
+        result.taken += patients.size() - added.size();
+        addAll(UsernameFilter.patients(), added);
+        added = store.insertCaregivers(hashAll(caregivers));
+        result.caregivers += added.size();
+        result.taken += caregivers.size() - added.size();
+        addAll(UsernameFilter.caregivers(), added);
+
+        result.seconds = (System.nanoTime() - start) / 1e9;
+        return result;
+    }
+
+    private static void rejectExisting(Map<String, String> accounts, Set<String> existing, String role,
+                                       Result result) {
+        for (String username : existing) {
+            accounts.remove(username);
+            result.taken++;
+            result.reasons.add(role + " " + username + ": username taken");
+        }
+    }
+
+    private static void addAll(UsernameFilter filter, List<String> usernames) {
+        for (String username : usernames) {
+            filter.add(username);
+        }
+    }
+
+    private static Map<String, Credentials> hashAll(Map<String, String> passwords) {
+        List<String> usernames = new ArrayList<>(passwords.keySet());
+        List<byte[]> salts = new ArrayList<>(usernames.size());
+        for (int i = 0; i < usernames.size(); i++) {
+            salts.add(Util.generateSalt());
+        }
+        List<byte[]> hashes = PasswordHasher.get().hashAll(new ArrayList<>(passwords.values()), salts);
+        Map<String, Credentials> accounts = new HashMap<>();
+        for (int i = 0; i < usernames.size(); i++) {
+            accounts.put(usernames.get(i), new Credentials(salts.get(i), hashes.get(i)));
+        }
+        return accounts;
+    }
+
+    public static class Result {
+        private static final int MAX_REASONS = 20;
+
+        private int rows = 0;
+        private int patients = 0;
+        private int caregivers = 0;
+        private int malformed = 0;
+        private int taken = 0;
+        private double seconds = 0;
+        private final List<String> reasons = new ArrayList<>();
+
+        private void reject(int line, String reason) {
+            malformed++;
+            reasons.add("line " + line + ": " + reason);
+        }
+
+        public int getRows() {
+            return rows;
+        }
+
+        public int getPatients() {
+            return patients;
+        }
+
+        public int getCaregivers() {
+            return caregivers;
+        }
+
+        public int getRejected() {
+            return malformed + taken;
+        }
+
+        public double getRowsPerSecond() {
+            return seconds == 0 ? 0 : rows / seconds;
+        }
+
+        // the first few reasons for rejected rows
+        public List<String> getReasons() {
+            return reasons.subList(0, Math.min(MAX_REASONS, reasons.size()));
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Imported %d patient(s) and %d caregiver(s) from %d row(s), %d rejected, "
+                    + "in %.2f s (%.0f rows/s)", patients, caregivers, rows, getRejected(), seconds,
+                    getRowsPerSecond());
+        }
+    }
+}
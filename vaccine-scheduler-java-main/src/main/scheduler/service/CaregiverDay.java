@@ -0,0 +1,91 @@
+package scheduler.service;
+
+import java.time.Duration;
+import java.time.LocalTime;
+
+/**
+ * A caregiver's load on one day, as tracked by the {@link AvailabilityIndex}. Only the index changes it,
+ * while holding the day's lock, so policies can read it freely while ordering.
+ *
+ * The day's time slots are the bits of {@code free}: bit i is set while slot i has room, so the earliest
+ * open slot is found, and a full one retired, in constant time.
+ */
+public final class CaregiverDay {
+    final int id;
+    final String caregiver;
+    // a random rank, fixed for the day, that orders caregivers the policy considers equal
+    final int tieBreak;
+    final int slotCapacity;
+    // when slot 0 starts and how long each slot is, to find the slot of an appointment's time
+    final LocalTime start;
+    final int slotMinutes;
+    // appointments in each slot
+    final int[] slotBooked;
+    long free;
+    int booked;
+
+    CaregiverDay(int id, String caregiver, int tieBreak, LocalTime start, int slotMinutes, int slotCapacity,
+                 int[] slotBooked) {
+        this.id = id;
+        this.caregiver = caregiver;
+        this.tieBreak = tieBreak;
+        this.start = start;
+        this.slotMinutes = slotMinutes;
+        this.slotCapacity = slotCapacity;
+        this.slotBooked = slotBooked;
+        for (int slot = 0; slot < slotBooked.length; slot++) {
+            booked += slotBooked[slot];
+            if (slotBooked[slot] < slotCapacity) {
+                free |= 1L << slot;
+            }
+        }
+    }
+
+    public String getCaregiver() {
+        return caregiver;
+    }
+
+    public int getCapacity() {
+        return slotBooked.length * slotCapacity;
+    }
+
+    public int getBooked() {
+        return booked;
+    }
+
+    public int getRemaining() {
+        return getCapacity() - booked;
+    }
+
+    boolean hasRoom() {
+        return free != 0;
+    }
+
+    // books the earliest slot with room and returns it; the caller checks hasRoom() first
+    int book() {
+        int slot = Long.numberOfTrailingZeros(free);
+        if (++slotBooked[slot] >= slotCapacity) {
+            free &= ~(1L << slot);
+        }
+        booked++;
+        return slot;
+    }
+
+    // the slot starting at the time, or -1 if none does
+    int slotAt(LocalTime time) {
+        long minutes = Duration.between(start, time).toMinutes();
+        if (minutes < 0 || minutes % slotMinutes != 0 || minutes / slotMinutes >= slotBooked.length) {
+            return -1;
+        }
+        return (int) (minutes / slotMinutes);
+    }
+
+    void unbook(int slot) {
+        if (slot < 0 || slot >= slotBooked.length || slotBooked[slot] == 0) {
+            return;
+        }
+        slotBooked[slot]--;
+        free |= 1L << slot;
+        booked--;
+    }
+}
@@ -0,0 +1,203 @@
+package scheduler.service;
+
+import scheduler.db.Store;
+import scheduler.db.Stores;
+import scheduler.snapshot.WarmStart;
+import scheduler.util.Util;
+
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Keeps the available dose count of every vaccine in memory.
+ *
+ * Counts are changed with compare-and-set, so concurrent add_doses and reservations never lose an update
+ * and a count never goes below zero. Reservations hold their dose here first, but the store takes it from
+ * the Vaccines table in the same transaction as the appointment, so a booked dose is never lost. Other
+ * changes (add_doses) are not written to the table one by one: each vaccine accumulates a pending delta
+ * that a background thread flushes in one batch (every DoseFlushIntervalMs, default 1000 ms, and on
+ * shutdown), so the table can lag behind them by up to one flush interval.
+ */
+public class DoseInventory {
+
+    private static DoseInventory instance = null;
+
+    private final Store store;
+    private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+    private ScheduledExecutorService flusher = null;
+
+    public static synchronized DoseInventory get() throws SQLException {
+        if (instance == null) {
+            DoseInventory inventory = new DoseInventory(Stores.get());
+            WarmStart warmStart = WarmStart.get();
+            if (warmStart != null) {
+                inventory.load(warmStart.getSnapshot().getDoses());
+            } else {
+                inventory.load();
+            }
+            inventory.startFlushing(Util.envInt("DoseFlushIntervalMs", 1000, 1));
+            instance = inventory;
+        }
+        return instance;
+    }
+
+    public DoseInventory(Store store) {
+        this.store = store;
+    }
+
+    public void load() throws SQLException {
+        load(store.getVaccines());
+    }
+
+    // vaccine name -> doses, as the Vaccines table holds them
+    public void load(Map<String, Integer> vaccines) {
+        for (Map.Entry<String, Integer> vaccine : vaccines.entrySet()) {
+            counters.put(vaccine.getKey(), new Counter(vaccine.getValue()));
+        }
+    }
+
+    public void startFlushing(long intervalMillis) {
+        flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "dose-inventory-flusher");
+            t.setDaemon(true);
+            return t;
+        });
+        flusher.scheduleWithFixedDelay(() -> {
+            try {
+                flush();
+            } catch (SQLException e) {
+                System.out.println("Error occurred when saving doses.");
+                e.printStackTrace();
+            }
+        }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                flush();
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+        }, "dose-inventory-final-flush"));
+    }
+
+    // a vaccine that was just inserted into the Vaccines table with this many doses
+    public void register(String vaccine, int doses) {
+        counters.putIfAbsent(vaccine, new Counter(doses));
+    }
+
+    public boolean contains(String vaccine) {
+        return counters.containsKey(vaccine);
+    }
+
+    // returns null if the vaccine does not exist
+    public Integer getAvailable(String vaccine) {
+        Counter counter = counters.get(vaccine);
+        return counter == null ? null : counter.available.get();
+    }
+
+    // vaccine name -> available doses, ordered by name
+    public Map<String, Integer> getAll() {
+        Map<String, Integer> all = new TreeMap<>();
+        for (Map.Entry<String, Counter> entry : counters.entrySet()) {
+            all.put(entry.getKey(), entry.getValue().available.get());
+        }
+        return all;
+    }
+
+    // returns the new count
+    public int add(String vaccine, int num) {
+        if (num <= 0) {
+            throw new IllegalArgumentException("Argument cannot be negative!");
+        }
+        Counter counter = counterOf(vaccine);
+        int updated = counter.available.addAndGet(num);
+        counter.pending.addAndGet(num);
+        return updated;
+    }
+
+    // doses the store has already put back in the Vaccines table (by a cancellation): only the in-memory
+    // count changes, there is nothing to flush
+    public void restore(String vaccine, int num) {
+        Counter counter = counters.get(vaccine);
+        if (counter != null) {
+            counter.available.addAndGet(num);
+        }
+    }
+
+    // takes num doses if that many are available; never lets the count go negative
+    public boolean tryTake(String vaccine, int num) {
+        if (!tryHold(vaccine, num)) {
+            return false;
+        }
+        counters.get(vaccine).pending.addAndGet(-num);
+        return true;
+    }
+
+    // as tryTake, for doses the store takes itself when it books them (see Store#reserve): only the
+    // in-memory count changes, and restore() gives them back if the booking fails
+    public boolean tryHold(String vaccine, int num) {
+        Counter counter = counters.get(vaccine);
+        if (counter == null) {
+            return false;
+        }
+        while (true) {
+            int current = counter.available.get();
+            if (current < num) {
+                return false;
+            }
+            if (counter.available.compareAndSet(current, current - num)) {
+                return true;
+            }
+        }
+    }
+
+    // writes all pending deltas to the Vaccines table in one batch
+    public void flush() throws SQLException {
+        synchronized (this) {
+            Map<String, Integer> deltas = new HashMap<>();
+            for (Map.Entry<String, Counter> entry : counters.entrySet()) {
+                int delta = entry.getValue().pending.getAndSet(0);
+                if (delta != 0) {
+                    deltas.put(entry.getKey(), delta);
+                }
+            }
+            if (deltas.isEmpty()) {
+                return;
+            }
+            try {
+                store.addDoses(deltas);
+            } catch (SQLException | RuntimeException e) {
+                // put them back so the next flush retries
+                for (Map.Entry<String, Integer> delta : deltas.entrySet()) {
+                    counters.get(delta.getKey()).pending.addAndGet(delta.getValue());
+                }
+                throw e;
+            }
+        }
+    }
+
+    private Counter counterOf(String vaccine) {
+        Counter counter = counters.get(vaccine);
+        if (counter == null) {
+            throw new IllegalArgumentException("Unknown vaccine: " + vaccine);
+        }
+        return counter;
+    }
+
+    private static class Counter {
+        // doses that can still be handed out
+        private final AtomicInteger available;
+        // change not yet written to the Vaccines table
+        private final AtomicInteger pending = new AtomicInteger();
+
+        private Counter(int doses) {
+            this.available = new AtomicInteger(doses);
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package scheduler.service;
+
+import scheduler.db.Store;
+import scheduler.db.Stores;
+import scheduler.model.Appointment;
+import scheduler.model.Reservation;
+
+import java.sql.Date;
+import java.sql.SQLException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Books and cancels appointments.
+ *
+ * The dose is held in the {@link DoseInventory} and a caregiver and time slot are assigned (and the
+ * place held) through the {@link AvailabilityIndex}, both in memory; the booking itself, place and dose,
+ * is a single atomic operation in the store (see {@link Store#reserve}), so the engine is safe to call from
+ * any number of threads. It also keeps running totals so throughput under contention can be measured
+ * (see scheduler.tools.ReserveContention). Cancelling is one atomic step in the store too (see
+ * {@link Store#cancelAppointment}); the engine then gives the places and doses back in memory.
+ */
+public class ReservationEngine {
+
+    // claims tried per reservation before giving up, however stale the index is
+    private static final int MAX_ATTEMPTS = 8;
+
+    private static ReservationEngine instance = null;
+
+    private final Store store;
+    private final AvailabilityIndex availability;
+    private final DoseInventory inventory;
+    private final LongAdder attempts = new LongAdder();
+    private final LongAdder reserved = new LongAdder();
+    private final LongAdder busyNanos = new LongAdder();
+
+    public static synchronized ReservationEngine get() throws SQLException {
+        if (instance == null) {
+            instance = new ReservationEngine(Stores.get(), AvailabilityIndex.get(), DoseInventory.get());
+        }
+        return instance;
+    }
+
+    public ReservationEngine(Store store, AvailabilityIndex availability, DoseInventory inventory) {
+        this.store = store;
+        this.availability = availability;
+        this.inventory = inventory;
+    }
+
+    public Reservation reserve(String patient, Date date, String vaccine) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            if (!inventory.tryHold(vaccine, 1)) {
+                return Reservation.failed(inventory.contains(vaccine)
+                        ? Reservation.Status.NO_DOSES : Reservation.Status.UNKNOWN_VACCINE);
+            }
+            Reservation reservation = null;
+            try {
+                reservation = book(patient, date, vaccine);
+                if (reservation.getStatus() == Reservation.Status.NO_DOSES) {
+                    // the doses may have been added but not flushed to the table yet
+                    inventory.flush();
+                    reservation = book(patient, date, vaccine);
+                }
+            } finally {
+                if (reservation == null || !reservation.isReserved()) {
+                    // hand the dose back; the store did not take it
+                    inventory.restore(vaccine, 1);
+                }
+            }
+            if (reservation.isReserved()) {
+                reserved.increment();
+            }
+            return reservation;
+        } finally {
+            attempts.increment();
+            busyNanos.add(System.nanoTime() - start);
+        }
+    }
+
+    private Reservation book(String patient, Date date, String vaccine) throws SQLException {
+        // caregivers whose day was already reloaded during this reservation
+        Set<String> reloaded = new HashSet<>();
+        for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+            SlotClaim claim = availability.claim(date);
+            if (claim == null) {
+                return Reservation.failed(Reservation.Status.NO_CAREGIVER);
+            }
+            Reservation reservation;
+            try {
+                reservation = store.reserve(patient, claim.getCaregiver(), date, claim.getSlot(), vaccine);
+            } catch (SQLException e) {
+                availability.release(date, claim);
+                throw e;
+            }
+            if (reservation.isReserved()) {
+                return reservation;
+            }
+            if (reservation.getStatus() == Reservation.Status.NO_DOSES) {
+                // the place was fine; the vaccine ran out
+                availability.release(date, claim);
+                return reservation;
+            }
+            if (reloaded.add(claim.getCaregiver())) {
+                // the index was stale for this caregiver's day; catch it up with the store and claim again
+                availability.reload(store, date, claim.getCaregiver());
+            } else {
+                // the store still turns the day down after reloading it: stop offering it until restart
+                availability.remove(date, claim.getCaregiver());
+            }
+        }
+        return Reservation.failed(Reservation.Status.NO_CAREGIVER);
+    }
+
+    /**
+     * Cancels the appointment if it belongs to the patient or caregiver (whichever is not null) and frees
+     * its place and dose. Returns the cancelled appointment, or null if there was none.
+     */
+    public Appointment cancel(int id, String patient, String caregiver) throws SQLException {
+        Appointment appointment = store.cancelAppointment(id, patient, caregiver);
+        if (appointment != null) {
+            released(appointment);
+        }
+        return appointment;
+    }
+
+    // cancels all the caregiver's appointments on the date; returns them
+    public List<Appointment> cancelDay(String caregiver, Date date) throws SQLException {
+        List<Appointment> cancelled = store.cancelDay(caregiver, date);
+        for (Appointment appointment : cancelled) {
+            released(appointment);
+        }
+        return cancelled;
+    }
+
+    // the store has already given the place and the dose back; catch up the in-memory copies
+    private void released(Appointment appointment) {
+        availability.release(appointment.getDate(), appointment.getCaregiver(), appointment.getTime());
+        inventory.restore(appointment.getVaccine(), 1);
+    }
+
+    public long getAttempts() {
+        return attempts.sum();
+    }
+
+    public long getReserved() {
+        return reserved.sum();
+    }
+
+    // average time spent inside reserve(), in microseconds
+    public double getAverageMicros() {
+        long n = attempts.sum();
+        return n == 0 ? 0 : busyNanos.sum() / 1000.0 / n;
+    }
+}
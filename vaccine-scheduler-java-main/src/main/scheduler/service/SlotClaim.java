@@ -0,0 +1,20 @@
+package scheduler.service;
+
+// a place held in one of a caregiver's time slots, until it is booked or released
+public final class SlotClaim {
+    private final String caregiver;
+    private final int slot;
+
+    SlotClaim(String caregiver, int slot) {
+        this.caregiver = caregiver;
+        this.slot = slot;
+    }
+
+    public String getCaregiver() {
+        return caregiver;
+    }
+
+    public int getSlot() {
+        return slot;
+    }
+}
@@ -0,0 +1,112 @@
+package scheduler.service;
+
+import scheduler.db.Store;
+import scheduler.db.Stores;
+import scheduler.snapshot.WarmStart;
+import scheduler.util.BloomFilter;
+
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Answers "is this username taken?" for patients or caregivers without a database round trip in the
+ * common cases.
+ *
+ * Every known username is kept in an exact set and in a Bloom filter. A name the Bloom filter has never
+ * seen is reported free and a name in the exact set taken, both without asking the database; only the
+ * rare Bloom filter false positive falls through to it. Names added by other processes since this one
+ * loaded are not known here, so they are reported free; only the unique key on the table catches them,
+ * when the row is inserted.
+ */
+public class UsernameFilter {
+
+    private static final double FALSE_POSITIVE_RATE = 0.01;
+
+    private static UsernameFilter patients = null;
+    private static UsernameFilter caregivers = null;
+
+    private final Set<String> known = ConcurrentHashMap.newKeySet();
+    private volatile BloomFilter bloom;
+    private volatile int capacity;
+
+    public static synchronized UsernameFilter patients() throws SQLException {
+        if (patients == null) {
+            WarmStart warmStart = WarmStart.get();
+            patients = new UsernameFilter(warmStart != null ? warmStart.getSnapshot().getPatients()
+                    : Stores.get().getPatientUsernames());
+        }
+        return patients;
+    }
+
+    public static synchronized UsernameFilter caregivers() throws SQLException {
+        if (caregivers == null) {
+            WarmStart warmStart = WarmStart.get();
+            caregivers = new UsernameFilter(warmStart != null ? warmStart.getSnapshot().getCaregivers()
+                    : Stores.get().getCaregiverUsernames());
+        }
+        return caregivers;
+    }
+
+    public UsernameFilter(Collection<String> usernames) {
+        resize(Math.max(1024, usernames.size() * 2));
+        for (String username : usernames) {
+            add(username);
+        }
+    }
+
+    /**
+     * Returns true if the username is taken. exists is consulted (typically a database lookup) only when
+     * memory cannot tell for sure.
+     */
+    public boolean isTaken(String username, Lookup exists) throws SQLException {
+        if (!bloom.mightContain(username)) {
+            return false;
+        }
+        if (known.contains(username)) {
+            return true;
+        }
+        if (exists.exists(username)) {
+            add(username);
+            return true;
+        }
+        return false;
+    }
+
+    public void add(String username) {
+        if (known.add(username)) {
+            bloom.add(username);
+            if (known.size() > capacity) {
+                synchronized (this) {
+                    if (known.size() > capacity) {
+                        resize(capacity * 2);
+                    }
+                }
+            }
+        }
+    }
+
+    public int size() {
+        return known.size();
+    }
+
+    // rebuilds the Bloom filter for more names before its false positive rate degrades
+    private void resize(int newCapacity) {
+        BloomFilter bigger = new BloomFilter(newCapacity, FALSE_POSITIVE_RATE);
+        for (String username : known) {
+            bigger.add(username);
+        }
+        bloom = bigger;
+        capacity = newCapacity;
+        // names added while we copied may have gone into the old filter only; should one still slip
+        // through, the table's unique key rejects the duplicate insert
+        for (String username : known) {
+            bigger.add(username);
+        }
+    }
+
+    public interface Lookup {
+        boolean exists(String username) throws SQLException;
+    }
+}
@@ -0,0 +1,292 @@
+package scheduler.service;
+
+import scheduler.db.ScheduleDao;
+import scheduler.db.Store;
+import scheduler.db.Stores;
+import scheduler.model.Appointment;
+import scheduler.model.Booking;
+import scheduler.model.Reservation;
+
+import java.sql.Date;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Patients waiting for an appointment on a date, or on any date of a range, that had no room when they
+ * asked. A patient waits for one thing at a time.
+ *
+ * Every date has a FIFO queue. A patient waiting for a range is queued on each of its dates and served by
+ * whichever date gets room first; they then leave all their queues. Dates that have passed are dropped,
+ * with the patients who were only waiting for them. Whenever capacity is added (new availability for some
+ * dates, or new doses of a vaccine) the affected queues are matched: caregivers and doses are claimed in
+ * memory through the {@link AvailabilityIndex} and the {@link DoseInventory}, as reserve does, and the
+ * appointments are inserted with one set-based statement per batch (see {@link Store#reserveAll}).
+ *
+ * Only walking the queues and applying the outcome hold the waitlist's lock; the store is called outside
+ * it. Patients claimed by one match are skipped by the others until it is done. The waitlist itself is
+ * kept in memory only.
+ */
+public class Waitlist {
+
+    // the longest range a patient can wait for
+    public static final int MAX_DAYS = 31;
+    private static final int BATCH_SIZE = Math.min(200, ScheduleDao.MAX_RESERVE_BATCH);
+
+    private static Waitlist instance = null;
+
+    private final Store store;
+    private final AvailabilityIndex availability;
+    private final DoseInventory inventory;
+    // date -> waiting patients in arrival order; everything below is guarded by this
+    private final NavigableMap<LocalDate, Set<Entry>> queues = new TreeMap<>();
+    // patient -> what they are waiting for
+    private final Map<String, Entry> waiting = new HashMap<>();
+
+    public static synchronized Waitlist get() throws SQLException {
+        if (instance == null) {
+            instance = new Waitlist(Stores.get(), AvailabilityIndex.get(), DoseInventory.get());
+        }
+        return instance;
+    }
+
+    public Waitlist(Store store, AvailabilityIndex availability, DoseInventory inventory) {
+        this.store = store;
+        this.availability = availability;
+        this.inventory = inventory;
+    }
+
+    /**
+     * Puts the patient in the queue of every date from {@code from} to {@code to}, then matches those
+     * dates in case there is room already. Returns the appointment if the patient got one straight away,
+     * or null if they are waiting. A patient who is already waiting stays where they are (see
+     * {@link #isWaiting}).
+     */
+    public Appointment join(String patient, Date from, Date to, String vaccine) throws SQLException {
+        Entry entry = new Entry(patient, vaccine, from.toLocalDate(), to.toLocalDate());
+        synchronized (this) {
+            if (waiting.putIfAbsent(patient, entry) != null) {
+                return null;
+            }
+            for (LocalDate day = entry.from; !day.isAfter(entry.to); day = day.plusDays(1)) {
+                queues.computeIfAbsent(day, d -> new LinkedHashSet<>()).add(entry);
+            }
+        }
+        match(entry.from, entry.to, null);
+        synchronized (this) {
+            return entry.appointment;
+        }
+    }
+
+    public synchronized boolean isWaiting(String patient) {
+        return waiting.containsKey(patient);
+    }
+
+    // after availability was added for the dates; returns how many waiting patients got an appointment
+    public int matchDates(Date from, Date to) throws SQLException {
+        return match(from.toLocalDate(), to.toLocalDate(), null);
+    }
+
+    // after doses of the vaccine were added; returns how many waiting patients got an appointment
+    public int matchVaccine(String vaccine) throws SQLException {
+        LocalDate from;
+        LocalDate to;
+        synchronized (this) {
+            if (queues.isEmpty()) {
+                return 0;
+            }
+            from = queues.firstKey();
+            to = queues.lastKey();
+        }
+        return match(from, to, vaccine);
+    }
+
+    // patients still waiting
+    public synchronized int getWaiting() {
+        return waiting.size();
+    }
+
+    // claims a place and a dose for everyone in the dates' queues who can have one, then books them
+    private int match(LocalDate from, LocalDate to, String vaccine) throws SQLException {
+        // the store takes the doses it books from the table, so doses just added must be there first
+        inventory.flush();
+        List<Booking> claims = new ArrayList<>();
+        List<Entry> entries = new ArrayList<>();
+        synchronized (this) {
+            expire(LocalDate.now());
+            walk(from, to, vaccine, claims, entries);
+        }
+        Appointment[] booked = new Appointment[claims.size()];
+        try {
+            for (int first = 0; first < claims.size(); first += BATCH_SIZE) {
+                int end = Math.min(claims.size(), first + BATCH_SIZE);
+                book(claims.subList(first, end), booked, first);
+            }
+        } finally {
+            synchronized (this) {
+                settle(entries, booked);
+            }
+        }
+        int matched = 0;
+        for (Appointment appointment : booked) {
+            if (appointment != null) {
+                matched++;
+            }
+        }
+        return matched;
+    }
+
+    // walks the queues of the dates in order, claiming a place and a dose for everyone who can have one
+    private void walk(LocalDate from, LocalDate to, String vaccine, List<Booking> claims, List<Entry> entries) {
+        for (Map.Entry<LocalDate, Set<Entry>> queue : queues.subMap(from, true, to, true).entrySet()) {
+            Date date = Date.valueOf(queue.getKey());
+            for (Entry entry : queue.getValue()) {
+                if (entry.claimed || (vaccine != null && !entry.vaccine.equals(vaccine))) {
+                    continue;
+                }
+                if (!inventory.tryHold(entry.vaccine, 1)) {
+                    // waits for doses; patients behind may want another vaccine
+                    continue;
+                }
+                SlotClaim claim = availability.claim(date);
+                if (claim == null) {
+                    // nobody has room left on this date
+                    inventory.restore(entry.vaccine, 1);
+                    break;
+                }
+                entry.claimed = true;
+                claims.add(new Booking(entry.patient, claim.getCaregiver(), date, claim.getSlot(), entry.vaccine));
+                entries.add(entry);
+            }
+        }
+    }
+
+    // the patients who got an appointment leave the waitlist; the others wait again where they were
+    private void settle(List<Entry> entries, Appointment[] booked) {
+        for (int i = 0; i < entries.size(); i++) {
+            Entry entry = entries.get(i);
+            entry.claimed = false;
+            if (booked[i] != null) {
+                entry.appointment = booked[i];
+                leave(entry);
+            }
+        }
+    }
+
+    private void leave(Entry entry) {
+        waiting.remove(entry.patient, entry);
+        for (LocalDate day = entry.from; !day.isAfter(entry.to); day = day.plusDays(1)) {
+            Set<Entry> queue = queues.get(day);
+            if (queue != null && queue.remove(entry) && queue.isEmpty()) {
+                queues.remove(day);
+            }
+        }
+    }
+
+    // drops the queues of the days before today, and the patients who were only waiting for those
+    private void expire(LocalDate today) {
+        Iterator<Map.Entry<LocalDate, Set<Entry>>> past = queues.headMap(today, false).entrySet().iterator();
+        while (past.hasNext()) {
+            for (Entry entry : past.next().getValue()) {
+                if (entry.to.isBefore(today)) {
+                    waiting.remove(entry.patient, entry);
+                }
+            }
+            past.remove();
+        }
+    }
+
+    // books the rows, filling in booked from offset on; rows the store turns down, or never sees because
+    // it failed, give their places and doses back
+    private void book(List<Booking> batch, Appointment[] booked, int offset) throws SQLException {
+        List<Appointment> all;
+        try {
+            all = store.reserveAll(batch);
+        } catch (SQLException e) {
+            giveBack(batch, 0);
+            throw e;
+        }
+        if (all != null) {
+            for (int i = 0; i < all.size(); i++) {
+                booked[offset + i] = all.get(i);
+            }
+            return;
+        }
+
+        // the index was stale for somebody in the batch: book one at a time to find out who, as reserve does
+        List<Booking> failed = new ArrayList<>();
+        for (int i = 0; i < batch.size(); i++) {
+            Booking booking = batch.get(i);
+            Reservation reservation;
+            try {
+                reservation = store.reserve(booking.getPatient(), booking.getCaregiver(), booking.getDate(),
+                        booking.getSlot(), booking.getVaccine());
+            } catch (SQLException e) {
+                // this row and the ones after it were never booked: their places and doses go back too
+                turnedDown(failed);
+                giveBack(batch, i);
+                try {
+                    reload(failed);
+                } catch (SQLException again) {
+                    e.addSuppressed(again);
+                }
+                throw e;
+            }
+            if (reservation.isReserved()) {
+                booked[offset + i] = reservation.getAppointment();
+            } else {
+                failed.add(booking);
+            }
+        }
+        turnedDown(failed);
+        reload(failed);
+    }
+
+    // the days of the rows turned down are caught up with the store only after the batch, so the rows
+    // booked after them are counted
+    private void reload(List<Booking> failed) throws SQLException {
+        for (Booking booking : failed) {
+            availability.reload(store, booking.getDate(), booking.getCaregiver());
+        }
+    }
+
+    // the store turned these rows down: their doses go back
+    private void turnedDown(List<Booking> failed) {
+        for (Booking booking : failed) {
+            inventory.restore(booking.getVaccine(), 1);
+        }
+    }
+
+    // the rows from index on were not booked: their places and doses go back
+    private void giveBack(List<Booking> batch, int from) {
+        for (Booking booking : batch.subList(from, batch.size())) {
+            availability.release(booking.getDate(), new SlotClaim(booking.getCaregiver(), booking.getSlot()));
+            inventory.restore(booking.getVaccine(), 1);
+        }
+    }
+
+    private static class Entry {
+        private final String patient;
+        private final String vaccine;
+        private final LocalDate from;
+        private final LocalDate to;
+        // a place is held for them by a match that has not finished yet
+        private boolean claimed = false;
+        private Appointment appointment = null;
+
+        private Entry(String patient, String vaccine, LocalDate from, LocalDate to) {
+            this.patient = patient;
+            this.vaccine = vaccine;
+            this.from = from;
+            this.to = to;
+        }
+    }
+}
@@ -0,0 +1,250 @@
+package scheduler.snapshot;
+
+import scheduler.db.ChangeSet;
+import scheduler.db.Tombstones;
+import scheduler.model.Availability;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Date;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * A copy of the rows the scheduler keeps in memory (caregiver days with their bookings, vaccine doses and
+ * account usernames) as of a change version of one database, which can be written to a local file and read
+ * back. Bringing it up to date takes only the rows changed or deleted since that version (see
+ * {@link #apply}).
+ *
+ * The file is binary: a header (magic, format, source, version, time taken), the usernames, the vaccines,
+ * the caregiver days with their per-slot bookings, and a CRC32 of everything before it. It is written to a
+ * temporary file and moved into place, so a crash leaves the previous snapshot, and read through a
+ * read-only memory mapping.
+ */
+public class Snapshot {
+
+    static final int MAGIC = 0x53534e50;  // "SSNP"
+    static final int FORMAT = 1;
+
+    private final String source;
+    private long version = 0;
+    private long takenAt = 0;
+    private final Set<String> patients = new LinkedHashSet<>();
+    private final Set<String> caregivers = new LinkedHashSet<>();
+    private final Map<String, Integer> doses = new TreeMap<>();
+    // date -> caregiver -> the day with its bookings
+    private final NavigableMap<Date, Map<String, Availability>> availabilities = new TreeMap<>();
+
+    // an empty snapshot of the database, at version 0
+    public Snapshot(String source) {
+        this.source = source;
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    // the change version to fetch changed rows from
+    public synchronized long getVersion() {
+        return version;
+    }
+
+    // when it was last brought up to date, in milliseconds since the epoch
+    public synchronized long getTakenAt() {
+        return takenAt;
+    }
+
+    // takes in the changed rows; a changed day replaces the copy held, with all its bookings, deleted rows
+    // are dropped first (a row deleted and added again is in both), and a complete change set replaces
+    // everything
+    public synchronized void apply(ChangeSet changes) {
+        if (changes.isComplete()) {
+            patients.clear();
+            caregivers.clear();
+            doses.clear();
+            availabilities.clear();
+        }
+        Tombstones deleted = changes.getDeleted();
+        patients.removeAll(deleted.getPatients());
+        caregivers.removeAll(deleted.getCaregivers());
+        doses.keySet().removeAll(deleted.getVaccines());
+        for (Map.Entry<Date, Set<String>> day : deleted.getAvailabilities().entrySet()) {
+            Map<String, Availability> onDate = availabilities.get(day.getKey());
+            if (onDate != null) {
+                onDate.keySet().removeAll(day.getValue());
+                if (onDate.isEmpty()) {
+                    availabilities.remove(day.getKey());
+                }
+            }
+        }
+        patients.addAll(changes.getPatients());
+        caregivers.addAll(changes.getCaregivers());
+        doses.putAll(changes.getVaccines());
+        for (Availability day : changes.getAvailabilities()) {
+            availabilities.computeIfAbsent(day.getDate(), d -> new HashMap<>()).put(day.getCaregiver(), day);
+        }
+        version = changes.getVersion();
+        takenAt = System.currentTimeMillis();
+    }
+
+    public synchronized List<String> getPatients() {
+        return new ArrayList<>(patients);
+    }
+
+    public synchronized List<String> getCaregivers() {
+        return new ArrayList<>(caregivers);
+    }
+
+    // vaccine name -> doses, ordered by name
+    public synchronized Map<String, Integer> getDoses() {
+        return new TreeMap<>(doses);
+    }
+
+    // ordered by date
+    public synchronized List<Availability> getAvailabilities() {
+        List<Availability> all = new ArrayList<>();
+        for (Map<String, Availability> days : availabilities.values()) {
+            all.addAll(days.values());
+        }
+        return all;
+    }
+
+    // rows held, for reporting
+    public synchronized int size() {
+        int days = 0;
+        for (Map<String, Availability> onDate : availabilities.values()) {
+            days += onDate.size();
+        }
+        return patients.size() + caregivers.size() + doses.size() + days;
+    }
+
+    public synchronized void write(Path file) throws IOException {
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        CRC32 crc = new CRC32();
+        try (FileOutputStream stream = new FileOutputStream(temporary.toFile())) {
+            DataOutputStream out =
+                    new DataOutputStream(new CheckedOutputStream(new BufferedOutputStream(stream), crc));
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT);
+            writeString(out, source);
+            out.writeLong(version);
+            out.writeLong(takenAt);
+            writeStrings(out, patients);
+            writeStrings(out, caregivers);
+            out.writeInt(doses.size());
+            for (Map.Entry<String, Integer> vaccine : doses.entrySet()) {
+                writeString(out, vaccine.getKey());
+                out.writeInt(vaccine.getValue());
+            }
+            List<Availability> days = getAvailabilities();
+            out.writeInt(days.size());
+            for (Availability day : days) {
+                out.writeLong(day.getDate().toLocalDate().toEpochDay());
+                writeString(out, day.getCaregiver());
+                writeString(out, day.getLocation());
+                out.writeInt(day.getStart().toSecondOfDay());
+                out.writeShort(day.getSlotMinutes());
+                out.writeByte(day.getSlots());
+                out.writeShort(day.getSlotCapacity());
+                for (int slot = 0; slot < day.getSlots(); slot++) {
+                    out.writeShort(day.getBooked(slot));
+                }
+            }
+            out.flush();
+            // the checksum goes straight to the file, after everything it covers
+            new DataOutputStream(stream).writeInt((int) crc.getValue());
+            stream.getFD().sync();
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // returns null if there is no snapshot file
+    public static Snapshot read(Path file) throws IOException {
+        if (!Files.exists(file)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (in.limit() < 12 || in.getInt(0) != MAGIC || in.getInt(4) != FORMAT) {
+                throw new IOException(file + " is not a format " + FORMAT + " scheduler snapshot");
+            }
+            CRC32 crc = new CRC32();
+            crc.update(in.slice(0, in.limit() - 4));
+            if ((int) crc.getValue() != in.getInt(in.limit() - 4)) {
+                throw new IOException(file + " is damaged (checksum mismatch)");
+            }
+            in.position(8);
+            Snapshot snapshot = new Snapshot(readString(in));
+            snapshot.version = in.getLong();
+            snapshot.takenAt = in.getLong();
+            readStrings(in, snapshot.patients);
+            readStrings(in, snapshot.caregivers);
+            for (int i = in.getInt(); i > 0; i--) {
+                snapshot.doses.put(readString(in), in.getInt());
+            }
+            for (int i = in.getInt(); i > 0; i--) {
+                Date date = Date.valueOf(LocalDate.ofEpochDay(in.getLong()));
+                String caregiver = readString(in);
+                String location = readString(in);
+                LocalTime start = LocalTime.ofSecondOfDay(in.getInt());
+                int slotMinutes = in.getShort();
+                int[] booked = new int[in.get()];
+                int slotCapacity = in.getShort();
+                for (int slot = 0; slot < booked.length; slot++) {
+                    booked[slot] = in.getShort();
+                }
+                snapshot.availabilities.computeIfAbsent(date, d -> new HashMap<>()).put(caregiver,
+                        new Availability(date, caregiver, location, start, slotMinutes, slotCapacity, booked));
+            }
+            return snapshot;
+        } catch (BufferUnderflowException e) {
+            throw new IOException(file + " is truncated", e);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+    private static void writeStrings(DataOutputStream out, Set<String> values) throws IOException {
+        out.writeInt(values.size());
+        for (String value : values) {
+            writeString(out, value);
+        }
+    }
+
+    private static String readString(ByteBuffer in) {
+        byte[] bytes = new byte[in.getShort() & 0xffff];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void readStrings(ByteBuffer in, Set<String> values) {
+        for (int i = in.getInt(); i > 0; i--) {
+            values.add(readString(in));
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package scheduler.snapshot;
+
+import scheduler.db.ChangeSet;
+import scheduler.db.Store;
+import scheduler.db.Stores;
+import scheduler.util.Util;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.SQLException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Starts the in-memory state (availability index, dose inventory, username filters) from a snapshot on
+ * local disk instead of reading whole tables from the database.
+ *
+ * Set SchedulerSnapshot to a directory to turn it on. At startup the snapshot there is read and brought up
+ * to date with the rows changed since it was taken, which the database finds through the rowversion
+ * indexes; the first start, or a snapshot of another database, reads everything once. A background thread
+ * then repeats the catch-up and rewrites the snapshot every SchedulerSnapshotIntervalSec (default 300)
+ * seconds, so the next start has little to fetch. Without SchedulerSnapshot the services load from the
+ * store as before.
+ */
+public class WarmStart {
+
+    private static final String FILE = "scheduler.snapshot";
+
+    private static boolean started = false;
+    private static WarmStart instance = null;
+
+    private final Store store;
+    private final Path file;
+    private Snapshot snapshot;
+    // what the last catch-up took, for stats
+    private int changedRows = 0;
+    private long loadMillis = 0;
+
+    // the warm start the services load from, or null if SchedulerSnapshot is not set
+    public static synchronized WarmStart get() throws SQLException {
+        if (!started) {
+            started = true;
+            String dir = System.getenv("SchedulerSnapshot");
+            if (dir != null && !dir.isEmpty()) {
+                WarmStart warmStart = new WarmStart(Stores.get(), Paths.get(dir).resolve(FILE));
+                warmStart.load();
+                warmStart.startWriting(Util.envInt("SchedulerSnapshotIntervalSec", 300, 1));
+                instance = warmStart;
+            }
+        }
+        return instance;
+    }
+
+    // the warm start if it already ran, without starting one
+    public static synchronized WarmStart getExisting() {
+        return instance;
+    }
+
+    public WarmStart(Store store, Path file) {
+        this.store = store;
+        this.file = file;
+    }
+
+    // reads the snapshot, catches it up with the store and writes it back
+    public synchronized void load() throws SQLException {
+        long start = System.nanoTime();
+        String source = store.getChangeSource();
+        Snapshot read = null;
+        try {
+            read = Snapshot.read(file);
+        } catch (IOException e) {
+            System.out.println("Ignoring the snapshot in " + file + ": " + e.getMessage());
+        }
+        snapshot = read != null && read.getSource().equals(source) ? read : new Snapshot(source);
+        ChangeSet changes = store.getChangesSince(snapshot.getVersion());
+        if (changes.getVersion() < snapshot.getVersion()) {
+            // the database went back in time (restored from a backup): the snapshot is ahead of it
+            snapshot = new Snapshot(source);
+            changes = store.getChangesSince(0);
+        }
+        snapshot.apply(changes);
+        changedRows = changes.size();
+        loadMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        save();
+    }
+
+    // fetches the rows changed since the last catch-up and rewrites the snapshot
+    public synchronized void refresh() throws SQLException {
+        ChangeSet changes = store.getChangesSince(snapshot.getVersion());
+        snapshot.apply(changes);
+        changedRows = changes.size();
+        save();
+    }
+
+    public synchronized Snapshot getSnapshot() {
+        return snapshot;
+    }
+
+    // rows fetched from the store by the last load or refresh
+    public synchronized int getChangedRows() {
+        return changedRows;
+    }
+
+    // how long the startup load took, snapshot and catch-up together
+    public synchronized long getLoadMillis() {
+        return loadMillis;
+    }
+
+    private void save() {
+        try {
+            Files.createDirectories(file.getParent());
+            snapshot.write(file);
+        } catch (IOException e) {
+            // the next start just has more to catch up on
+            System.out.println("Error occurred when writing the snapshot to " + file);
+            e.printStackTrace();
+        }
+    }
+
+    private void startWriting(int intervalSeconds) {
+        ScheduledExecutorService writer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "snapshot-writer");
+            t.setDaemon(true);
+            return t;
+        });
+        writer.scheduleWithFixedDelay(() -> {
+            try {
+                refresh();
+            } catch (SQLException e) {
+                System.out.println("Error occurred when refreshing the snapshot.");
+                e.printStackTrace();
+            }
+        }, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,32 @@
+package scheduler.tools;
+
+import scheduler.db.ConnectionPool;
+import scheduler.db.QueryPlans;
+import scheduler.db.Stores;
+
+import java.sql.Connection;
+import java.util.List;
+
+/**
+ * Verifies that the listing and availability lookups use the indexes from the schema migrations
+ * (see {@link QueryPlans}). Applies pending migrations first. Exits with status 1 if any check fails,
+ * so it can gate a deployment.
+ *
+ * Usage: CheckQueryPlans (against the SQL Server database configured in the environment)
+ */
+public class CheckQueryPlans {
+
+    public static void main(String[] args) throws Exception {
+        Stores.get().migrate();
+        List<String> results;
+        try (Connection con = ConnectionPool.getInstance().borrow()) {
+            results = QueryPlans.verify(con);
+        }
+        boolean failed = false;
+        for (String result : results) {
+            System.out.println(result);
+            failed |= result.startsWith("FAIL");
+        }
+        System.exit(failed ? 1 : 0);
+    }
+}
@@ -0,0 +1,362 @@
+package scheduler.tools;
+
+import scheduler.Scheduler;
+import scheduler.Session;
+import scheduler.db.AppointmentQuery;
+import scheduler.db.Credentials;
+import scheduler.db.Store;
+import scheduler.db.Stores;
+import scheduler.metrics.LatencyHistogram;
+import scheduler.model.Availability;
+import scheduler.service.AvailabilityIndex;
+import scheduler.service.DoseInventory;
+import scheduler.service.UsernameFilter;
+import scheduler.util.PasswordHasher;
+import scheduler.util.Util;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Date;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Simulates a reservation storm: many patients logging in, searching and reserving the same few dates.
+ *
+ * Usage: LoadGenerator [key=value ...]
+ *   patients=2000 caregivers=100 days=30 slots=1 capacity=1 doses=(caregivers*days*slots*capacity)
+ *   threads=32 seconds=30 rate=0
+ *   hot=2 hotShare=80 mix=create:5,login:10,search:20,reserve:50,show:15
+ *
+ * Seeds the patients, caregivers, their availability for the next {@code days} days ({@code slots}
+ * 15-minute slots a day from 09:00, each taking {@code capacity} patients) and one vaccine
+ * into the configured store (set SchedulerStore=embedded to run without a database). Then every thread
+ * runs commands through Scheduler.execute on its own session, as a server connection would. The
+ * commands are picked at random by the weights in {@code mix}. hotShare percent of reservations go to
+ * the first {@code hot} days.
+ *
+ * rate is the total number of commands per second across all threads; 0 means as fast as possible.
+ * With a rate, each command's latency is measured from when it was due, not when it started, so a
+ * stall also counts against the commands queued behind it.
+ *
+ * Logins and account creations hash the password with the configured settings, which are meant to be
+ * slow; lower HashIterations to measure the rest of the command path under a login-heavy mix.
+ *
+ * At the end it reports throughput and latency percentiles per command. It also checks that no
+ * caregiver's time slot was booked past its capacity, reports how evenly the appointments were spread
+ * over the caregivers of each date, and checks that the vaccine's stored doses equal the seeded doses
+ * minus the appointments made.
+ */
+public class LoadGenerator {
+
+    private static final String PASSWORD = "load-password";
+    private static final String[] OPERATIONS = {"create", "login", "search", "reserve", "show"};
+
+    private final Map<String, String> options = new HashMap<>();
+    private final String run = Long.toString(System.currentTimeMillis(), 36);
+    private final String vaccine = "load-" + run;
+    private final LocalDate firstDay = LocalDate.now().plusYears(1);
+
+    private int patients;
+    private int caregivers;
+    private int days;
+    private int slots;
+    private int capacity;
+    private int doses;
+    private int hot;
+    private int hotShare;
+    private final int[] weights = new int[OPERATIONS.length];
+    private int totalWeight;
+
+    private final Map<String, LatencyHistogram> latency = new LinkedHashMap<>();
+    private final Map<String, LongAdder> succeeded = new LinkedHashMap<>();
+    private final AtomicInteger nextCreated = new AtomicInteger();
+    private final LongAdder errors = new LongAdder();
+
+    public static void main(String[] args) throws Exception {
+        LoadGenerator generator = new LoadGenerator();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq < 0) {
+                System.out.println("Ignoring " + arg + " (expected key=value)");
+                continue;
+            }
+            generator.options.put(arg.substring(0, eq), arg.substring(eq + 1));
+        }
+        generator.run();
+    }
+
+    private int option(String name, int defaultValue) {
+        String value = options.get(name);
+        return value == null ? defaultValue : Integer.parseInt(value);
+    }
+
+    private void run() throws Exception {
+        patients = option("patients", 2000);
+        caregivers = option("caregivers", 100);
+        days = option("days", 30);
+        slots = option("slots", 1);
+        capacity = option("capacity", 1);
+        doses = option("doses", caregivers * days * slots * capacity);
+        hot = Math.max(1, Math.min(days, option("hot", 2)));
+        hotShare = option("hotShare", 80);
+        int threads = option("threads", 32);
+        int seconds = option("seconds", 30);
+        int rate = option("rate", 0);
+        parseMix(options.getOrDefault("mix", "create:5,login:10,search:20,reserve:50,show:15"));
+        for (String operation : OPERATIONS) {
+            latency.put(operation, new LatencyHistogram());
+            succeeded.put(operation, new LongAdder());
+        }
+
+        Store store = Stores.get();
+        store.migrate();
+        long seedStart = System.nanoTime();
+        seed(store);
+        // load the indexes from what was just seeded
+        AvailabilityIndex.get();
+        DoseInventory.get();
+        UsernameFilter.patients();
+        UsernameFilter.caregivers();
+        System.out.printf("seeded %d patients, %d caregivers x %d days, %d doses of %s in %.1f s%n",
+                patients, caregivers, days, doses, vaccine, (System.nanoTime() - seedStart) / 1e9);
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        // each thread issues its share of the rate, evenly spaced
+        long intervalNanos = rate > 0 ? TimeUnit.SECONDS.toNanos(threads) / rate : 0;
+        CountDownLatch done = new CountDownLatch(threads);
+        long begin = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            new Thread(() -> {
+                try {
+                    drive(deadline, intervalNanos);
+                } catch (Exception e) {
+                    errors.increment();
+                    e.printStackTrace();
+                } finally {
+                    done.countDown();
+                }
+            }, "load-" + t).start();
+        }
+        done.await();
+        double elapsed = (System.nanoTime() - begin) / 1e9;
+
+        report(elapsed);
+        verify(store);
+    }
+
+    private void parseMix(String mix) {
+        for (String part : mix.split(",")) {
+            String[] kv = part.split(":");
+            int index = List.of(OPERATIONS).indexOf(kv[0].trim());
+            if (index < 0 || kv.length != 2) {
+                throw new IllegalArgumentException("Unknown mix entry " + part + ", expected one of "
+                        + String.join(", ", OPERATIONS) + " with a weight, e.g. reserve:50");
+            }
+            weights[index] = Integer.parseInt(kv[1].trim());
+        }
+        for (int weight : weights) {
+            totalWeight += weight;
+        }
+        if (totalWeight <= 0) {
+            throw new IllegalArgumentException("The mix needs at least one positive weight");
+        }
+    }
+
+    private void seed(Store store) throws SQLException {
+        byte[] salt = Util.generateSalt();
+        Credentials credentials = new Credentials(salt, PasswordHasher.get().hash(PASSWORD, salt));
+        Map<String, Credentials> patientAccounts = new LinkedHashMap<>();
+        for (int p = 0; p < patients; p++) {
+            patientAccounts.put(patient(p), credentials);
+        }
+        store.insertPatients(patientAccounts);
+        Map<String, Credentials> caregiverAccounts = new LinkedHashMap<>();
+        for (int c = 0; c < caregivers; c++) {
+            caregiverAccounts.put("lc-" + run + "-" + c, credentials);
+        }
+        store.insertCaregivers(caregiverAccounts);
+        for (String caregiver : caregiverAccounts.keySet()) {
+            List<Availability> availabilities = new ArrayList<>();
+            for (int d = 0; d < days; d++) {
+                availabilities.add(new Availability(Date.valueOf(firstDay.plusDays(d)), caregiver, "loc01",
+                        LocalTime.of(9, 0), 15, slots, capacity));
+            }
+            store.insertAvailabilities(availabilities);
+        }
+        store.insertVaccine(vaccine, doses);
+    }
+
+    private String patient(int p) {
+        return "lp-" + run + "-" + p;
+    }
+
+    private void drive(long deadline, long intervalNanos) throws SQLException, InterruptedException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        Session session = new Session(output, StandardCharsets.UTF_8, false);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        // results come back as records, which are easier to check than prose
+        Scheduler.execute(session, "output_format jsonl");
+        String loggedIn = null;
+        long due = System.nanoTime();
+
+        while (System.nanoTime() < deadline) {
+            if (intervalNanos > 0) {
+                due += intervalNanos;
+                long wait = due - System.nanoTime();
+                if (wait > 0) {
+                    TimeUnit.NANOSECONDS.sleep(wait);
+                }
+            } else {
+                due = System.nanoTime();
+            }
+            String operation = pick(random);
+            // get the session into the state the command needs; this part is not timed
+            if (operation.equals("create") || operation.equals("login")) {
+                if (loggedIn != null) {
+                    Scheduler.execute(session, "logout");
+                    loggedIn = null;
+                }
+            } else if (loggedIn == null) {
+                String patient = patient(random.nextInt(patients));
+                output.reset();
+                Scheduler.execute(session, "login_patient " + patient + " " + PASSWORD);
+                loggedIn = patient;
+            }
+
+            String command;
+            switch (operation) {
+                case "create":
+                    command = "create_patient lx-" + run + "-" + nextCreated.getAndIncrement() + " " + PASSWORD;
+                    break;
+                case "login":
+                    command = "login_patient " + patient(random.nextInt(patients)) + " " + PASSWORD;
+                    break;
+                case "search":
+                    command = "search_caregiver_schedule " + date(random);
+                    break;
+                case "reserve":
+                    command = "reserve " + date(random) + " " + vaccine;
+                    break;
+                default:
+                    command = "show_appointments";
+            }
+            output.reset();
+            long start = intervalNanos > 0 ? due : System.nanoTime();
+            try {
+                Scheduler.execute(session, command);
+            } catch (SQLException | RuntimeException e) {
+                errors.increment();
+            }
+            latency.get(operation).recordNanos(System.nanoTime() - start);
+            if (succeeded(operation, output.toString(StandardCharsets.UTF_8))) {
+                succeeded.get(operation).increment();
+            }
+            if (operation.equals("create") || operation.equals("login")) {
+                // both leave the session logged in when they work
+                loggedIn = session.isLoggedIn() ? command.split(" ")[1] : null;
+            }
+        }
+    }
+
+    private static boolean succeeded(String operation, String output) {
+        switch (operation) {
+            case "create":
+                return output.contains("Account created successfully");
+            case "login":
+                return output.contains("Patient logged in");
+            case "reserve":
+                return output.contains("\"type\":\"appointment\"");
+            default:
+                return !output.contains("Error occurred");
+        }
+    }
+
+    private String pick(ThreadLocalRandom random) {
+        int r = random.nextInt(totalWeight);
+        for (int i = 0; i < OPERATIONS.length; i++) {
+            r -= weights[i];
+            if (r < 0) {
+                return OPERATIONS[i];
+            }
+        }
+        return OPERATIONS[OPERATIONS.length - 1];
+    }
+
+    private LocalDate date(ThreadLocalRandom random) {
+        int day = random.nextInt(100) < hotShare ? random.nextInt(hot) : random.nextInt(days);
+        return firstDay.plusDays(day);
+    }
+
+    private void report(double elapsed) {
+        long total = 0;
+        System.out.printf("%n%-8s %9s %9s %10s %9s %9s %9s %9s%n", "command", "count", "ok", "per sec",
+                "p50 ms", "p99 ms", "p99.9 ms", "max ms");
+        for (String operation : OPERATIONS) {
+            LatencyHistogram histogram = latency.get(operation);
+            long count = histogram.getCount();
+            total += count;
+            System.out.printf("%-8s %9d %9d %10.0f %9.2f %9.2f %9.2f %9.2f%n", operation, count,
+                    succeeded.get(operation).sum(), count / elapsed, histogram.getPercentile(50) / 1e3,
+                    histogram.getPercentile(99) / 1e3, histogram.getPercentile(99.9) / 1e3,
+                    histogram.getMax() / 1e3);
+        }
+        System.out.printf("total %d commands in %.1f s -> %.0f commands/s, %d errors%n", total, elapsed,
+                total / elapsed, errors.sum());
+    }
+
+    private void verify(Store store) throws SQLException {
+        DoseInventory.get().flush();
+        // date -> appointments per caregiver
+        Map<Date, int[]> booked = new HashMap<>();
+        // caregiver, date and time -> appointments in that slot
+        Map<String, Integer> perSlot = new HashMap<>();
+        int[] appointments = {0};
+        for (int c = 0; c < caregivers; c++) {
+            int caregiver = c;
+            store.streamAppointments(AppointmentQuery.forCaregiver("lc-" + run + "-" + c), appointment -> {
+                if (!appointment.getVaccine().equals(vaccine)) {
+                    return;
+                }
+                appointments[0]++;
+                booked.computeIfAbsent(appointment.getDate(), d -> new int[caregivers])[caregiver]++;
+                perSlot.merge(caregiver + "@" + appointment.getDate() + "T" + appointment.getTime(), 1,
+                        Integer::sum);
+            });
+        }
+        int overbooked = 0;
+        for (int count : perSlot.values()) {
+            overbooked += Math.max(0, count - capacity);
+        }
+        // the largest difference between the busiest and the least busy caregiver of a date
+        int maxSpread = 0;
+        for (int[] perCaregiver : booked.values()) {
+            int least = Integer.MAX_VALUE;
+            int most = 0;
+            for (int count : perCaregiver) {
+                least = Math.min(least, count);
+                most = Math.max(most, count);
+            }
+            maxSpread = Math.max(maxSpread, most - least);
+        }
+        Integer stored = store.getDoses(vaccine);
+        Integer counted = DoseInventory.get().getAvailable(vaccine);
+        int expected = doses - appointments[0];
+        int doseErrors = Math.abs((stored == null ? 0 : stored) - expected)
+                + Math.abs((counted == null ? 0 : counted) - expected);
+        System.out.printf("appointments=%d, overbooked=%d, max spread per date=%d, doses stored=%s in memory=%s "
+                + "(expected %d), dose-accounting errors=%d%n", appointments[0], overbooked, maxSpread, stored,
+                counted, expected, doseErrors);
+    }
+}
@@ -0,0 +1,78 @@
+package scheduler.tools;
+
+import scheduler.journal.Event;
+import scheduler.journal.JournalReader;
+import scheduler.journal.JournalReplay;
+import scheduler.model.Availability;
+import scheduler.service.AssignmentPolicy;
+import scheduler.service.AvailabilityIndex;
+
+import java.nio.file.Paths;
+import java.sql.Date;
+import java.util.Map;
+
+/**
+ * Reads an event journal (see scheduler.journal.Journal) and rebuilds the scheduler's data from it.
+ *
+ * Usage: ReplayJournal <journal_dir> [from=1] [print=false]
+ *
+ * With print=true every event from sequence number {@code from} on is printed as it is read. At the end it
+ * reports how many events of each type there were, the accounts, each vaccine's doses, and the caregiver
+ * days with the places still open, all as the store should hold them (for from=1). Rebuilding the
+ * availability index this way takes no reads from the database.
+ */
+public class ReplayJournal {
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.out.println("Usage: ReplayJournal <journal_dir> [from=1] [print=false]");
+            System.exit(2);
+        }
+        long from = 1;
+        boolean print = false;
+        for (int i = 1; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.startsWith("from=")) {
+                from = Long.parseLong(arg.substring("from=".length()));
+            } else if (arg.startsWith("print=")) {
+                print = Boolean.parseBoolean(arg.substring("print=".length()));
+            } else {
+                System.out.println("Ignoring " + arg + " (expected from= or print=)");
+            }
+        }
+
+        JournalReplay replay = new JournalReplay();
+        boolean echo = print;
+        long start = System.nanoTime();
+        long last = new JournalReader(Paths.get(args[0])).replay(from, event -> {
+            if (echo) {
+                System.out.println(event);
+            }
+            replay.accept(event);
+        });
+        AvailabilityIndex index = replay.buildIndex(AssignmentPolicy.LEAST_LOADED);
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        int events = 0;
+        for (int count : replay.getCounts().values()) {
+            events += count;
+        }
+        System.out.printf("replayed %d events (%d to %d) in %.3f s%n", events, from, last, seconds);
+        for (Map.Entry<Event.Type, Integer> count : replay.getCounts().entrySet()) {
+            System.out.printf("  %-20s %d%n", count.getKey(), count.getValue());
+        }
+        System.out.println("patients: " + replay.getPatients().size() + ", caregivers: "
+                + replay.getCaregivers().size() + ", appointments: " + replay.getAppointments().size());
+        for (Map.Entry<String, Integer> vaccine : replay.getDoses().entrySet()) {
+            System.out.println("vaccine " + vaccine.getKey() + ": " + vaccine.getValue() + " dose(s)");
+        }
+        for (Map.Entry<Date, Map<String, Availability>> day : replay.getAvailabilities().entrySet()) {
+            int capacity = 0;
+            for (Availability availability : day.getValue().values()) {
+                capacity += availability.getCapacity();
+            }
+            System.out.println("date " + day.getKey() + ": " + day.getValue().size() + " caregiver(s), "
+                    + index.getRemaining(day.getKey()) + " of " + capacity + " place(s) open");
+        }
+    }
+}
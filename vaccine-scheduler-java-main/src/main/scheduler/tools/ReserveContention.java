@@ -0,0 +1,122 @@
+package scheduler.tools;
+
+import scheduler.db.Store;
+import scheduler.db.Stores;
+import scheduler.model.Appointment;
+import scheduler.model.Availability;
+import scheduler.model.Reservation;
+import scheduler.service.AvailabilityIndex;
+import scheduler.service.DoseInventory;
+import scheduler.service.ReservationEngine;
+import scheduler.util.Util;
+
+import java.sql.Date;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Measures reservation throughput when many patients reserve the same few dates at once.
+ *
+ * Usage: ReserveContention [threads] [caregivers] [days] [doses]
+ *
+ * Seeds a vaccine, caregivers and their availability into the configured store (set SchedulerStore=embedded
+ * to run without a database), lets every thread reserve until the slots run out, then checks that no
+ * caregiver was booked twice on a date and that the dose count adds up.
+ */
+public class ReserveContention {
+
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+        int caregivers = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        int days = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+        int doses = args.length > 3 ? Integer.parseInt(args[3]) : caregivers * days;
+
+        Store store = Stores.get();
+        store.migrate();
+        String run = Long.toString(System.currentTimeMillis(), 36);
+        String vaccine = "bench-" + run;
+        LocalDate firstDay = LocalDate.now().plusYears(1);
+
+        byte[] salt = Util.generateSalt();
+        byte[] hash = Util.generateHash("bench", salt);
+        store.insertVaccine(vaccine, doses);
+        for (int c = 0; c < caregivers; c++) {
+            String caregiver = "c-" + run + "-" + c;
+            store.insertCaregiver(caregiver, salt, hash);
+            for (int d = 0; d < days; d++) {
+                store.insertAvailability(new Availability(Date.valueOf(firstDay.plusDays(d)), caregiver, "loc01",
+                        LocalTime.of(9, 0), 15, 1, 1));
+            }
+        }
+        for (int t = 0; t < threads; t++) {
+            store.insertPatient("p-" + run + "-" + t, salt, hash);
+        }
+
+        AvailabilityIndex availability = new AvailabilityIndex();
+        availability.load(store);
+        DoseInventory inventory = new DoseInventory(store);
+        inventory.load();
+        ReservationEngine engine = new ReservationEngine(store, availability, inventory);
+        AtomicInteger nextDay = new AtomicInteger();
+        AtomicInteger errors = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            String patient = "p-" + run + "-" + t;
+            new Thread(() -> {
+                try {
+                    start.await();
+                    int misses = 0;
+                    // keep going until every date has been tried without success
+                    while (misses < days) {
+                        Date date = Date.valueOf(firstDay.plusDays(nextDay.getAndIncrement() % days));
+                        Reservation reservation = engine.reserve(patient, date, vaccine);
+                        if (reservation.isReserved()) {
+                            misses = 0;
+                        } else if (reservation.getStatus() == Reservation.Status.NO_DOSES) {
+                            break;
+                        } else {
+                            misses++;
+                        }
+                    }
+                } catch (InterruptedException | SQLException e) {
+                    errors.incrementAndGet();
+                    e.printStackTrace();
+                } finally {
+                    done.countDown();
+                }
+            }).start();
+        }
+
+        long begin = System.nanoTime();
+        start.countDown();
+        done.await();
+        double seconds = (System.nanoTime() - begin) / 1e9;
+
+        Set<String> booked = new HashSet<>();
+        int doubleBooked = 0;
+        int appointments = 0;
+        for (int t = 0; t < threads; t++) {
+            for (Appointment appointment : store.getAppointmentsForPatient("p-" + run + "-" + t)) {
+                appointments++;
+                if (!booked.add(appointment.getCaregiver() + "@" + appointment.getDate())) {
+                    doubleBooked++;
+                }
+            }
+        }
+        inventory.flush();
+        int expected = Math.min(doses, caregivers * days);
+        Integer remaining = store.getDoses(vaccine);
+
+        System.out.printf("threads=%d attempts=%d reserved=%d in %.3f s -> %.0f reservations/s, avg %.1f us/attempt%n",
+                threads, engine.getAttempts(), engine.getReserved(), seconds, engine.getReserved() / seconds,
+                engine.getAverageMicros());
+        System.out.printf("appointments=%d (expected %d), double-booked=%d, doses left=%d (expected %d), errors=%d%n",
+                appointments, expected, doubleBooked, remaining, doses - appointments, errors.get());
+    }
+}
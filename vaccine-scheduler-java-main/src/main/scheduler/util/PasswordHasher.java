@@ -0,0 +1,288 @@
+package scheduler.util;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Hashes and checks passwords on a small, bounded pool of threads, so a burst of logins cannot take
+ * every core away from the other commands. When the pool's queue is full, new requests are rejected
+ * with a RejectedExecutionException rather than piling up. A hash that fails or is interrupted throws an
+ * IllegalStateException; the commands report either as a failed attempt.
+ *
+ * The algorithm, iteration count and key length come from the HashAlgorithm, HashIterations and
+ * HashKeyLength environment variables (defaults: the ones in Util). Every hash is stored with the settings
+ * it was made with (a short header before the key, see {@link #hash}), so it can still be checked after
+ * the settings change, however many times: {@link #verify} then reports that the password should be
+ * re-hashed with the current settings, which the login code does transparently. Hashes from before the
+ * header was added are bare keys of at most 16 bytes; they are checked with the current settings and the
+ * legacy ones they were made with (see Util).
+ * The key length is at most 512 bits, so a hash fits the VARBINARY(128) columns.
+ */
+public class PasswordHasher {
+
+    private static final Params LEGACY = new Params(Util.LEGACY_HASH_ALGORITHM, Util.LEGACY_HASH_STRENGTH,
+            Util.LEGACY_KEY_LENGTH);
+    private static final Params CURRENT = new Params(
+            Util.envString("HashAlgorithm", Util.HASH_ALGORITHM),
+            Util.envInt("HashIterations", Util.HASH_STRENGTH, 1),
+            Math.min(512, Util.envInt("HashKeyLength", Util.KEY_LENGTH, 8)));
+    // first byte of a hash stored with its settings; bare keys are never longer than BARE_KEY_BYTES
+    private static final byte HEADER = 1;
+    private static final int BARE_KEY_BYTES = 16;
+
+    private static PasswordHasher instance = null;
+
+    private final ThreadPoolExecutor executor;
+    private final LongAdder hashes = new LongAdder();
+    private final LongAdder hashNanos = new LongAdder();
+    private final AtomicLong maxHashNanos = new AtomicLong();
+    private final LongAdder rejected = new LongAdder();
+
+    public static synchronized PasswordHasher get() {
+        if (instance == null) {
+            int threads = Util.envInt("HashThreads", Math.max(1, Runtime.getRuntime().availableProcessors() / 2), 1);
+            instance = new PasswordHasher(threads, Util.envInt("HashQueueSize", 1000, 1));
+        }
+        return instance;
+    }
+
+    public static Params currentParams() {
+        return CURRENT;
+    }
+
+    public PasswordHasher(int threads, int queueSize) {
+        this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueSize), r -> {
+            Thread t = new Thread(r, "password-hasher");
+            t.setDaemon(true);
+            return t;
+        }, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * Hashes with the current settings. The result is what gets stored: HEADER, the algorithm name (one
+     * length byte, then ASCII), the iteration count (4 bytes) and the key length in bits (2 bytes), followed
+     * by the key.
+     */
+    public byte[] hash(String password, byte[] salt) {
+        return run(() -> encode(CURRENT, timedHash(password, salt, CURRENT)));
+    }
+
+    /**
+     * Hashes many passwords with the current settings on the hasher's threads, as {@link #hash} would one
+     * at a time (passwords and salts pair up by index). At most two per thread are queued at any moment,
+     * so a large import leaves room in the queue for logins arriving meanwhile.
+     */
+    public List<byte[]> hashAll(List<String> passwords, List<byte[]> salts) {
+        int window = 2 * executor.getMaximumPoolSize();
+        Deque<Future<byte[]>> pending = new ArrayDeque<>();
+        List<byte[]> hashes = new ArrayList<>(passwords.size());
+        try {
+            for (int i = 0; i < passwords.size(); i++) {
+                if (pending.size() == window) {
+                    hashes.add(await(pending.poll()));
+                }
+                String password = passwords.get(i);
+                byte[] salt = salts.get(i);
+                pending.add(submit(() -> encode(CURRENT, timedHash(password, salt, CURRENT))));
+            }
+            while (!pending.isEmpty()) {
+                hashes.add(await(pending.poll()));
+            }
+        } finally {
+            for (Future<byte[]> future : pending) {
+                future.cancel(true);
+            }
+        }
+        return hashes;
+    }
+
+    /**
+     * Checks a password against a stored hash with the settings stored in it. A bare key from before
+     * the settings were stored (trailing zero padding from the old BINARY column is ignored) is tried with
+     * the current settings, then the defaults, and always needs re-hashing.
+     */
+    public Verification verify(String password, byte[] salt, byte[] storedHash) {
+        return run(() -> {
+            Params params = paramsOf(storedHash);
+            if (params != null) {
+                if (!MessageDigest.isEqual(keyOf(storedHash, params), timedHash(password, salt, params))) {
+                    return Verification.NO_MATCH;
+                }
+                return params.equals(CURRENT) ? Verification.MATCH : Verification.MATCH_NEEDS_REHASH;
+            }
+            byte[] stored = Util.trim(storedHash);
+            if (matches(stored, timedHash(password, salt, CURRENT))
+                    || (!CURRENT.equals(LEGACY) && matches(stored, timedHash(password, salt, LEGACY)))) {
+                return Verification.MATCH_NEEDS_REHASH;
+            }
+            return Verification.NO_MATCH;
+        });
+    }
+
+    private static boolean matches(byte[] stored, byte[] calculated) {
+        return MessageDigest.isEqual(stored, Util.trim(calculated));
+    }
+
+    private static byte[] encode(Params params, byte[] key) {
+        byte[] algorithm = params.getAlgorithm().getBytes(StandardCharsets.US_ASCII);
+        ByteBuffer encoded = ByteBuffer.allocate(headerLength(params) + key.length);
+        encoded.put(HEADER).put((byte) algorithm.length).put(algorithm);
+        encoded.putInt(params.getIterations()).putShort((short) params.getKeyLength()).put(key);
+        return encoded.array();
+    }
+
+    // the settings stored in the hash, or null for a bare key
+    private static Params paramsOf(byte[] stored) {
+        if (stored.length <= BARE_KEY_BYTES || stored[0] != HEADER) {
+            return null;
+        }
+        ByteBuffer in = ByteBuffer.wrap(stored, 1, stored.length - 1);
+        byte[] algorithm = new byte[in.get() & 0xff];
+        if (in.remaining() < algorithm.length + 6) {
+            return null;
+        }
+        in.get(algorithm);
+        return new Params(new String(algorithm, StandardCharsets.US_ASCII), in.getInt(), in.getShort());
+    }
+
+    private static int headerLength(Params params) {
+        return 2 + params.getAlgorithm().length() + 4 + 2;
+    }
+
+    private static byte[] keyOf(byte[] stored, Params params) {
+        int start = headerLength(params);
+        byte[] key = new byte[stored.length - start];
+        System.arraycopy(stored, start, key, 0, key.length);
+        return key;
+    }
+
+    private byte[] timedHash(String password, byte[] salt, Params params) {
+        long start = System.nanoTime();
+        byte[] hash = Util.generateHash(password, salt, params.getAlgorithm(), params.getIterations(),
+                params.getKeyLength());
+        long took = System.nanoTime() - start;
+        hashes.increment();
+        hashNanos.add(took);
+        maxHashNanos.accumulateAndGet(took, Math::max);
+        return hash;
+    }
+
+    private <T> T run(Callable<T> task) {
+        return await(submit(task));
+    }
+
+    private <T> Future<T> submit(Callable<T> task) {
+        try {
+            return executor.submit(task);
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            throw e;
+        }
+    }
+
+    private static <T> T await(Future<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.cancel(true);
+            throw new IllegalStateException("Interrupted while hashing", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    public long getHashCount() {
+        return hashes.sum();
+    }
+
+    // average time of one hash, in microseconds
+    public double getAverageMicros() {
+        long n = hashes.sum();
+        return n == 0 ? 0 : hashNanos.sum() / 1000.0 / n;
+    }
+
+    public double getMaxMicros() {
+        return maxHashNanos.get() / 1000.0;
+    }
+
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    // hashes waiting for a thread
+    public int getQueued() {
+        return executor.getQueue().size();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("hashes=%d avg=%.1fus max=%.1fus queued=%d rejected=%d (%s)", getHashCount(),
+                getAverageMicros(), getMaxMicros(), getQueued(), getRejectedCount(), CURRENT);
+    }
+
+    public enum Verification {
+        MATCH,
+        MATCH_NEEDS_REHASH,
+        NO_MATCH
+    }
+
+    public static class Params {
+        private final String algorithm;
+        private final int iterations;
+        private final int keyLength;
+
+        public Params(String algorithm, int iterations, int keyLength) {
+            this.algorithm = algorithm;
+            this.iterations = iterations;
+            this.keyLength = keyLength;
+        }
+
+        public String getAlgorithm() {
+            return algorithm;
+        }
+
+        public int getIterations() {
+            return iterations;
+        }
+
+        public int getKeyLength() {
+            return keyLength;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Params)) {
+                return false;
+            }
+            Params other = (Params) o;
+            return algorithm.equals(other.algorithm) && iterations == other.iterations
+                    && keyLength == other.keyLength;
+        }
+
+        @Override
+        public int hashCode() {
+            return (algorithm.hashCode() * 31 + iterations) * 31 + keyLength;
+        }
+
+        @Override
+        public String toString() {
+            return algorithm + "/" + iterations + "/" + keyLength;
+        }
+    }
+}
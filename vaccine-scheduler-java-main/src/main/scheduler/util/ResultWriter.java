@@ -0,0 +1,220 @@
+package scheduler.util;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.Locale;
+
+/**
+ * Renders command results to one buffered writer, as human-readable text or as a machine-readable
+ * stream of records.
+ *
+ * A record is written field by field: {@code begin(type)}, any number of {@code field(name, value)},
+ * then {@code end()}. In JSONL mode each record is one JSON object whose first member is
+ * {@code "type"}. In CSV mode each record is one line, quoted as in RFC 4180, whose first column is the
+ * type, followed by the values in the order they were written (there is no header row). Plain text
+ * lines written with {@link #println(String)} become {@code message} records in those modes. Values are
+ * escaped straight into the underlying writer, so no per-record strings are built. Not thread-safe;
+ * every session has its own writer.
+ */
+public class ResultWriter {
+
+    public enum Format {
+        TEXT, JSONL, CSV;
+
+        // accepts the names case-insensitively; returns null for anything else
+        public static Format parse(String name) {
+            try {
+                return valueOf(name.toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+        }
+    }
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final Writer out;
+    private Format format;
+    // scratch space for formatting numbers without allocating
+    private final char[] digits = new char[20];
+
+    public ResultWriter(Writer out, Format format) {
+        this.out = out;
+        this.format = format;
+    }
+
+    public Format getFormat() {
+        return format;
+    }
+
+    public void setFormat(Format format) {
+        this.format = format;
+    }
+
+    // true if results should be written as records rather than prose
+    public boolean isStructured() {
+        return format != Format.TEXT;
+    }
+
+    // a line of human-readable text; a message record in the structured formats
+    public void println(String text) {
+        if (format == Format.TEXT) {
+            write(text);
+            write('\n');
+        } else {
+            begin("message").field("text", text).end();
+        }
+    }
+
+    public ResultWriter begin(String type) {
+        if (format == Format.JSONL) {
+            write("{\"type\":");
+            jsonString(type);
+        } else {
+            csvValue(type);
+        }
+        return this;
+    }
+
+    public ResultWriter field(String name, String value) {
+        separator(name);
+        if (format == Format.JSONL) {
+            if (value == null) {
+                write("null");
+            } else {
+                jsonString(value);
+            }
+        } else if (value != null) {
+            csvValue(value);
+        }
+        return this;
+    }
+
+    public ResultWriter field(String name, long value) {
+        separator(name);
+        // numbers need no quoting in either format
+        int pos = digits.length;
+        boolean negative = value < 0;
+        do {
+            int digit = (int) (value % 10);
+            digits[--pos] = (char) ('0' + (negative ? -digit : digit));
+            value /= 10;
+        } while (value != 0);
+        if (negative) {
+            digits[--pos] = '-';
+        }
+        try {
+            out.write(digits, pos, digits.length - pos);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return this;
+    }
+
+    // non-finite values are written as null (JSONL) or left empty (CSV)
+    public ResultWriter field(String name, double value) {
+        if (!Double.isFinite(value)) {
+            return field(name, (String) null);
+        }
+        separator(name);
+        write(Double.toString(value));
+        return this;
+    }
+
+    public ResultWriter field(String name, Object value) {
+        return field(name, value == null ? null : value.toString());
+    }
+
+    public void end() {
+        write(format == Format.JSONL ? "}\n" : "\n");
+    }
+
+    public void flush() {
+        try {
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // the type always comes first, so every field follows something
+    private void separator(String name) {
+        write(',');
+        if (format == Format.JSONL) {
+            jsonString(name);
+            write(':');
+        }
+    }
+
+    private void jsonString(String value) {
+        write('"');
+        for (int i = 0, n = value.length(); i < n; i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    write("\\\"");
+                    break;
+                case '\\':
+                    write("\\\\");
+                    break;
+                case '\n':
+                    write("\\n");
+                    break;
+                case '\r':
+                    write("\\r");
+                    break;
+                case '\t':
+                    write("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        write("\\u00");
+                        write(HEX[c >> 4]);
+                        write(HEX[c & 0xf]);
+                    } else {
+                        write(c);
+                    }
+            }
+        }
+        write('"');
+    }
+
+    // quoted only if it has to be
+    private void csvValue(String value) {
+        boolean quote = false;
+        for (int i = 0, n = value.length(); i < n && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            write(value);
+            return;
+        }
+        write('"');
+        for (int i = 0, n = value.length(); i < n; i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                write('"');
+            }
+            write(c);
+        }
+        write('"');
+    }
+
+    private void write(String s) {
+        try {
+            out.write(s);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void write(char c) {
+        try {
+            out.write(c);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
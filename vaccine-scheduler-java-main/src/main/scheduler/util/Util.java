@@ -7,35 +7,76 @@ import java.security.SecureRandom;
 import java.security.spec.InvalidKeySpecException;
 import java.security.spec.KeySpec;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
 
 public class Util {
 
-    // constants for handling password
-    private static final int HASH_STRENGTH = 10;
-    private static final int KEY_LENGTH = 16;
+    // constants for handling password (the defaults; see PasswordHasher for configuring them)
+    public static final String HASH_ALGORITHM = "PBKDF2WithHmacSHA256";
+    public static final int HASH_STRENGTH = 600_000;
+    public static final int KEY_LENGTH = 256;
+    // what passwords were hashed with before the settings were stored with the hash; only checked now
+    public static final String LEGACY_HASH_ALGORITHM = "PBKDF2WithHmacSHA1";
+    public static final int LEGACY_HASH_STRENGTH = 10;
+    public static final int LEGACY_KEY_LENGTH = 16;
+
+    // looking up a provider and seeding an RNG are expensive, so each thread keeps its own
+    private static final ThreadLocal<SecureRandom> RANDOM = ThreadLocal.withInitial(SecureRandom::new);
+    private static final ThreadLocal<Map<String, SecretKeyFactory>> FACTORIES = ThreadLocal.withInitial(HashMap::new);
 
     public static byte[] generateSalt() {
         // Generate a random cryptographic salt
-        SecureRandom random = new SecureRandom();
         byte[] salt = new byte[16];
-        random.nextBytes(salt);
+        RANDOM.get().nextBytes(salt);
         return salt;
     }
 
     public static byte[] generateHash(String password, byte[] salt) {
+        PasswordHasher.Params params = PasswordHasher.currentParams();
+        return generateHash(password, salt, params.getAlgorithm(), params.getIterations(), params.getKeyLength());
+    }
+
+    public static byte[] generateHash(String password, byte[] salt, String algorithm, int iterations, int keyLength) {
         // Specify the hash parameters
-        KeySpec spec = new PBEKeySpec(password.toCharArray(), salt, HASH_STRENGTH, KEY_LENGTH);
+        KeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iterations, keyLength);
 
         // Generate the hash
-        SecretKeyFactory factory = null;
-        byte[] hash = null;
         try {
-            factory = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA1");
-            hash = factory.generateSecret(spec).getEncoded();
+            SecretKeyFactory factory = FACTORIES.get().get(algorithm);
+            if (factory == null) {
+                factory = SecretKeyFactory.getInstance(algorithm);
+                FACTORIES.get().put(algorithm, factory);
+            }
+            return factory.generateSecret(spec).getEncoded();
         } catch (NoSuchAlgorithmException | InvalidKeySpecException ex) {
-            throw new IllegalStateException();
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    // an integer setting from the environment; unset, empty, malformed and below-min values give the default
+    public static int envInt(String name, int defaultValue, int min) {
+        String value = System.getenv(name);
+        if (value == null || value.isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            int parsed = Integer.parseInt(value.trim());
+            if (parsed < min) {
+                System.out.println("Ignoring " + name + " below " + min + ": " + value);
+                return defaultValue;
+            }
+            return parsed;
+        } catch (NumberFormatException e) {
+            System.out.println("Ignoring invalid value for " + name + ": " + value);
+            return defaultValue;
         }
-        return hash;
+    }
+
+    // a string setting from the environment, trimmed; unset and empty values give the default
+    public static String envString(String name, String defaultValue) {
+        String value = System.getenv(name);
+        return value == null || value.isEmpty() ? defaultValue : value.trim();
     }
 
     public static byte[] trim(byte[] bytes)
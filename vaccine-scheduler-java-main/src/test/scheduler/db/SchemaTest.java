@@ -0,0 +1,120 @@
+package scheduler.db;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.testcontainers.containers.MSSQLServerContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs the schema migrations against a throwaway SQL Server, starting from the baseline tables with the
+ * duplicate appointment IDs its old primary key allowed, then checks the lookups' query plans (see
+ * {@link QueryPlans}) on enough rows that the optimizer has a reason to seek. Skipped where Docker is not
+ * available.
+ */
+@Testcontainers(disabledWithoutDocker = true)
+class SchemaTest {
+
+    @Container
+    private static final MSSQLServerContainer<?> DATABASE =
+            new MSSQLServerContainer<>("mcr.microsoft.com/mssql/server:2022-latest").acceptLicense();
+
+    private static Connection con;
+
+    @BeforeAll
+    static void migrate() throws Exception {
+        con = DriverManager.getConnection(DATABASE.getJdbcUrl(), DATABASE.getUsername(), DATABASE.getPassword());
+        try (Statement statement = con.createStatement()) {
+            statement.execute(baseline());
+            statement.execute("INSERT INTO Caregivers (Username) VALUES ('c1'), ('c2')");
+            statement.execute("INSERT INTO Patients (Username) VALUES ('p1'), ('p2'), ('p3')");
+            statement.execute("INSERT INTO Vaccines (Name, Doses) VALUES ('v', 10)");
+            // ID 1 three times, as the old key (ID, P_Username, C_Username, V_Name) let happen
+            statement.execute("INSERT INTO Schedule (ID, P_Username, C_Username, V_Name, ScheduleDate) VALUES "
+                    + "(1, 'p1', 'c1', 'v', '2030-01-01'), (1, 'p2', 'c1', 'v', '2030-01-02'), "
+                    + "(1, 'p3', 'c2', 'v', '2030-01-01'), (2, 'p1', 'c2', 'v', '2030-01-03')");
+        }
+        Migrations.apply(con);
+        seed();
+    }
+
+    @AfterAll
+    static void close() throws SQLException {
+        if (con != null) {
+            con.close();
+        }
+    }
+
+    @Test
+    void duplicateIdsAreRenumbered() throws SQLException {
+        try (Statement statement = con.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT COUNT(*), COUNT(DISTINCT ID), "
+                     + "SUM(CASE WHEN ID = 1 AND P_Username = 'p1' THEN 1 ELSE 0 END) "
+                     + "FROM Schedule WHERE V_Name = 'v'")) {
+            resultSet.next();
+            assertEquals(4, resultSet.getInt(1), "appointments kept");
+            assertEquals(4, resultSet.getInt(2), "distinct IDs");
+            assertEquals(1, resultSet.getInt(3), "the earliest row keeps its ID");
+        }
+        try (Statement statement = con.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT c.name FROM sys.index_columns ic "
+                     + "JOIN sys.columns c ON c.object_id = ic.object_id AND c.column_id = ic.column_id "
+                     + "JOIN sys.key_constraints k ON k.parent_object_id = ic.object_id "
+                     + "  AND k.unique_index_id = ic.index_id "
+                     + "WHERE k.name = 'PK_Schedule'")) {
+            assertTrue(resultSet.next(), "PK_Schedule exists");
+            assertEquals("ID", resultSet.getString(1));
+            assertFalse(resultSet.next(), "PK_Schedule is on ID alone");
+        }
+    }
+
+    @Test
+    void lookupsUseTheirIndexes() throws SQLException {
+        List<String> results = QueryPlans.verify(con);
+        for (String result : results) {
+            assertTrue(result.startsWith("ok"), result);
+        }
+    }
+
+    // caregivers with two months of availability and a few appointments a day each
+    private static void seed() throws SQLException {
+        String numbers = "WITH n AS (SELECT TOP (%d) ROW_NUMBER() OVER (ORDER BY (SELECT NULL)) AS i "
+                + "FROM sys.all_objects a CROSS JOIN sys.all_objects b) ";
+        try (Statement statement = con.createStatement()) {
+            statement.execute(String.format(numbers, 200)
+                    + "INSERT INTO Caregivers (Username) SELECT CONCAT('cg', i) FROM n");
+            statement.execute(String.format(numbers, 2000)
+                    + "INSERT INTO Patients (Username) SELECT CONCAT('pt', i) FROM n");
+            statement.execute(String.format(numbers, 12000)
+                    + "INSERT INTO Availabilities (Time, Username) "
+                    + "SELECT DATEADD(day, (i - 1) / 200, '2029-01-01'), CONCAT('cg', (i - 1) % 200 + 1) FROM n");
+            statement.execute(String.format(numbers, 30000)
+                    + "INSERT INTO Schedule (ID, P_Username, C_Username, V_Name, ScheduleDate, ScheduleTime, "
+                    + "Location) SELECT 1000 + i, CONCAT('pt', (i - 1) % 2000 + 1), CONCAT('cg', (i - 1) % 200 + 1), "
+                    + "'v', DATEADD(day, (i - 1) / 200 % 60, '2029-01-01'), '09:00', 'loc01' FROM n");
+            statement.execute("UPDATE STATISTICS Schedule WITH FULLSCAN");
+            statement.execute("UPDATE STATISTICS Availabilities WITH FULLSCAN");
+        }
+    }
+
+    private static String baseline() throws IOException {
+        try (InputStream in = SchemaTest.class.getResourceAsStream("/resources/migrations/V1__baseline.sql")) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}